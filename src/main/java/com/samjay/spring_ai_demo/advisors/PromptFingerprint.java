@@ -0,0 +1,120 @@
+package com.samjay.spring_ai_demo.advisors;
+
+import org.springframework.ai.chat.client.ChatClientAttributes;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/*
+Normalized view of a prompt used as a cache or coalescing key.
+The last user message is the volatile part of the prompt, everything else (system text, earlier messages and options)
+forms the context the answer depends on. Two prompts only share a cached answer when their context is identical.
+Documents that the prompt layout advisor adds to the user message later are part of the context as well, and so is
+the structured output format (and schema) that entity() calls leave in the request context: the chat model advisor
+appends it to the prompt only at the end of the chain, after the key is built, so without it a content() call and an
+entity(Job.class) call with the same text would share a key and get each other's answers.
+ */
+
+public record PromptFingerprint(String context, String userText) {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    public static PromptFingerprint of(ChatClientRequest chatClientRequest) {
+
+        PromptFingerprint fingerprint = of(chatClientRequest.prompt());
+
+        StringBuilder context = new StringBuilder(fingerprint.context());
+
+        Object retrievedDocuments = chatClientRequest.context().get(PromptLayoutAdvisor.RETRIEVED_DOCUMENTS);
+
+        if (retrievedDocuments != null) {
+            context.append("\ndocuments:").append(normalize(retrievedDocuments.toString()));
+        }
+
+        for (ChatClientAttributes attribute : ChatClientAttributes.values()) {
+
+            Object value = chatClientRequest.context().get(attribute.getKey());
+
+            if (value != null) {
+                context.append('\n').append(attribute.getKey()).append(':').append(value);
+            }
+        }
+
+        return new PromptFingerprint(context.toString(), fingerprint.userText());
+    }
+
+    public static PromptFingerprint of(Prompt prompt) {
+
+        List<Message> messages = prompt.getInstructions();
+
+        int lastUserIndex = -1;
+
+        for (int i = messages.size() - 1; i >= 0; i--) {
+
+            if (messages.get(i).getMessageType() == MessageType.USER) {
+
+                lastUserIndex = i;
+
+                break;
+            }
+        }
+
+        StringBuilder context = new StringBuilder();
+
+        for (int i = 0; i < messages.size(); i++) {
+
+            if (i == lastUserIndex) {
+                continue;
+            }
+
+            Message message = messages.get(i);
+
+            context.append(message.getMessageType().getValue())
+                    .append(':')
+                    .append(normalize(message.getText()))
+                    .append('\n');
+        }
+
+        context.append(options(prompt.getOptions()));
+
+        String userText = lastUserIndex >= 0 ? normalize(messages.get(lastUserIndex).getText()) : "";
+
+        return new PromptFingerprint(context.toString(), userText);
+    }
+
+    public String key() {
+
+        return context + '\n' + userText;
+    }
+
+    static String normalize(String text) {
+
+        if (text == null) {
+            return "";
+        }
+
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String options(ChatOptions options) {
+
+        if (options == null) {
+            return "options:default";
+        }
+
+        return "options:" + options.getModel()
+                + '|' + options.getTemperature()
+                + '|' + options.getMaxTokens()
+                + '|' + options.getTopP()
+                + '|' + options.getTopK()
+                + '|' + options.getFrequencyPenalty()
+                + '|' + options.getPresencePenalty()
+                + '|' + options.getStopSequences();
+    }
+}
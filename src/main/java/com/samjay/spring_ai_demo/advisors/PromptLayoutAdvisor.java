@@ -0,0 +1,294 @@
+package com.samjay.spring_ai_demo.advisors;
+
+import com.samjay.spring_ai_demo.memory.TokenBudgetChatMemory;
+import com.samjay.spring_ai_demo.prompt.PromptTemplateRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.core.Ordered;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+Lays every request out so that the part that repeats between requests comes first and the part that changes comes last.
+OpenAI caches the longest prompt prefix it has seen before and Ollama keeps the KV cache of the previous prompt, both
+only help when the repeated content is at the start of the prompt in the same order.
+The order is: the system instructions, the tool definitions sorted by name, the memory summary, the conversation
+history and finally the new user message. Retrieved documents change on every request, they are passed as the
+RETRIEVED_DOCUMENTS advisor parameter and put into the new user message here, after the memory advisor has saved the
+plain question, instead of into the system prompt where they would break the prefix of everything behind them.
+The estimated tokens of the stable prefix and of the volatile rest are recorded per request, next to the prompt
+tokens the provider reports as served from its cache.
+It runs last, after memory and retrieval advisors have added their messages.
+The documents template is looked up in the registry on every request, so a hot reloaded template is used right away.
+ */
+
+@SuppressWarnings("NullableProblems")
+@Slf4j
+public class PromptLayoutAdvisor implements CallAdvisor, StreamAdvisor {
+
+    public static final String RETRIEVED_DOCUMENTS = "prompt_layout_retrieved_documents";
+
+    public static final String STABLE_PREFIX_TOKENS = "prompt_layout_stable_prefix_tokens";
+
+    private final PromptTemplateRegistry promptTemplates;
+
+    private final String retrievedDocumentsTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String clientName;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public PromptLayoutAdvisor(PromptTemplateRegistry promptTemplates, String retrievedDocumentsTemplate,
+                               MeterRegistry meterRegistry, String clientName) {
+
+        this.promptTemplates = promptTemplates;
+
+        this.retrievedDocumentsTemplate = promptTemplates.get(retrievedDocumentsTemplate).name();
+
+        this.meterRegistry = meterRegistry;
+
+        this.clientName = clientName;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+
+        ChatClientResponse chatClientResponse = callAdvisorChain.nextCall(layout(chatClientRequest));
+
+        recordCachedTokens(chatClientResponse.chatResponse());
+
+        return chatClientResponse;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+
+        return Flux.defer(() -> {
+
+            AtomicReference<ChatResponse> lastWithUsage = new AtomicReference<>();
+
+            return streamAdvisorChain.nextStream(layout(chatClientRequest))
+                    .doOnNext(chatClientResponse -> {
+
+                        ChatResponse chatResponse = chatClientResponse.chatResponse();
+
+                        if (chatResponse != null && chatResponse.getMetadata().getUsage() != null
+                                && chatResponse.getMetadata().getUsage().getNativeUsage() != null) {
+                            lastWithUsage.set(chatResponse);
+                        }
+                    })
+                    .doOnComplete(() -> recordCachedTokens(lastWithUsage.get()));
+        });
+    }
+
+    @Override
+    public String getName() {
+
+        return this.getClass().getName();
+    }
+
+    @Override
+    public int getOrder() {
+
+        return Ordered.LOWEST_PRECEDENCE - 100;
+    }
+
+    private ChatClientRequest layout(ChatClientRequest chatClientRequest) {
+
+        Prompt prompt = chatClientRequest.prompt();
+
+        List<Message> instructions = prompt.getInstructions();
+
+        int lastUserMessage = -1;
+
+        for (int i = instructions.size() - 1; i >= 0 && lastUserMessage == -1; i--) {
+            if (instructions.get(i) instanceof UserMessage) {
+                lastUserMessage = i;
+            }
+        }
+
+        List<Message> systemInstructions = new ArrayList<>();
+
+        List<Message> memorySummaries = new ArrayList<>();
+
+        List<Message> history = new ArrayList<>();
+
+        List<Message> volatileMessages = new ArrayList<>();
+
+        for (int i = 0; i < instructions.size(); i++) {
+
+            Message message = instructions.get(i);
+
+            if (message instanceof SystemMessage systemMessage) {
+
+                boolean summary = systemMessage.getText() != null && systemMessage.getText().startsWith(TokenBudgetChatMemory.SUMMARY_PREFIX);
+
+                (summary ? memorySummaries : systemInstructions).add(message);
+
+            } else if (i < lastUserMessage || lastUserMessage == -1) {
+
+                history.add(message);
+
+            } else if (i == lastUserMessage) {
+
+                volatileMessages.add(withRetrievedDocuments((UserMessage) message, chatClientRequest.context().get(RETRIEVED_DOCUMENTS)));
+
+            } else {
+
+                volatileMessages.add(message);
+            }
+        }
+
+        ChatOptions options = withSortedTools(prompt.getOptions());
+
+        List<Message> messages = new ArrayList<>(instructions.size());
+
+        messages.addAll(systemInstructions);
+
+        messages.addAll(memorySummaries);
+
+        messages.addAll(history);
+
+        messages.addAll(volatileMessages);
+
+        int stablePrefixTokens = tokens(systemInstructions) + toolTokens(options) + tokens(memorySummaries) + tokens(history);
+
+        int volatileTokens = tokens(volatileMessages);
+
+        DistributionSummary.builder("chat.prompt.layout.tokens")
+                .tag("client", clientName)
+                .tag("part", "stable-prefix")
+                .register(meterRegistry)
+                .record(stablePrefixTokens);
+
+        DistributionSummary.builder("chat.prompt.layout.tokens")
+                .tag("client", clientName)
+                .tag("part", "volatile")
+                .register(meterRegistry)
+                .record(volatileTokens);
+
+        log.debug("Prompt layout: {} stable prefix tokens, {} volatile tokens", stablePrefixTokens, volatileTokens);
+
+        return chatClientRequest.mutate()
+                .prompt(Prompt.builder().messages(messages).chatOptions(options).build())
+                .context(STABLE_PREFIX_TOKENS, stablePrefixTokens)
+                .build();
+    }
+
+    private UserMessage withRetrievedDocuments(UserMessage userMessage, Object retrievedDocuments) {
+
+        if (retrievedDocuments == null || retrievedDocuments.toString().isBlank()) {
+            return userMessage;
+        }
+
+        return userMessage.mutate()
+                .text(promptTemplates.render(retrievedDocumentsTemplate, Map.of("documents", retrievedDocuments, "question", userMessage.getText())))
+                .build();
+    }
+
+    /*
+    Tool definitions are sent in front of the messages, their order must not depend on how the callbacks were collected.
+     */
+
+    private static ChatOptions withSortedTools(ChatOptions options) {
+
+        if (!(options instanceof ToolCallingChatOptions toolOptions)
+                || (CollectionUtils.isEmpty(toolOptions.getToolCallbacks()) && CollectionUtils.isEmpty(toolOptions.getToolNames()))) {
+            return options;
+        }
+
+        ToolCallingChatOptions sorted = toolOptions.copy();
+
+        if (!CollectionUtils.isEmpty(toolOptions.getToolCallbacks())) {
+
+            List<ToolCallback> toolCallbacks = new ArrayList<>(toolOptions.getToolCallbacks());
+
+            toolCallbacks.sort(Comparator.comparing(toolCallback -> toolCallback.getToolDefinition().name()));
+
+            sorted.setToolCallbacks(toolCallbacks);
+        }
+
+        if (!CollectionUtils.isEmpty(toolOptions.getToolNames())) {
+            sorted.setToolNames(new TreeSet<>(toolOptions.getToolNames()));
+        }
+
+        return sorted;
+    }
+
+    private int toolTokens(ChatOptions options) {
+
+        if (!(options instanceof ToolCallingChatOptions toolOptions) || CollectionUtils.isEmpty(toolOptions.getToolCallbacks())) {
+            return 0;
+        }
+
+        int tokens = 0;
+
+        for (ToolCallback toolCallback : toolOptions.getToolCallbacks()) {
+
+            tokens += tokenCountEstimator.estimate(toolCallback.getToolDefinition().name() + " "
+                    + toolCallback.getToolDefinition().description() + " " + toolCallback.getToolDefinition().inputSchema());
+        }
+
+        return tokens;
+    }
+
+    private int tokens(List<Message> messages) {
+
+        int tokens = 0;
+
+        for (Message message : messages) {
+
+            if (message.getText() != null) {
+                tokens += tokenCountEstimator.estimate(message.getText());
+            }
+        }
+
+        return tokens;
+    }
+
+    /*
+    Only OpenAI reports how many prompt tokens came from its prefix cache.
+     */
+
+    private void recordCachedTokens(ChatResponse chatResponse) {
+
+        if (chatResponse == null || chatResponse.getMetadata().getUsage() == null
+                || !(chatResponse.getMetadata().getUsage().getNativeUsage() instanceof OpenAiApi.Usage usage)
+                || usage.promptTokensDetails() == null || usage.promptTokensDetails().cachedTokens() == null) {
+            return;
+        }
+
+        Counter.builder("chat.prompt.cached.tokens")
+                .tag("client", clientName)
+                .register(meterRegistry)
+                .increment(usage.promptTokensDetails().cachedTokens());
+    }
+}
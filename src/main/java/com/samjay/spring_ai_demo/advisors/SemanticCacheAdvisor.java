@@ -0,0 +1,603 @@
+package com.samjay.spring_ai_demo.advisors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.core.Ordered;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Response cache placed in front of the chat model.
+The exact tier matches on the normalized prompt and options, the semantic tier compares the embedding of the user
+message against cached questions that were asked with the same system text and options.
+Requests that carry a conversation id or tools are never cached because their answer depends on state outside the prompt.
+Lookups take no lock: the exact tier is a concurrent map and the semantic tier scans an immutable array of the embedded
+entries of the request's context, which the writers replace under a lock. A write only copies the arrays of the
+contexts it changes, expired entries are found at the head of a creation ordered map and least recently used ones at the
+head of a recency ordered map, so a put costs the same however many entries are cached. A question whose context has no
+embedded entries cannot hit the semantic tier, so it goes to the model without waiting for an embedding. Its embedding
+is computed after the answer is stored, off the request path.
+ */
+
+@SuppressWarnings("NullableProblems")
+@Slf4j
+public class SemanticCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+    public static final String CACHE_HIT = "semantic_cache_hit";
+
+    private final EmbeddingModel embeddingModel;
+
+    private final int maxEntries;
+
+    private final long timeToLiveMillis;
+
+    private final double similarityThreshold;
+
+    private final Map<String, CachedResponse> entries = new ConcurrentHashMap<>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final Map<String, CachedResponse[]> semanticIndex = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<String, CachedResponse> byCreation = new LinkedHashMap<>();
+
+    private final LinkedHashMap<String, Long> byRecency = new LinkedHashMap<>();
+
+    private final LongAdder exactHits = new LongAdder();
+
+    private final LongAdder semanticHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public SemanticCacheAdvisor(EmbeddingModel embeddingModel, int maxEntries, Duration timeToLive, double similarityThreshold) {
+
+        this.embeddingModel = embeddingModel;
+
+        this.maxEntries = maxEntries;
+
+        this.timeToLiveMillis = timeToLive.toMillis();
+
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+
+        if (!isCacheable(chatClientRequest)) {
+            return callAdvisorChain.nextCall(chatClientRequest);
+        }
+
+        Lookup lookup = lookup(PromptFingerprint.of(chatClientRequest));
+
+        if (lookup.hit() != null) {
+            return response(lookup.hit().text(), chatClientRequest.context(), lookup.tier());
+        }
+
+        ChatClientResponse chatClientResponse = callAdvisorChain.nextCall(chatClientRequest);
+
+        store(lookup, textOf(chatClientResponse));
+
+        return chatClientResponse;
+    }
+
+    /*
+    Cache hits are replayed word by word so streaming clients behave the same way as on a miss.
+    Misses are passed through and the assembled answer is stored once the stream completes.
+     */
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+
+        if (!isCacheable(chatClientRequest)) {
+            return streamAdvisorChain.nextStream(chatClientRequest);
+        }
+
+        return Mono.fromCallable(() -> lookup(PromptFingerprint.of(chatClientRequest)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(lookup -> {
+
+                    if (lookup.hit() != null) {
+                        return replay(lookup.hit().text(), chatClientRequest.context(), lookup.tier());
+                    }
+
+                    StringBuilder answer = new StringBuilder();
+
+                    return streamAdvisorChain.nextStream(chatClientRequest)
+                            .doOnNext(chatClientResponse -> answer.append(textOf(chatClientResponse)))
+                            .doOnComplete(() -> store(lookup, answer.toString()));
+                });
+    }
+
+    public CacheStats stats() {
+
+        return new CacheStats(exactHits.sum(), semanticHits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    public void clear() {
+
+        writeLock.lock();
+
+        try {
+
+            entries.clear();
+
+            byCreation.clear();
+
+            byRecency.clear();
+
+            semanticIndex.clear();
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+
+        return this.getClass().getName();
+    }
+
+    @Override
+    public int getOrder() {
+
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    private boolean isCacheable(ChatClientRequest chatClientRequest) {
+
+        if (chatClientRequest.context().containsKey(ChatMemory.CONVERSATION_ID)) {
+            return false;
+        }
+
+        if (chatClientRequest.prompt().getOptions() instanceof ToolCallingChatOptions toolOptions) {
+            return CollectionUtils.isEmpty(toolOptions.getToolCallbacks()) && CollectionUtils.isEmpty(toolOptions.getToolNames());
+        }
+
+        return true;
+    }
+
+    private Lookup lookup(PromptFingerprint fingerprint) {
+
+        String key = fingerprint.key();
+
+        long now = System.currentTimeMillis();
+
+        CachedResponse cached = entries.get(key);
+
+        if (cached != null && !cached.isExpired(now, timeToLiveMillis)) {
+
+            cached.touch(now);
+
+            exactHits.increment();
+
+            return new Lookup(key, fingerprint.context(), fingerprint.userText(), null, cached, "exact");
+        }
+
+        CachedResponse[] candidates = semanticIndex.get(fingerprint.context());
+
+        if (candidates == null) {
+
+            misses.increment();
+
+            return new Lookup(key, fingerprint.context(), fingerprint.userText(), null, null, null);
+        }
+
+        float[] embedding = embed(fingerprint.userText());
+
+        if (embedding != null) {
+
+            CachedResponse best = null;
+
+            double bestScore = similarityThreshold;
+
+            for (CachedResponse candidate : candidates) {
+
+                if (candidate.isExpired(now, timeToLiveMillis)) {
+                    continue;
+                }
+
+                double score = dot(embedding, candidate.embedding());
+
+                if (score >= bestScore) {
+
+                    bestScore = score;
+
+                    best = candidate;
+                }
+            }
+
+            if (best != null) {
+
+                best.touch(now);
+
+                semanticHits.increment();
+
+                log.debug("Semantic cache hit with similarity {}", bestScore);
+
+                return new Lookup(key, fingerprint.context(), fingerprint.userText(), embedding, best, "semantic");
+            }
+        }
+
+        misses.increment();
+
+        return new Lookup(key, fingerprint.context(), fingerprint.userText(), embedding, null, null);
+    }
+
+    /*
+    The answer is stored right away for the exact tier. When the lookup did not need an embedding, it is computed on a
+    worker thread and the entry joins the semantic tier once it is there.
+     */
+
+    private void store(Lookup lookup, String text) {
+
+        if (text == null || text.isBlank()) {
+            return;
+        }
+
+        CachedResponse entry = new CachedResponse(lookup.key(), lookup.context(), lookup.embedding(), text, System.currentTimeMillis());
+
+        put(entry, null);
+
+        if (entry.embedding() == null && !lookup.userText().isEmpty()) {
+
+            Schedulers.boundedElastic().schedule(() -> {
+
+                float[] embedding = embed(lookup.userText());
+
+                if (embedding != null) {
+                    put(entry.withEmbedding(embedding), entry);
+                }
+            });
+        }
+    }
+
+    /*
+    Puts the entry, or replaces expected with it when expected is given and still cached. Expired entries are dropped
+    from the head of the creation order, then the least recently used ones while the cache is over its size.
+    Hits touch entries without the lock, so the recency order is only brought up to date when an entry reaches its
+    head: an entry used since it was queued goes back to the tail instead of being evicted.
+     */
+
+    private void put(CachedResponse entry, CachedResponse expected) {
+
+        writeLock.lock();
+
+        try {
+
+            if (expected != null) {
+
+                if (!entries.replace(entry.key(), expected, entry)) {
+                    return;
+                }
+
+                byCreation.put(entry.key(), entry);
+
+                unindex(expected);
+
+            } else {
+
+                CachedResponse previous = entries.put(entry.key(), entry);
+
+                if (previous != null) {
+
+                    byCreation.remove(previous.key());
+
+                    unindex(previous);
+                }
+
+                byCreation.put(entry.key(), entry);
+
+                byRecency.remove(entry.key());
+
+                byRecency.put(entry.key(), entry.lastUsed());
+            }
+
+            index(entry);
+
+            long now = System.currentTimeMillis();
+
+            Iterator<CachedResponse> oldest = byCreation.values().iterator();
+
+            while (oldest.hasNext()) {
+
+                CachedResponse cached = oldest.next();
+
+                if (!cached.isExpired(now, timeToLiveMillis)) {
+                    break;
+                }
+
+                oldest.remove();
+
+                remove(cached);
+            }
+
+            while (entries.size() > maxEntries) {
+
+                Iterator<Map.Entry<String, Long>> leastRecent = byRecency.entrySet().iterator();
+
+                Map.Entry<String, Long> queued = leastRecent.next();
+
+                leastRecent.remove();
+
+                CachedResponse cached = entries.get(queued.getKey());
+
+                if (cached == null) {
+                    continue;
+                }
+
+                if (cached.lastUsed() > queued.getValue()) {
+
+                    byRecency.put(cached.key(), cached.lastUsed());
+
+                    continue;
+                }
+
+                byCreation.remove(cached.key());
+
+                remove(cached);
+            }
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    private void remove(CachedResponse cached) {
+
+        if (entries.remove(cached.key(), cached)) {
+            evictions.increment();
+        }
+
+        byRecency.remove(cached.key());
+
+        unindex(cached);
+    }
+
+    /*
+    Only the array of the entry's context is copied, readers keep scanning the array they already have.
+     */
+
+    private void index(CachedResponse entry) {
+
+        if (entry.embedding() == null) {
+            return;
+        }
+
+        semanticIndex.compute(entry.context(), (context, cached) -> {
+
+            if (cached == null) {
+                return new CachedResponse[]{entry};
+            }
+
+            CachedResponse[] appended = Arrays.copyOf(cached, cached.length + 1);
+
+            appended[cached.length] = entry;
+
+            return appended;
+        });
+    }
+
+    private void unindex(CachedResponse entry) {
+
+        if (entry.embedding() == null) {
+            return;
+        }
+
+        semanticIndex.computeIfPresent(entry.context(), (context, cached) -> {
+
+            CachedResponse[] remaining = Arrays.stream(cached)
+                    .filter(candidate -> candidate != entry)
+                    .toArray(CachedResponse[]::new);
+
+            return remaining.length == 0 ? null : remaining;
+        });
+    }
+
+    private float[] embed(String text) {
+
+        if (text.isEmpty()) {
+            return null;
+        }
+
+        try {
+
+            float[] embedding = embeddingModel.embed(text);
+
+            double norm = Math.sqrt(dot(embedding, embedding));
+
+            if (norm == 0) {
+                return null;
+            }
+
+            float[] normalized = new float[embedding.length];
+
+            for (int i = 0; i < embedding.length; i++) {
+                normalized[i] = (float) (embedding[i] / norm);
+            }
+
+            return normalized;
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Semantic cache embedding failed, falling back to exact matching: {}", exception.getMessage());
+
+            return null;
+        }
+    }
+
+    private static double dot(float[] left, float[] right) {
+
+        if (left.length != right.length) {
+            return 0;
+        }
+
+        double sum = 0;
+
+        for (int i = 0; i < left.length; i++) {
+            sum += left[i] * right[i];
+        }
+
+        return sum;
+    }
+
+    private static String textOf(ChatClientResponse chatClientResponse) {
+
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+
+        if (chatResponse == null || chatResponse.getResult() == null || chatResponse.getResult().getOutput().getText() == null) {
+            return "";
+        }
+
+        return chatResponse.getResult().getOutput().getText();
+    }
+
+    private static ChatClientResponse response(String text, Map<String, Object> context, String tier) {
+
+        Map<String, Object> responseContext = new HashMap<>(context);
+
+        responseContext.put(CACHE_HIT, tier);
+
+        return ChatClientResponse.builder()
+                .chatResponse(new ChatResponse(List.of(new Generation(new AssistantMessage(text)))))
+                .context(responseContext)
+                .build();
+    }
+
+    private static Flux<ChatClientResponse> replay(String text, Map<String, Object> context, String tier) {
+
+        List<String> chunks = new ArrayList<>();
+
+        int start = 0;
+
+        for (int i = 1; i < text.length(); i++) {
+
+            if (Character.isWhitespace(text.charAt(i - 1)) && !Character.isWhitespace(text.charAt(i))) {
+
+                chunks.add(text.substring(start, i));
+
+                start = i;
+            }
+        }
+
+        chunks.add(text.substring(start));
+
+        return Flux.fromIterable(chunks).map(chunk -> response(chunk, context, tier));
+    }
+
+    private static final class CachedResponse {
+
+        private final String key;
+
+        private final String context;
+
+        private final float[] embedding;
+
+        private final String text;
+
+        private final long createdAt;
+
+        private volatile long lastUsed;
+
+        CachedResponse(String key, String context, float[] embedding, String text, long createdAt) {
+
+            this.key = key;
+
+            this.context = context;
+
+            this.embedding = embedding;
+
+            this.text = text;
+
+            this.createdAt = createdAt;
+
+            this.lastUsed = createdAt;
+        }
+
+        String key() {
+
+            return key;
+        }
+
+        String context() {
+
+            return context;
+        }
+
+        float[] embedding() {
+
+            return embedding;
+        }
+
+        String text() {
+
+            return text;
+        }
+
+        long lastUsed() {
+
+            return lastUsed;
+        }
+
+        void touch(long now) {
+
+            lastUsed = now;
+        }
+
+        boolean isExpired(long now, long timeToLiveMillis) {
+
+            return now - createdAt > timeToLiveMillis;
+        }
+
+        CachedResponse withEmbedding(float[] embedding) {
+
+            CachedResponse embedded = new CachedResponse(key, context, embedding, text, createdAt);
+
+            embedded.lastUsed = lastUsed;
+
+            return embedded;
+        }
+    }
+
+    private record Lookup(String key, String context, String userText, float[] embedding, CachedResponse hit, String tier) {
+    }
+
+    public record CacheStats(long exactHits, long semanticHits, long misses, long evictions, int size) {
+
+        public double hitRatio() {
+
+            long total = exactHits + semanticHits + misses;
+
+            return total == 0 ? 0 : (double) (exactHits + semanticHits) / total;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.samjay.spring_ai_demo.advisors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.core.Ordered;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Collapses identical requests that are in flight at the same time onto a single model call.
+The first request for a prompt calls the model, requests with the same prompt and options that arrive before it
+finishes wait for its response instead of calling the model again. Streams are multicast: late subscribers get the
+chunks that were already emitted replayed and then follow the live stream. The upstream call is cancelled only
+when every subscriber has cancelled.
+Requests with a conversation id are never collapsed because their prompt depends on the conversation memory.
+The key is the prompt fingerprint, which includes the structured output format of entity() calls, so a content()
+caller and an entity(Job.class) caller asking the same question at the same time make separate upstream calls.
+ */
+
+@SuppressWarnings("NullableProblems")
+@Slf4j
+public class SingleFlightAdvisor implements CallAdvisor, StreamAdvisor {
+
+    private final Map<String, CompletableFuture<ChatClientResponse>> inFlightCalls = new ConcurrentHashMap<>();
+
+    private final Map<String, Flux<ChatClientResponse>> inFlightStreams = new ConcurrentHashMap<>();
+
+    private final LongAdder upstreamCalls = new LongAdder();
+
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
+
+        if (chatClientRequest.context().containsKey(ChatMemory.CONVERSATION_ID)) {
+            return callAdvisorChain.nextCall(chatClientRequest);
+        }
+
+        String key = PromptFingerprint.of(chatClientRequest).key();
+
+        CompletableFuture<ChatClientResponse> call = new CompletableFuture<>();
+
+        CompletableFuture<ChatClientResponse> inFlightCall = inFlightCalls.putIfAbsent(key, call);
+
+        if (inFlightCall != null) {
+
+            coalescedCalls.increment();
+
+            try {
+
+                return withContext(inFlightCall.join(), chatClientRequest.context());
+
+            } catch (CompletionException exception) {
+
+                if (exception.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+
+                throw exception;
+            }
+        }
+
+        upstreamCalls.increment();
+
+        try {
+
+            ChatClientResponse chatClientResponse = callAdvisorChain.nextCall(chatClientRequest);
+
+            call.complete(chatClientResponse);
+
+            return chatClientResponse;
+
+        } catch (RuntimeException exception) {
+
+            call.completeExceptionally(exception);
+
+            throw exception;
+
+        } finally {
+
+            inFlightCalls.remove(key, call);
+        }
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
+
+        if (chatClientRequest.context().containsKey(ChatMemory.CONVERSATION_ID)) {
+            return streamAdvisorChain.nextStream(chatClientRequest);
+        }
+
+        String key = PromptFingerprint.of(chatClientRequest).key();
+
+        AtomicReference<Flux<ChatClientResponse>> created = new AtomicReference<>();
+
+        Flux<ChatClientResponse> stream = inFlightStreams.computeIfAbsent(key, ignored -> {
+
+            Flux<ChatClientResponse> shared = streamAdvisorChain.nextStream(chatClientRequest)
+                    .doFinally(signal -> inFlightStreams.remove(key, created.get()))
+                    .replay()
+                    .refCount(1);
+
+            created.set(shared);
+
+            return shared;
+        });
+
+        if (stream == created.get()) {
+            upstreamCalls.increment();
+        } else {
+            coalescedCalls.increment();
+        }
+
+        return stream.map(chatClientResponse -> withContext(chatClientResponse, chatClientRequest.context()));
+    }
+
+    public long upstreamCalls() {
+
+        return upstreamCalls.sum();
+    }
+
+    public long coalescedCalls() {
+
+        return coalescedCalls.sum();
+    }
+
+    @Override
+    public String getName() {
+
+        return this.getClass().getName();
+    }
+
+    @Override
+    public int getOrder() {
+
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    private static ChatClientResponse withContext(ChatClientResponse chatClientResponse, Map<String, Object> context) {
+
+        return ChatClientResponse.builder()
+                .chatResponse(chatClientResponse.chatResponse())
+                .context(new HashMap<>(context))
+                .build();
+    }
+}
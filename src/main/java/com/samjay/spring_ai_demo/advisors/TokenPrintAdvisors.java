@@ -1,5 +1,11 @@
 package com.samjay.spring_ai_demo.advisors;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClientRequest;
 import org.springframework.ai.chat.client.ChatClientResponse;
@@ -7,36 +13,154 @@ import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
 import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
 import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
 import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+Logs the token usage of every chat interaction and records it, together with latency, as Micrometer metrics.
+Every meter is tagged with the chat client, the HTTP endpoint and the model, streams additionally record the time to
+the first token and the gaps between tokens. The metrics are exported through the actuator metrics and prometheus endpoints.
+The endpoint tag is taken from the ENDPOINT advisor parameter when it is set, otherwise from the current HTTP request.
+ */
+
 @SuppressWarnings("NullableProblems")
 @Slf4j
 public class TokenPrintAdvisors implements CallAdvisor, StreamAdvisor {
 
+    public static final String ENDPOINT = "metrics_endpoint";
+
+    private final MeterRegistry meterRegistry;
+
+    private final String clientName;
+
+    public TokenPrintAdvisors() {
+
+        this(Metrics.globalRegistry, "default");
+    }
+
+    public TokenPrintAdvisors(MeterRegistry meterRegistry, String clientName) {
+
+        this.meterRegistry = meterRegistry;
+
+        this.clientName = clientName;
+    }
+
     @Override
     public ChatClientResponse adviseCall(ChatClientRequest chatClientRequest, CallAdvisorChain callAdvisorChain) {
 
-        log.info("My token print advisor called");
+        Tags tags = tags(chatClientRequest, "call");
+
+        long start = System.nanoTime();
+
+        ChatClientResponse chatClientResponse;
+
+        try {
 
-        ChatClientResponse chatClientResponse = callAdvisorChain.nextCall(chatClientRequest);
+            chatClientResponse = callAdvisorChain.nextCall(chatClientRequest);
 
-        log.info("Response received in advisor: {}", chatClientResponse);
+        } catch (RuntimeException exception) {
 
-        assert chatClientResponse.chatResponse() != null;
+            recordFailure(tags, start, exception);
 
-        log.info("Number of prompt tokens used: {}", chatClientResponse.chatResponse().getMetadata().getUsage().getPromptTokens());
+            throw exception;
+        }
 
-        log.info("Number of completion tokens used: {}", chatClientResponse.chatResponse().getMetadata().getUsage().getCompletionTokens());
+        long elapsed = System.nanoTime() - start;
 
-        log.info("Number of tokens used: {}", chatClientResponse.chatResponse().getMetadata().getUsage().getTotalTokens());
+        timer("chat.client.requests", tags.and("outcome", "success")).record(Duration.ofNanos(elapsed));
+
+        ChatResponse chatResponse = chatClientResponse.chatResponse();
+
+        if (chatResponse != null && chatResponse.getMetadata().getUsage() != null) {
+
+            Usage usage = chatResponse.getMetadata().getUsage();
+
+            log.info("Number of prompt tokens used: {}", usage.getPromptTokens());
+
+            log.info("Number of completion tokens used: {}", usage.getCompletionTokens());
+
+            log.info("Number of tokens used: {}", usage.getTotalTokens());
+
+            recordTokens(tags, usage.getPromptTokens(), usage.getCompletionTokens(), elapsed);
+        }
 
         return chatClientResponse;
     }
 
+    /*
+    The stream is measured from subscription: time to first token, the gap between consecutive chunks and the total.
+    When the model does not report usage for the stream, the number of chunks is recorded as an estimate of the
+    completion tokens under type=completion-estimated, so it is never summed with the completion tokens the providers
+    report. OpenAi reports usage for streams because stream-usage is enabled in the application properties.
+     */
+
     @Override
     public Flux<ChatClientResponse> adviseStream(ChatClientRequest chatClientRequest, StreamAdvisorChain streamAdvisorChain) {
 
-        return streamAdvisorChain.nextStream(chatClientRequest);
+        Tags tags = tags(chatClientRequest, "stream");
+
+        return Flux.defer(() -> {
+
+            long start = System.nanoTime();
+
+            AtomicLong lastChunkAt = new AtomicLong();
+
+            AtomicLong chunks = new AtomicLong();
+
+            AtomicReference<Usage> usage = new AtomicReference<>();
+
+            return streamAdvisorChain.nextStream(chatClientRequest)
+                    .doOnNext(chatClientResponse -> {
+
+                        long now = System.nanoTime();
+
+                        long previous = lastChunkAt.getAndSet(now);
+
+                        if (chunks.getAndIncrement() == 0) {
+                            timer("chat.client.time.to.first.token", tags).record(Duration.ofNanos(now - start));
+                        } else {
+                            timer("chat.client.inter.token.gap", tags).record(Duration.ofNanos(now - previous));
+                        }
+
+                        ChatResponse chatResponse = chatClientResponse.chatResponse();
+
+                        if (chatResponse != null && chatResponse.getMetadata().getUsage() != null
+                                && chatResponse.getMetadata().getUsage().getTotalTokens() != null
+                                && chatResponse.getMetadata().getUsage().getTotalTokens() > 0) {
+                            usage.set(chatResponse.getMetadata().getUsage());
+                        }
+                    })
+                    .doOnComplete(() -> {
+
+                        long elapsed = System.nanoTime() - start;
+
+                        timer("chat.client.requests", tags.and("outcome", "success")).record(Duration.ofNanos(elapsed));
+
+                        Usage streamUsage = usage.get();
+
+                        if (streamUsage != null) {
+                            recordTokens(tags, streamUsage.getPromptTokens(), streamUsage.getCompletionTokens(), elapsed);
+                        } else {
+                            Counter.builder("chat.client.tokens")
+                                    .tags(tags)
+                                    .tag("type", "completion-estimated")
+                                    .register(meterRegistry)
+                                    .increment(chunks.get());
+                        }
+
+                        log.info("Stream completed with {} chunks in {} ms", chunks.get(), elapsed / 1_000_000);
+                    })
+                    .doOnError(exception -> recordFailure(tags, start, exception))
+                    .doOnCancel(() -> timer("chat.client.requests", tags.and("outcome", "cancelled"))
+                            .record(Duration.ofNanos(System.nanoTime() - start)));
+        });
     }
 
     @Override
@@ -50,4 +174,63 @@ public class TokenPrintAdvisors implements CallAdvisor, StreamAdvisor {
 
         return 0;
     }
+
+    private Tags tags(ChatClientRequest chatClientRequest, String mode) {
+
+        Object endpoint = chatClientRequest.context().get(ENDPOINT);
+
+        if (endpoint == null && RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            endpoint = attributes.getRequest().getRequestURI();
+        }
+
+        String model = chatClientRequest.prompt().getOptions() == null ? null : chatClientRequest.prompt().getOptions().getModel();
+
+        return Tags.of(
+                "client", clientName,
+                "endpoint", endpoint == null ? "none" : endpoint.toString(),
+                "model", model == null ? "default" : model,
+                "mode", mode);
+    }
+
+    private void recordTokens(Tags tags, Integer promptTokens, Integer completionTokens, long elapsedNanos) {
+
+        if (promptTokens != null) {
+            Counter.builder("chat.client.tokens").tags(tags).tag("type", "prompt").register(meterRegistry).increment(promptTokens);
+        }
+
+        if (completionTokens != null) {
+
+            Counter.builder("chat.client.tokens").tags(tags).tag("type", "completion").register(meterRegistry).increment(completionTokens);
+
+            if (elapsedNanos > 0) {
+
+                DistributionSummary.builder("chat.client.tokens.per.second")
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)
+                        .record(completionTokens * 1_000_000_000.0 / elapsedNanos);
+            }
+        }
+    }
+
+    private void recordFailure(Tags tags, long start, Throwable exception) {
+
+        timer("chat.client.requests", tags.and("outcome", "error")).record(Duration.ofNanos(System.nanoTime() - start));
+
+        Counter.builder("chat.client.errors")
+                .tags(tags)
+                .tag("exception", exception.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+
+        log.warn("Chat client {} call failed: {}", clientName, exception.getMessage());
+    }
+
+    private Timer timer(String name, Tags tags) {
+
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 }
@@ -0,0 +1,41 @@
+package com.samjay.spring_ai_demo.cascade;
+
+/*
+One event of a cascaded answer. The draft is streamed as DRAFT events, then either ACCEPTED closes the answer or
+ESCALATED (with the reason as text) tells the client to discard the draft, followed by the ANSWER events of the
+stronger model.
+ */
+
+public record CascadeEvent(Type type, String text) {
+
+    public enum Type {
+
+        DRAFT,
+
+        ACCEPTED,
+
+        ESCALATED,
+
+        ANSWER
+    }
+
+    static CascadeEvent draft(String text) {
+
+        return new CascadeEvent(Type.DRAFT, text);
+    }
+
+    static CascadeEvent accepted() {
+
+        return new CascadeEvent(Type.ACCEPTED, "");
+    }
+
+    static CascadeEvent escalated(String reason) {
+
+        return new CascadeEvent(Type.ESCALATED, reason);
+    }
+
+    static CascadeEvent answer(String text) {
+
+        return new CascadeEvent(Type.ANSWER, text);
+    }
+}
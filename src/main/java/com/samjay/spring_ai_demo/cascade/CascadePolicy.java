@@ -0,0 +1,11 @@
+package com.samjay.spring_ai_demo.cascade;
+
+import java.time.Duration;
+
+/*
+When a draft is given up on: no first token within draftFirstTokenTimeout, not finished within draftTimeout or
+shorter than minDraftCharacters. With verify set, a draft that passes these checks is also judged by the verifier.
+ */
+
+public record CascadePolicy(Duration draftFirstTokenTimeout, Duration draftTimeout, int minDraftCharacters, boolean verify) {
+}
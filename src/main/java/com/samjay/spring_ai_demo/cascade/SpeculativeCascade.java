@@ -0,0 +1,268 @@
+package com.samjay.spring_ai_demo.cascade;
+
+import com.samjay.spring_ai_demo.prompt.PromptTemplateRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/*
+Answers with a cheap local draft model first and escalates to a stronger model only when the draft is not good enough.
+The draft is streamed to the caller while it is generated. When it is complete it is checked: a draft that failed,
+timed out, was cut off by the token limit, is too short or hedges ("I'm not sure") is escalated right away, any other
+draft is judged by the verifier, a small model asked for a one token YES or NO. An accepted draft is the answer, for a
+rejected one the caller gets an ESCALATED event and the answer of the escalation model is streamed after it.
+Easy questions are answered at the latency and cost of the local model, only the hard ones pay for both.
+The models are plain ChatModels, so the cascade can be exercised with stub models. The verification template is
+looked up in the registry for every verification, so a hot reloaded template is used right away.
+ */
+
+@Slf4j
+public class SpeculativeCascade {
+
+    private static final Pattern HEDGING = Pattern.compile(
+            "\\b(i (do not|don't) know|i'm not sure|i am not sure|i cannot answer|i can't answer|as an ai|"
+                    + "i (do not|don't) have (access|information|enough information))\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private final ChatModel draftModel;
+
+    private final ChatOptions draftOptions;
+
+    private final ChatModel verifierModel;
+
+    private final ChatOptions verifierOptions;
+
+    private final PromptTemplateRegistry promptTemplates;
+
+    private final String verificationTemplate;
+
+    private final ChatModel escalationModel;
+
+    private final CascadePolicy policy;
+
+    private final MeterRegistry meterRegistry;
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final LongAdder escalated = new LongAdder();
+
+    public SpeculativeCascade(ChatModel draftModel, ChatOptions draftOptions, ChatModel verifierModel,
+                              ChatOptions verifierOptions, PromptTemplateRegistry promptTemplates, String verificationTemplate,
+                              ChatModel escalationModel, CascadePolicy policy, MeterRegistry meterRegistry) {
+
+        this.draftModel = draftModel;
+
+        this.draftOptions = draftOptions;
+
+        this.verifierModel = verifierModel;
+
+        this.verifierOptions = verifierOptions;
+
+        this.promptTemplates = promptTemplates;
+
+        this.verificationTemplate = promptTemplates.get(verificationTemplate).name();
+
+        this.escalationModel = escalationModel;
+
+        this.policy = policy;
+
+        this.meterRegistry = meterRegistry;
+    }
+
+    public Flux<CascadeEvent> stream(String systemText, String question) {
+
+        return Flux.defer(() -> {
+
+            long start = System.nanoTime();
+
+            StringBuilder draft = new StringBuilder();
+
+            AtomicBoolean truncated = new AtomicBoolean();
+
+            AtomicBoolean timedOut = new AtomicBoolean();
+
+            AtomicReference<String> failure = new AtomicReference<>();
+
+            Flux<CascadeEvent> draftEvents = draftModel.stream(new Prompt(List.of(new SystemMessage(systemText), new UserMessage(question)), draftOptions))
+                    .timeout(Mono.delay(policy.draftFirstTokenTimeout()), chunk -> Mono.never())
+                    .takeUntilOther(Mono.delay(policy.draftTimeout()).doOnNext(ignored -> timedOut.set(true)))
+                    .doOnNext(chatResponse -> {
+                        if (isTruncated(chatResponse)) {
+                            truncated.set(true);
+                        }
+                    })
+                    .map(SpeculativeCascade::text)
+                    .filter(text -> !text.isEmpty())
+                    .doOnNext(text -> {
+
+                        if (draft.isEmpty()) {
+                            timer("chat.cascade.time.to.first.token").record(Duration.ofNanos(System.nanoTime() - start));
+                        }
+
+                        draft.append(text);
+                    })
+                    .map(CascadeEvent::draft)
+                    .onErrorResume(exception -> {
+
+                        failure.set(exception instanceof TimeoutException ? "draft-first-token-timeout" : "draft-failed");
+
+                        log.warn("Draft model failed, escalating: {}", exception.toString());
+
+                        return Flux.empty();
+                    })
+                    .doOnComplete(() -> timer("chat.cascade.draft").record(Duration.ofNanos(System.nanoTime() - start)));
+
+            Flux<CascadeEvent> decision = Mono.fromCallable(() -> escalationReason(question, draft.toString(),
+                            failure.get(), timedOut.get(), truncated.get()))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .flatMapMany(reason -> reason.isEmpty()
+                            ? accept(start)
+                            : escalate(systemText, question, reason.get(), start));
+
+            return draftEvents.concatWith(decision);
+        });
+    }
+
+    public CascadeStats stats() {
+
+        long acceptedCount = accepted.sum();
+
+        long escalatedCount = escalated.sum();
+
+        long total = acceptedCount + escalatedCount;
+
+        return new CascadeStats(acceptedCount, escalatedCount, total == 0 ? 0 : (double) escalatedCount / total);
+    }
+
+    public long accepted() {
+
+        return accepted.sum();
+    }
+
+    public long escalated() {
+
+        return escalated.sum();
+    }
+
+    private Flux<CascadeEvent> accept(long start) {
+
+        accepted.increment();
+
+        timer("chat.cascade.requests", "outcome", "accepted").record(Duration.ofNanos(System.nanoTime() - start));
+
+        return Flux.just(CascadeEvent.accepted());
+    }
+
+    private Flux<CascadeEvent> escalate(String systemText, String question, String reason, long start) {
+
+        escalated.increment();
+
+        Counter.builder("chat.cascade.escalations").tag("reason", reason).register(meterRegistry).increment();
+
+        log.debug("Escalating '{}' to the escalation model: {}", question, reason);
+
+        return Flux.just(CascadeEvent.escalated(reason))
+                .concatWith(escalationModel.stream(new Prompt(List.of(new SystemMessage(systemText), new UserMessage(question))))
+                        .map(SpeculativeCascade::text)
+                        .filter(text -> !text.isEmpty())
+                        .map(CascadeEvent::answer))
+                .doOnComplete(() -> timer("chat.cascade.requests", "outcome", "escalated")
+                        .record(Duration.ofNanos(System.nanoTime() - start)));
+    }
+
+    /*
+    Returns why the draft has to be escalated, or nothing when it is accepted. The cheap checks run first, the
+    verifier is only asked about drafts that pass them.
+     */
+
+    private Optional<String> escalationReason(String question, String draft, String failure, boolean timedOut, boolean truncated) {
+
+        if (failure != null) {
+            return Optional.of(failure);
+        }
+
+        if (timedOut) {
+            return Optional.of("draft-timeout");
+        }
+
+        if (truncated) {
+            return Optional.of("draft-truncated");
+        }
+
+        if (draft.strip().length() < policy.minDraftCharacters()) {
+            return Optional.of("draft-too-short");
+        }
+
+        if (HEDGING.matcher(draft).find()) {
+            return Optional.of("draft-hedging");
+        }
+
+        if (!policy.verify()) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+
+        try {
+
+            ChatResponse verdict = verifierModel.call(new Prompt(new UserMessage(promptTemplates.render(verificationTemplate,
+                    Map.of("question", question, "answer", draft))), verifierOptions));
+
+            return text(verdict).strip().toUpperCase(Locale.ROOT).startsWith("YES") ? Optional.empty() : Optional.of("verifier-rejected");
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Verifier failed, escalating: {}", exception.toString());
+
+            return Optional.of("verifier-failed");
+
+        } finally {
+
+            timer("chat.cascade.verification").record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private Timer timer(String name, String... tags) {
+
+        return Timer.builder(name).tags(tags).register(meterRegistry);
+    }
+
+    private static boolean isTruncated(ChatResponse chatResponse) {
+
+        return chatResponse != null && chatResponse.getResult() != null
+                && "length".equalsIgnoreCase(chatResponse.getResult().getMetadata().getFinishReason());
+    }
+
+    private static String text(ChatResponse chatResponse) {
+
+        if (chatResponse == null || chatResponse.getResult() == null || chatResponse.getResult().getOutput().getText() == null) {
+            return "";
+        }
+
+        return chatResponse.getResult().getOutput().getText();
+    }
+
+    public record CascadeStats(long accepted, long escalated, double escalationRate) {
+    }
+}
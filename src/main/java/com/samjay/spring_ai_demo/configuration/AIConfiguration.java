@@ -1,6 +1,14 @@
 package com.samjay.spring_ai_demo.configuration;
 
+import com.samjay.spring_ai_demo.advisors.PromptLayoutAdvisor;
+import com.samjay.spring_ai_demo.advisors.SemanticCacheAdvisor;
+import com.samjay.spring_ai_demo.advisors.SingleFlightAdvisor;
 import com.samjay.spring_ai_demo.advisors.TokenPrintAdvisors;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import com.samjay.spring_ai_demo.memory.TokenBudgetChatMemory;
+import com.samjay.spring_ai_demo.memory.WriteBehindChatMemoryRepository;
+import com.samjay.spring_ai_demo.prompt.PromptTemplateRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SafeGuardAdvisor;
@@ -8,25 +16,33 @@ import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.chat.memory.repository.jdbc.JdbcChatMemoryRepository;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class AIConfiguration {
 
-    @Bean(name = "openAiChatClient")
+    @Bean(name = "basicOpenAiChatClient")
     public ChatClient openAiChatModel(OpenAiChatModel openAiChatModel) {
 
         return ChatClient.builder(openAiChatModel).build();
     }
 
-    @Bean(name = "ollamaChatClient")
+    @Bean(name = "basicOllamaChatClient")
     public ChatClient ollamaChatModel(OllamaChatModel ollamaChatModel) {
 
         return ChatClient.builder(ollamaChatModel).build();
@@ -36,7 +52,7 @@ public class AIConfiguration {
     Adding default system prompt and default options to OpenAi Chat Client for all prompts
      */
 
-    @Bean(name = "openAiChatClient")
+    @Bean(name = "defaultSystemPromptOpenAiChatClient")
     public ChatClient settingDefaultSystemPromptAndDefaultConfiguration(OpenAiChatModel openAiChatModel) {
 
         return ChatClient.builder(openAiChatModel)
@@ -55,7 +71,7 @@ public class AIConfiguration {
     This will also add safeguard advisor to filter out inappropriate content.
      */
 
-    @Bean(name = "openAiChatClient")
+    @Bean(name = "loggingOpenAiChatClient")
     public ChatClient addingLoggingAdvisorAndSafeGuardAdvisor(OpenAiChatModel openAiChatModel) {
 
         return ChatClient
@@ -69,7 +85,7 @@ public class AIConfiguration {
     This will log the token usage for each chat interaction.
      */
 
-    @Bean(name = "ollamaChatClient")
+    @Bean(name = "tokenPrintOllamaChatClient")
     public ChatClient addingCustomAdvisor(OllamaChatModel ollamaChatModel) {
 
         return ChatClient.builder(ollamaChatModel)
@@ -83,7 +99,7 @@ public class AIConfiguration {
     This example uses in-memory chat memory by default, but you can implement persistent storage as needed.
      */
 
-    @Bean(name = "openAiChatClient")
+    @Bean(name = "inMemoryChatMemoryOpenAiChatClient")
     public ChatClient configuringInMemoryChatMemoryAdvisor(OpenAiChatModel openAiChatModel, ChatMemory chatMemory) {
 
         MessageChatMemoryAdvisor messageChatMemoryAdvisor = MessageChatMemoryAdvisor.builder(chatMemory).build();
@@ -93,25 +109,150 @@ public class AIConfiguration {
                 .build();
     }
 
+    /*
+    Adding a semantic response cache in front of OpenAi Chat Client.
+    Repeated questions are answered from the exact tier, near-repeated questions from the embedding similarity tier
+    which uses the primary embedding model. Conversations with memory bypass the cache.
+     */
+
+    @Bean
+    public SemanticCacheAdvisor semanticCacheAdvisor(EmbeddingModel embeddingModel,
+                                                     @Value("${chat.cache.max-entries:1000}") int maxEntries,
+                                                     @Value("${chat.cache.time-to-live:PT1H}") Duration timeToLive,
+                                                     @Value("${chat.cache.similarity-threshold:0.95}") double similarityThreshold) {
+
+        return new SemanticCacheAdvisor(embeddingModel, maxEntries, timeToLive, similarityThreshold);
+    }
+
+    /*
+    Adding single flight advisor to OpenAi Chat Client, identical prompts that arrive while the same prompt is
+    still being answered share one model call instead of each making their own.
+    It runs after the semantic cache, so only cache misses are collapsed.
+     */
+
+    @Bean
+    public SingleFlightAdvisor singleFlightAdvisor() {
+
+        return new SingleFlightAdvisor();
+    }
+
+    /*
+    The OpenAi and Ollama chat clients used by the chat service and the /chat endpoints.
+    Both call their model through admission control, every call waits for a permit of its backend's adaptive
+    concurrency limit and tokens per minute budget instead of going straight to the model.
+    On the OpenAi client the semantic cache answers first, the single flight advisor collapses identical misses,
+    then the chat memory is added and the token print advisor records latency and token metrics tagged with the
+    client name, so cache hits are not counted as model calls.
+    Last, the prompt layout advisor lays every request of both clients out for the provider's prompt prefix cache:
+    system prompt, tools, memory and history first, the new question and its retrieved documents last. It runs after
+    the memory advisor, so the retrieved documents never end up in the chat memory.
+    The steps above are kept under their own bean names as examples, these are the only openAiChatClient and
+    ollamaChatClient beans.
+     */
+
+    @Bean(name = "openAiChatClient")
+    public ChatClient openAiChatClient(@Qualifier("openAiAdmissionControlledChatModel") AdmissionControlledChatModel openAiChatModel,
+                                       ChatMemory chatMemory, SemanticCacheAdvisor semanticCacheAdvisor,
+                                       SingleFlightAdvisor singleFlightAdvisor, PromptTemplateRegistry promptTemplates,
+                                       MeterRegistry meterRegistry) {
+
+        return ChatClient.builder(openAiChatModel)
+                .defaultAdvisors(semanticCacheAdvisor,
+                        singleFlightAdvisor,
+                        MessageChatMemoryAdvisor.builder(chatMemory).build(),
+                        new TokenPrintAdvisors(meterRegistry, "openAiChatClient"),
+                        new PromptLayoutAdvisor(promptTemplates, "retrievedDocuments", meterRegistry, "openAiChatClient"))
+                .build();
+    }
+
+    @Bean(name = "ollamaChatClient")
+    public ChatClient ollamaChatClient(@Qualifier("ollamaAdmissionControlledChatModel") AdmissionControlledChatModel ollamaChatModel,
+                                       PromptTemplateRegistry promptTemplates, MeterRegistry meterRegistry) {
+
+        return ChatClient.builder(ollamaChatModel)
+                .defaultAdvisors(new TokenPrintAdvisors(meterRegistry, "ollamaChatClient"),
+                        new PromptLayoutAdvisor(promptTemplates, "retrievedDocuments", meterRegistry, "ollamaChatClient"))
+                .build();
+    }
+
     /*
     Configuring JDBC Chat Memory Repository for persistent chat memory storage.
     This example uses a JDBC repository to store chat messages in a database.
     Here we set the maximum number of messages to retain in memory to 10.
+    Selected with chat.memory.type=message-window instead of the token budgeted memory below.
      */
 
     @Bean
-    public ChatMemory chatMemory(JdbcChatMemoryRepository jdbcChatMemoryRepository) {
+    @ConditionalOnProperty(name = "chat.memory.type", havingValue = "message-window")
+    public ChatMemory messageWindowChatMemory(WriteBehindChatMemoryRepository writeBehindChatMemoryRepository) {
+
         return MessageWindowChatMemory.builder()
-                .chatMemoryRepository(jdbcChatMemoryRepository)
+                .chatMemoryRepository(writeBehindChatMemoryRepository)
                 .maxMessages(10)
                 .build();
     }
 
+    /*
+    Limiting chat memory by prompt tokens instead of a fixed number of messages.
+    The newest messages that fit in the token budget are sent with every prompt, older messages are folded into a
+    running summary by a cheaper model in the background, so prompt size stays flat as the conversation grows.
+    This is the default chat memory, chat.memory.type=token-budget.
+     */
+
     @Bean
-    public RestClient restClient() {
+    @ConditionalOnProperty(name = "chat.memory.type", havingValue = "token-budget", matchIfMissing = true)
+    public TokenBudgetChatMemory tokenBudgetChatMemory(WriteBehindChatMemoryRepository writeBehindChatMemoryRepository,
+                                            @Qualifier("openAiAdmissionControlledChatModel") AdmissionControlledChatModel openAiChatModel,
+                                            @Value("${chat.memory.max-tokens:2000}") int maxTokens,
+                                            @Value("${chat.memory.summary-model:gpt-4o-mini}") String summaryModel) {
+
+        return new TokenBudgetChatMemory(writeBehindChatMemoryRepository, openAiChatModel, OpenAiChatOptions.builder()
+                .model(summaryModel)
+                .temperature(0.0)
+                .maxTokens(400)
+                .build(), maxTokens);
+    }
+
+    /*
+    Putting an in-memory tier in front of the JDBC Chat Memory Repository.
+    Every turn reads and rewrites the conversation window, the hot tier answers those calls from memory and writes
+    the latest window of each changed conversation to the database in the background.
+     */
+
+    @Bean
+    public WriteBehindChatMemoryRepository writeBehindChatMemoryRepository(JdbcChatMemoryRepository jdbcChatMemoryRepository,
+                                                                           @Value("${chat.memory.durability:write-behind}") WriteBehindChatMemoryRepository.Durability durability,
+                                                                           @Value("${chat.memory.flush-interval:PT1S}") Duration flushInterval,
+                                                                           @Value("${chat.memory.idle-timeout:PT30M}") Duration idleTimeout,
+                                                                           @Value("${chat.memory.max-flush-batch-size:500}") int maxFlushBatchSize) {
+
+        return new WriteBehindChatMemoryRepository(jdbcChatMemoryRepository, durability, flushInterval, idleTimeout, maxFlushBatchSize);
+    }
+
+    /*
+    The RestClient used by the weather tool runs on the JDK HttpClient, its internal tasks run on virtual threads so a
+    slow weather API call only parks a virtual thread while the tool waits for the response.
+    The base url is a property, so a local stub server can stand in for weatherapi.com.
+     */
+
+    @Bean
+    public RestClient restClient(@Value("${weather.api.base-url:http://api.weatherapi.com/v1}") String baseUrl,
+                                 @Value("${weather.api.connect-timeout:PT5S}") Duration connectTimeout,
+                                 @Value("${weather.api.read-timeout:PT10S}") Duration readTimeout) {
+
+        var httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+
+        var requestFactory = new JdkClientHttpRequestFactory(httpClient);
+
+        requestFactory.setReadTimeout(readTimeout);
+
         return RestClient
                 .builder()
-                .baseUrl("http://api.weatherapi.com/v1")
+                .baseUrl(baseUrl)
+                .requestFactory(requestFactory)
                 .build();
     }
 }
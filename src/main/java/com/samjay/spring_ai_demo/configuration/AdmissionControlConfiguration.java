@@ -0,0 +1,56 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.limiter.AdaptiveConcurrencyLimit;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import com.samjay.spring_ai_demo.limiter.TokenRateLimiter;
+import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class AdmissionControlConfiguration {
+
+    /*
+    Admission control for OpenAi, the concurrency limit adapts to the observed latency and the tokens per minute
+    budget keeps the application under the rate limit of the account.
+     */
+
+    @Bean(name = "openAiAdmissionControlledChatModel")
+    public AdmissionControlledChatModel openAiAdmissionControlledChatModel(OpenAiChatModel openAiChatModel,
+                                                                           @Value("${chat.admission.openai.initial-limit:8}") int initialLimit,
+                                                                           @Value("${chat.admission.openai.min-limit:1}") int minLimit,
+                                                                           @Value("${chat.admission.openai.max-limit:64}") int maxLimit,
+                                                                           @Value("${chat.admission.openai.max-queue-size:200}") int maxQueueSize,
+                                                                           @Value("${chat.admission.openai.tokens-per-minute:200000}") long tokensPerMinute,
+                                                                           @Value("${chat.admission.openai.max-wait:PT10S}") Duration maxWait,
+                                                                           @Value("${chat.admission.default-completion-tokens:500}") int defaultCompletionTokens) {
+
+        return new AdmissionControlledChatModel("openai", openAiChatModel,
+                new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, maxQueueSize),
+                new TokenRateLimiter(tokensPerMinute), maxWait, defaultCompletionTokens);
+    }
+
+    /*
+    Admission control for the local Ollama, a machine without a GPU only serves a couple of requests at a time
+    before it starts thrashing, so the limit is kept small and there is no token budget.
+     */
+
+    @Bean(name = "ollamaAdmissionControlledChatModel")
+    public AdmissionControlledChatModel ollamaAdmissionControlledChatModel(OllamaChatModel ollamaChatModel,
+                                                                           @Value("${chat.admission.ollama.initial-limit:2}") int initialLimit,
+                                                                           @Value("${chat.admission.ollama.min-limit:1}") int minLimit,
+                                                                           @Value("${chat.admission.ollama.max-limit:4}") int maxLimit,
+                                                                           @Value("${chat.admission.ollama.max-queue-size:50}") int maxQueueSize,
+                                                                           @Value("${chat.admission.ollama.tokens-per-minute:0}") long tokensPerMinute,
+                                                                           @Value("${chat.admission.ollama.max-wait:PT30S}") Duration maxWait,
+                                                                           @Value("${chat.admission.default-completion-tokens:500}") int defaultCompletionTokens) {
+
+        return new AdmissionControlledChatModel("ollama", ollamaChatModel,
+                new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, maxQueueSize),
+                new TokenRateLimiter(tokensPerMinute), maxWait, defaultCompletionTokens);
+    }
+}
@@ -0,0 +1,47 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.cascade.CascadePolicy;
+import com.samjay.spring_ai_demo.cascade.SpeculativeCascade;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import com.samjay.spring_ai_demo.prompt.PromptTemplateRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CascadeConfiguration {
+
+    /*
+    Letting Ollama answer first and OpenAi only when the local draft is not good enough.
+    The draft is capped at draft-max-tokens, the verifier is a small OpenAi model that only answers YES or NO, and
+    the escalation model is the OpenAi chat model with its default options. All three go through admission control.
+     */
+
+    @Bean
+    public SpeculativeCascade speculativeCascade(@Qualifier("ollamaAdmissionControlledChatModel") AdmissionControlledChatModel ollamaChatModel,
+                                                 @Qualifier("openAiAdmissionControlledChatModel") AdmissionControlledChatModel openAiChatModel,
+                                                 PromptTemplateRegistry promptTemplates, MeterRegistry meterRegistry,
+                                                 @Value("${chat.cascade.draft-max-tokens:400}") int draftMaxTokens,
+                                                 @Value("${chat.cascade.draft-first-token-timeout:PT2S}") Duration draftFirstTokenTimeout,
+                                                 @Value("${chat.cascade.draft-timeout:PT20S}") Duration draftTimeout,
+                                                 @Value("${chat.cascade.min-draft-characters:20}") int minDraftCharacters,
+                                                 @Value("${chat.cascade.verify:true}") boolean verify,
+                                                 @Value("${chat.cascade.verifier-model:gpt-4o-mini}") String verifierModel) {
+
+        return new SpeculativeCascade(
+                ollamaChatModel,
+                ChatOptions.builder().maxTokens(draftMaxTokens).build(),
+                openAiChatModel,
+                ChatOptions.builder().model(verifierModel).temperature(0.0).maxTokens(1).build(),
+                promptTemplates,
+                "cascadeVerification",
+                openAiChatModel,
+                new CascadePolicy(draftFirstTokenTimeout, draftTimeout, minDraftCharacters, verify),
+                meterRegistry);
+    }
+}
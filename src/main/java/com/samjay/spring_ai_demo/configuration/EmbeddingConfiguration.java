@@ -1,10 +1,16 @@
 package com.samjay.spring_ai_demo.configuration;
 
-import org.springframework.ai.embedding.EmbeddingModel;
+import com.samjay.spring_ai_demo.embedding.CachingEmbeddingModel;
+import com.samjay.spring_ai_demo.embedding.MappedEmbeddingStore;
+import org.springframework.ai.model.openai.autoconfigure.OpenAiEmbeddingProperties;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
 
 @Configuration
 public class EmbeddingConfiguration {
@@ -14,12 +20,27 @@ public class EmbeddingConfiguration {
     OpenAIEmbeddingModel and OllamaEmbeddingModel. VectorStore needs a primary EmbeddingModel bean to function properly.
     By marking OpenAiEmbeddingModel as primary, we ensure that it is the default choice for dependency injection
     when an EmbeddingModel is required.
+
+    The OpenAiEmbeddingModel is wrapped in a cache keyed by a hash of the text, so identical questions and unchanged
+    chunks are only embedded once. The disk tier is optional and keeps the cached embeddings across restarts.
+    The embedding model and dimensions configured for OpenAi are the defaults the cache keys and the disk file are
+    tied to.
      */
 
     @Bean
     @Primary
-    public EmbeddingModel primaryEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel) {
-        return openAiEmbeddingModel;
+    public CachingEmbeddingModel primaryEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                       @Value("${spring.ai.openai.embedding.options.model:" + OpenAiEmbeddingProperties.DEFAULT_EMBEDDING_MODEL + "}") String model,
+                                                       @Value("${spring.ai.openai.embedding.options.dimensions:#{null}}") Integer dimensions,
+                                                       @Value("${embedding.cache.heap-size:64MB}") DataSize heapSize,
+                                                       @Value("${embedding.cache.disk.enabled:false}") boolean diskEnabled,
+                                                       @Value("${embedding.cache.disk.path:embedding-cache.bin}") Path diskPath,
+                                                       @Value("${embedding.cache.disk.capacity:50000}") int diskCapacity) {
+
+        MappedEmbeddingStore diskStore = diskEnabled
+                ? new MappedEmbeddingStore(diskPath, diskCapacity, CachingEmbeddingModel.model(model, dimensions), dimensions)
+                : null;
+
+        return new CachingEmbeddingModel(openAiEmbeddingModel, model, dimensions, heapSize.toBytes(), diskStore);
     }
 }
-
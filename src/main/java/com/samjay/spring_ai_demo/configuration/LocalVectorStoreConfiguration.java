@@ -0,0 +1,35 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.vectorstore.LocalVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+Selecting the in-process vector store with spring.ai.vectorstore.type=local.
+The pgvector auto configuration only runs for the pgvector type, so this store replaces it for the RAG advisors,
+the ingestion pipeline and the incremental indexer without any other change.
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "local")
+public class LocalVectorStoreConfiguration {
+
+    @Bean
+    public LocalVectorStore localVectorStore(EmbeddingModel embeddingModel,
+                                             @Value("${vectorstore.local.directory:vector-store}") Path directory,
+                                             @Value("${vectorstore.local.hnsw-threshold:10000}") int hnswThreshold,
+                                             @Value("${vectorstore.local.hnsw.max-neighbors:16}") int hnswMaxNeighbors,
+                                             @Value("${vectorstore.local.hnsw.ef-construction:200}") int hnswEfConstruction,
+                                             @Value("${vectorstore.local.hnsw.ef-search:64}") int hnswEfSearch,
+                                             @Value("${vectorstore.local.snapshot-interval:PT1M}") Duration snapshotInterval) {
+
+        return new LocalVectorStore(embeddingModel, directory, hnswThreshold, hnswMaxNeighbors, hnswEfConstruction,
+                hnswEfSearch, snapshotInterval);
+    }
+}
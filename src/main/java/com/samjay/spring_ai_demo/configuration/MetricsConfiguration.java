@@ -0,0 +1,235 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.advisors.SemanticCacheAdvisor;
+import com.samjay.spring_ai_demo.advisors.SingleFlightAdvisor;
+import com.samjay.spring_ai_demo.cascade.SpeculativeCascade;
+import com.samjay.spring_ai_demo.embedding.CachingEmbeddingModel;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import com.samjay.spring_ai_demo.rag.Bm25Index;
+import com.samjay.spring_ai_demo.rag.ContextPacker;
+import com.samjay.spring_ai_demo.routing.ModelBackend;
+import com.samjay.spring_ai_demo.routing.RoutingChatModel;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfiguration {
+
+    /*
+    Exposing the semantic response cache and the embedding cache statistics as Micrometer meters,
+    so they are exported together with the chat client metrics.
+     */
+
+    @Bean
+    public MeterBinder semanticCacheMetrics(SemanticCacheAdvisor semanticCacheAdvisor) {
+
+        return meterRegistry -> {
+
+            FunctionCounter.builder("chat.cache.requests", semanticCacheAdvisor, advisor -> advisor.stats().exactHits())
+                    .tag("result", "exact-hit")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.cache.requests", semanticCacheAdvisor, advisor -> advisor.stats().semanticHits())
+                    .tag("result", "semantic-hit")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.cache.requests", semanticCacheAdvisor, advisor -> advisor.stats().misses())
+                    .tag("result", "miss")
+                    .register(meterRegistry);
+
+            Gauge.builder("chat.cache.size", semanticCacheAdvisor, advisor -> advisor.stats().size())
+                    .register(meterRegistry);
+        };
+    }
+
+    @Bean
+    public MeterBinder embeddingCacheMetrics(CachingEmbeddingModel cachingEmbeddingModel) {
+
+        return meterRegistry -> {
+
+            FunctionCounter.builder("embedding.cache.requests", cachingEmbeddingModel, model -> model.stats().heapHits())
+                    .tag("result", "heap-hit")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("embedding.cache.requests", cachingEmbeddingModel, model -> model.stats().diskHits())
+                    .tag("result", "disk-hit")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("embedding.cache.requests", cachingEmbeddingModel, model -> model.stats().misses())
+                    .tag("result", "miss")
+                    .register(meterRegistry);
+
+            Gauge.builder("embedding.cache.bytes", cachingEmbeddingModel, model -> model.stats().heapBytes())
+                    .tag("tier", "heap")
+                    .register(meterRegistry);
+
+            Gauge.builder("embedding.cache.bytes", cachingEmbeddingModel, model -> model.stats().diskBytes())
+                    .tag("tier", "disk")
+                    .register(meterRegistry);
+        };
+    }
+
+    @Bean
+    public MeterBinder singleFlightMetrics(SingleFlightAdvisor singleFlightAdvisor) {
+
+        return meterRegistry -> {
+
+            FunctionCounter.builder("chat.single.flight.requests", singleFlightAdvisor, SingleFlightAdvisor::upstreamCalls)
+                    .tag("result", "upstream")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.single.flight.requests", singleFlightAdvisor, SingleFlightAdvisor::coalescedCalls)
+                    .tag("result", "coalesced")
+                    .register(meterRegistry);
+        };
+    }
+
+    /*
+    The router's view of every backend: latency average, requests waiting on it and whether it is cooling down after a failure.
+     */
+
+    @Bean
+    public MeterBinder modelRouterMetrics(RoutingChatModel routingChatModel) {
+
+        return meterRegistry -> {
+
+            for (ModelBackend backend : routingChatModel.backends()) {
+
+                Gauge.builder("chat.router.latency.ewma", backend, ModelBackend::latencyEwmaMillis)
+                        .tag("backend", backend.name())
+                        .baseUnit("milliseconds")
+                        .register(meterRegistry);
+
+                Gauge.builder("chat.router.in.flight", backend, ModelBackend::inFlight)
+                        .tag("backend", backend.name())
+                        .register(meterRegistry);
+
+                Gauge.builder("chat.router.available", backend, model -> model.isAvailable(System.currentTimeMillis()) ? 1 : 0)
+                        .tag("backend", backend.name())
+                        .register(meterRegistry);
+
+                FunctionCounter.builder("chat.router.requests", backend, ModelBackend::requests)
+                        .tag("backend", backend.name())
+                        .register(meterRegistry);
+
+                FunctionCounter.builder("chat.router.failures", backend, ModelBackend::failures)
+                        .tag("backend", backend.name())
+                        .register(meterRegistry);
+            }
+
+            FunctionCounter.builder("chat.router.hedged.calls", routingChatModel, RoutingChatModel::hedgedCalls)
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.router.failovers", routingChatModel, RoutingChatModel::failovers)
+                    .register(meterRegistry);
+        };
+    }
+
+    /*
+    Live admission control state of every model backend: the current adaptive limit next to the calls using it,
+    the requests waiting for a permit, the tokens left in the per minute budget and the rejected requests.
+     */
+
+    @Bean
+    public MeterBinder admissionControlMetrics(ObjectProvider<AdmissionControlledChatModel> admissionControlledChatModels) {
+
+        return meterRegistry -> admissionControlledChatModels.orderedStream().forEach(chatModel -> {
+
+            Gauge.builder("chat.admission.limit", chatModel, model -> model.concurrencyLimit().limit())
+                    .tag("backend", chatModel.name())
+                    .register(meterRegistry);
+
+            Gauge.builder("chat.admission.in.flight", chatModel, model -> model.concurrencyLimit().inFlight())
+                    .tag("backend", chatModel.name())
+                    .register(meterRegistry);
+
+            Gauge.builder("chat.admission.waiting", chatModel, model -> model.concurrencyLimit().waiting())
+                    .tag("backend", chatModel.name())
+                    .register(meterRegistry);
+
+            Gauge.builder("chat.admission.tokens.available", chatModel, model -> model.tokenRateLimiter().available())
+                    .tag("backend", chatModel.name())
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.admission.rejected", chatModel, model -> model.concurrencyLimit().rejected())
+                    .tag("backend", chatModel.name())
+                    .tag("reason", "concurrency")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.admission.rejected", chatModel, model -> model.tokenRateLimiter().rejected())
+                    .tag("backend", chatModel.name())
+                    .tag("reason", "tokens-per-minute")
+                    .register(meterRegistry);
+        });
+    }
+
+    @Bean
+    public MeterBinder lexicalIndexMetrics(Bm25Index bm25Index) {
+
+        return meterRegistry -> {
+
+            Gauge.builder("rag.lexical.chunks", bm25Index, Bm25Index::size)
+                    .register(meterRegistry);
+
+            Gauge.builder("rag.lexical.terms", bm25Index, Bm25Index::termCount)
+                    .register(meterRegistry);
+        };
+    }
+
+    /*
+    How the retrieved documents were used: packed into the context, dropped as duplicates or dropped for the budget.
+     */
+
+    @Bean
+    public MeterBinder contextPackingMetrics(ContextPacker contextPacker) {
+
+        return meterRegistry -> {
+
+            FunctionCounter.builder("rag.context.documents", contextPacker, packer -> packer.stats().packedDocuments())
+                    .tag("result", "packed")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("rag.context.documents", contextPacker, packer -> packer.stats().duplicateDocuments())
+                    .tag("result", "duplicate")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("rag.context.documents", contextPacker, packer -> packer.stats().overBudgetDocuments())
+                    .tag("result", "over-budget")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("rag.context.tokens", contextPacker, packer -> packer.stats().packedTokens())
+                    .tag("result", "packed")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("rag.context.tokens", contextPacker, packer -> packer.stats().droppedTokens())
+                    .tag("result", "dropped")
+                    .register(meterRegistry);
+        };
+    }
+
+    /*
+    Drafts answered locally next to drafts escalated to OpenAi, the escalation rate of the cascade.
+     */
+
+    @Bean
+    public MeterBinder cascadeMetrics(SpeculativeCascade speculativeCascade) {
+
+        return meterRegistry -> {
+
+            FunctionCounter.builder("chat.cascade.outcomes", speculativeCascade, SpeculativeCascade::accepted)
+                    .tag("outcome", "accepted")
+                    .register(meterRegistry);
+
+            FunctionCounter.builder("chat.cascade.outcomes", speculativeCascade, SpeculativeCascade::escalated)
+                    .tag("outcome", "escalated")
+                    .register(meterRegistry);
+
+            Gauge.builder("chat.cascade.escalation.rate", speculativeCascade, cascade -> cascade.stats().escalationRate())
+                    .register(meterRegistry);
+        };
+    }
+}
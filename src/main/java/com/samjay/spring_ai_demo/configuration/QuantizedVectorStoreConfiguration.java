@@ -0,0 +1,40 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.vectorstore.Quantization;
+import com.samjay.spring_ai_demo.vectorstore.QuantizedPgVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/*
+Searching pgvector through a quantized index with vectorstore.pgvector.quantization=halfvec or binary.
+The auto configured PgVectorStore is still created and does the writes, the quantized store is marked as primary so
+the RAG advisors, the ingestion pipeline and the incremental indexer search through it.
+ */
+
+@Configuration
+@ConditionalOnExpression("'${spring.ai.vectorstore.type:pgvector}' == 'pgvector' and !'${vectorstore.pgvector.quantization:none}'.equalsIgnoreCase('none')")
+public class QuantizedVectorStoreConfiguration {
+
+    @Bean
+    @Primary
+    public QuantizedPgVectorStore quantizedVectorStore(PgVectorStore pgVectorStore, EmbeddingModel embeddingModel,
+                                                       JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                                       @Value("${vectorstore.pgvector.quantization}") Quantization quantization,
+                                                       @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                                       @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                                       @Value("${spring.ai.vectorstore.pgvector.dimensions:1536}") int dimensions,
+                                                       @Value("${vectorstore.pgvector.rerank-factor:4}") int rerankFactor,
+                                                       @Value("${vectorstore.pgvector.ef-search:40}") int efSearch,
+                                                       @Value("${spring.ai.vectorstore.pgvector.initialize-schema:false}") boolean initializeIndex) {
+
+        return new QuantizedPgVectorStore(pgVectorStore, embeddingModel, jdbcTemplate, transactionManager, quantization,
+                schemaName, tableName, dimensions, rerankFactor, efSearch, initializeIndex);
+    }
+}
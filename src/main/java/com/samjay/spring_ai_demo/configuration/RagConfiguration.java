@@ -0,0 +1,9 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(RagPipelineProperties.class)
+public class RagConfiguration {
+}
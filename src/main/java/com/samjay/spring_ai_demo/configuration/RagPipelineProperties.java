@@ -0,0 +1,48 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+Named RAG pipelines, every profile is built once at startup and selected per request by its name.
+ */
+
+@ConfigurationProperties(prefix = "rag")
+public record RagPipelineProperties(Map<String, Profile> profiles) {
+
+    public record Profile(@DefaultValue("retrieval-augmentation") Type type,
+                          @DefaultValue("3") int topK,
+                          @DefaultValue("0.75") double similarityThreshold,
+                          @DefaultValue List<Stage> stages,
+                          @DefaultValue("3") int expandedQueries,
+                          @DefaultValue("English") String targetLanguage,
+                          @DefaultValue("20") int hybridCandidates) {
+    }
+
+    public enum Type {
+
+        QUESTION_ANSWER,
+
+        RETRIEVAL_AUGMENTATION
+    }
+
+    public enum Stage {
+
+        REWRITE,
+
+        TRANSLATE,
+
+        REWRITE_AND_TRANSLATE,
+
+        EXPAND,
+
+        PARALLEL_RETRIEVAL,
+
+        RANK_FUSION,
+
+        HYBRID
+    }
+}
@@ -0,0 +1,55 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.advisors.TokenPrintAdvisors;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import com.samjay.spring_ai_demo.routing.ModelBackend;
+import com.samjay.spring_ai_demo.routing.RoutingChatModel;
+import com.samjay.spring_ai_demo.routing.RoutingPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class RoutingConfiguration {
+
+    /*
+    Routing between OpenAi and Ollama instead of picking a model by hand.
+    Ollama is free but only gets prompts that fit its prompt limit, OpenAi is paid per token, so short prompts go to
+    whichever backend is expected to answer first once the cost of the prompt is taken into account.
+    The backends are the admission controlled models, a backend that rejects a request is failed over like one that errors.
+     */
+
+    @Bean
+    public RoutingChatModel routingChatModel(@Qualifier("openAiAdmissionControlledChatModel") AdmissionControlledChatModel openAiChatModel,
+                                             @Qualifier("ollamaAdmissionControlledChatModel") AdmissionControlledChatModel ollamaChatModel,
+                                             @Value("${chat.router.openai.cost-per-million-tokens:2.0}") double openAiCost,
+                                             @Value("${chat.router.openai.max-prompt-tokens:100000}") int openAiMaxPromptTokens,
+                                             @Value("${chat.router.ollama.cost-per-million-tokens:0}") double ollamaCost,
+                                             @Value("${chat.router.ollama.max-prompt-tokens:2000}") int ollamaMaxPromptTokens,
+                                             @Value("${chat.router.ewma-alpha:0.2}") double ewmaAlpha,
+                                             @Value("${chat.router.millis-per-cent:1000}") double millisPerCent,
+                                             @Value("${chat.router.hedge.enabled:true}") boolean hedgingEnabled,
+                                             @Value("${chat.router.hedge.min-delay:PT2S}") Duration hedgeMinDelay,
+                                             @Value("${chat.router.hedge.latency-multiplier:2.0}") double hedgeLatencyMultiplier,
+                                             @Value("${chat.router.failure-cooldown:PT30S}") Duration failureCooldown) {
+
+        return new RoutingChatModel(List.of(
+                new ModelBackend("openai", openAiChatModel, openAiCost, openAiMaxPromptTokens),
+                new ModelBackend("ollama", ollamaChatModel, ollamaCost, ollamaMaxPromptTokens)),
+                new RoutingPolicy(ewmaAlpha, millisPerCent, hedgingEnabled, hedgeMinDelay, hedgeLatencyMultiplier, failureCooldown));
+    }
+
+    @Bean(name = "routedChatClient")
+    public ChatClient routedChatClient(RoutingChatModel routingChatModel, MeterRegistry meterRegistry) {
+
+        return ChatClient.builder(routingChatModel)
+                .defaultAdvisors(new TokenPrintAdvisors(meterRegistry, "routedChatClient"))
+                .build();
+    }
+}
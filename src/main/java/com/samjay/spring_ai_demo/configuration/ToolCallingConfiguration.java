@@ -0,0 +1,68 @@
+package com.samjay.spring_ai_demo.configuration;
+
+import com.samjay.spring_ai_demo.toolcalling.CachingToolCallback;
+import com.samjay.spring_ai_demo.toolcalling.ParallelToolCallingManager;
+import com.samjay.spring_ai_demo.toolcalling.SimpleDateTimeTool;
+import com.samjay.spring_ai_demo.toolcalling.WeatherApiTool;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.StaticToolCallbackProvider;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+@Configuration
+public class ToolCallingConfiguration {
+
+    /*
+    Replacing the default tool calling manager of the chat models, the cacheable tool calls of one model turn run in
+    parallel and everything else is left to the default manager.
+     */
+
+    @Bean
+    public ParallelToolCallingManager toolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                                         ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                                         ObjectProvider<ObservationRegistry> observationRegistry) {
+
+        return new ParallelToolCallingManager(ToolCallingManager.builder()
+                .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(toolExecutionExceptionProcessor)
+                .build());
+    }
+
+    /*
+    The weather of a city does not change within a few minutes, so its results are cached by city.
+     */
+
+    @Bean
+    public ToolCallbackProvider weatherToolCallbackProvider(WeatherApiTool weatherApiTool, MeterRegistry meterRegistry,
+                                                            @Value("${tools.cache.weather.time-to-live:PT5M}") Duration timeToLive,
+                                                            @Value("${tools.cache.max-entries:1000}") int maxEntries) {
+
+        return new StaticToolCallbackProvider(Arrays.stream(ToolCallbacks.from(weatherApiTool))
+                .map(toolCallback -> new CachingToolCallback(toolCallback, timeToLive, maxEntries, meterRegistry))
+                .toList());
+    }
+
+    /*
+    The date and time tools read the clock and set alarms, they are timed but never cached.
+     */
+
+    @Bean
+    public ToolCallbackProvider dateTimeToolCallbackProvider(MeterRegistry meterRegistry) {
+
+        return new StaticToolCallbackProvider(Arrays.stream(ToolCallbacks.from(new SimpleDateTimeTool()))
+                .map(toolCallback -> new CachingToolCallback(toolCallback, Duration.ZERO, 0, meterRegistry))
+                .toList());
+    }
+}
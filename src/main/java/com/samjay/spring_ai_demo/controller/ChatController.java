@@ -1,14 +1,26 @@
 package com.samjay.spring_ai_demo.controller;
 
+import com.samjay.spring_ai_demo.advisors.SemanticCacheAdvisor;
+import com.samjay.spring_ai_demo.cascade.SpeculativeCascade;
+import com.samjay.spring_ai_demo.embedding.CachingEmbeddingModel;
+import com.samjay.spring_ai_demo.entity.JobExtractionReport;
 import com.samjay.spring_ai_demo.helper.Helper;
+import com.samjay.spring_ai_demo.rag.RagStageTimings;
+import com.samjay.spring_ai_demo.routing.RoutingChatModel;
 import com.samjay.spring_ai_demo.service.ChatService;
+import com.samjay.spring_ai_demo.service.JobExtractionService;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/v1")
 public class ChatController {
@@ -44,13 +56,45 @@ public class ChatController {
 
     private final ChatService chatService;
 
-    public ChatController(@Qualifier("openAiChatClient") ChatClient openAiChatClient, @Qualifier("ollamaChatClient") ChatClient ollamaChatClient, ChatService chatService) {
+    private final SemanticCacheAdvisor semanticCacheAdvisor;
+
+    private final CachingEmbeddingModel cachingEmbeddingModel;
+
+    private final RagStageTimings ragStageTimings;
+
+    private final JobExtractionService jobExtractionService;
+
+    private final ChatClient routedChatClient;
+
+    private final RoutingChatModel routingChatModel;
+
+    private final SpeculativeCascade speculativeCascade;
+
+    public ChatController(@Qualifier("openAiChatClient") ChatClient openAiChatClient, @Qualifier("ollamaChatClient") ChatClient ollamaChatClient,
+                          ChatService chatService, SemanticCacheAdvisor semanticCacheAdvisor, CachingEmbeddingModel cachingEmbeddingModel,
+                          RagStageTimings ragStageTimings, JobExtractionService jobExtractionService,
+                          @Qualifier("routedChatClient") ChatClient routedChatClient, RoutingChatModel routingChatModel,
+                          SpeculativeCascade speculativeCascade) {
 
         this.openAiChatClient = openAiChatClient;
 
         this.ollamaChatClient = ollamaChatClient;
 
         this.chatService = chatService;
+
+        this.semanticCacheAdvisor = semanticCacheAdvisor;
+
+        this.cachingEmbeddingModel = cachingEmbeddingModel;
+
+        this.ragStageTimings = ragStageTimings;
+
+        this.jobExtractionService = jobExtractionService;
+
+        this.routedChatClient = routedChatClient;
+
+        this.routingChatModel = routingChatModel;
+
+        this.speculativeCascade = speculativeCascade;
     }
 
     @GetMapping("/chat/openai")
@@ -69,12 +113,56 @@ public class ChatController {
         return ResponseEntity.ok(aiResponse);
     }
 
+    /*
+    The backend is picked per request by the model router instead of by the caller.
+     */
+
+    @GetMapping("/chat/routed")
+    public ResponseEntity<String> sendMessageToRoutedModel(String message) {
+
+        String aiResponse = routedChatClient.prompt(message).call().content();
+
+        return ResponseEntity.ok(aiResponse);
+    }
+
+    @GetMapping("/chat/router/stats")
+    public ResponseEntity<List<RoutingChatModel.BackendStats>> getRouterStats() {
+
+        return ResponseEntity.ok(routingChatModel.stats());
+    }
+
+    /*
+    Ollama drafts the answer and OpenAi answers only when the draft is rejected. Every event is named after its type
+    (draft, accepted, escalated, answer), a client shows the draft as it arrives and replaces it when escalated arrives.
+     */
+
+    @GetMapping(value = "/chat/cascade", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamCascadedAnswer(@RequestParam String message) {
+
+        return ResponseEntity.ok(speculativeCascade.stream("You are a helpful assistant.", message)
+                .map(event -> ServerSentEvent.builder(event.text())
+                        .event(event.type().name().toLowerCase(Locale.ROOT))
+                        .build()));
+    }
+
+    @GetMapping("/chat/cascade/stats")
+    public ResponseEntity<SpeculativeCascade.CascadeStats> getCascadeStats() {
+
+        return ResponseEntity.ok(speculativeCascade.stats());
+    }
+
     @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public ResponseEntity<Flux<String>> streamMessageFromModel(String message) {
 
         return ResponseEntity.ok(chatService.streamChatResponseFromAiModel(message));
     }
 
+    @GetMapping(value = "/chat/stream/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<String>> streamMessageReactively(@RequestParam String message, @RequestHeader(required = false) String userId) {
+
+        return ResponseEntity.ok(chatService.streamChatResponseReactively(message, userId));
+    }
+
     @GetMapping(value = "/chat/user")
     public ResponseEntity<String> chatUsingService(@RequestParam String message, @RequestHeader String userId) {
 
@@ -91,4 +179,34 @@ public class ChatController {
 
         return ResponseEntity.ok("Data added to Vector DB successfully.");
     }
+
+    @GetMapping("/chat/cache/stats")
+    public ResponseEntity<SemanticCacheAdvisor.CacheStats> getCacheStats() {
+
+        return ResponseEntity.ok(semanticCacheAdvisor.stats());
+    }
+
+    @GetMapping("/embedding/cache/stats")
+    public ResponseEntity<CachingEmbeddingModel.EmbeddingCacheStats> getEmbeddingCacheStats() {
+
+        return ResponseEntity.ok(cachingEmbeddingModel.stats());
+    }
+
+    @GetMapping("/chat/rag")
+    public ResponseEntity<String> chatUsingRagProfile(@RequestParam String message, @RequestParam(defaultValue = "parallel") String profile) {
+
+        return ResponseEntity.ok(chatService.chatWithRagProfile(message, profile));
+    }
+
+    @GetMapping("/rag/timings")
+    public ResponseEntity<Map<String, RagStageTimings.StageSummary>> getRagStageTimings() {
+
+        return ResponseEntity.ok(ragStageTimings.summary());
+    }
+
+    @PostMapping("/jobs/extract/bulk")
+    public ResponseEntity<JobExtractionReport> extractJobsInBulk(@RequestBody List<String> descriptions) {
+
+        return ResponseEntity.ok(jobExtractionService.extractJobs(descriptions));
+    }
 }
@@ -0,0 +1,271 @@
+package com.samjay.spring_ai_demo.embedding;
+
+import com.samjay.spring_ai_demo.helper.ContentHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Embedding model decorator that caches vectors by a hash of the embedded text.
+The first tier is an LRU map on the heap that stores plain float arrays and is bounded by the bytes the vectors use.
+The optional second tier is a memory mapped file, so embeddings computed before a restart are not paid for again.
+Ingestion and retrieval both go through the primary embedding model, so they share the cache.
+Requests without a model or dimensions option are embedded with the delegate's defaults, so those defaults are part
+of every key and a changed embedding model never gets the vectors of the previous one.
+ */
+
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+
+    private final String defaultModel;
+
+    private final Integer defaultDimensions;
+
+    private final long maxHeapBytes;
+
+    private final MappedEmbeddingStore diskStore;
+
+    private final LinkedHashMap<EmbeddingKey, float[]> heapEntries = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long heapBytes;
+
+    private final LongAdder heapHits = new LongAdder();
+
+    private final LongAdder diskHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String defaultModel, Integer defaultDimensions, long maxHeapBytes,
+                                 MappedEmbeddingStore diskStore) {
+
+        this.delegate = delegate;
+
+        this.defaultModel = defaultModel;
+
+        this.defaultDimensions = defaultDimensions;
+
+        this.maxHeapBytes = maxHeapBytes;
+
+        this.diskStore = diskStore;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+
+        List<String> texts = request.getInstructions();
+
+        float[][] vectors = new float[texts.size()][];
+
+        EmbeddingKey[] keys = new EmbeddingKey[texts.size()];
+
+        Map<EmbeddingKey, List<Integer>> missing = new LinkedHashMap<>();
+
+        List<String> missingTexts = new ArrayList<>();
+
+        for (int i = 0; i < texts.size(); i++) {
+
+            keys[i] = EmbeddingKey.of(texts.get(i), modelOf(request.getOptions()));
+
+            vectors[i] = lookup(keys[i]);
+
+            if (vectors[i] == null) {
+
+                List<Integer> positions = missing.computeIfAbsent(keys[i], key -> new ArrayList<>());
+
+                if (positions.isEmpty()) {
+                    missingTexts.add(texts.get(i));
+                }
+
+                positions.add(i);
+            }
+        }
+
+        if (!missingTexts.isEmpty()) {
+
+            misses.add(missingTexts.size());
+
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+
+            int index = 0;
+
+            for (Map.Entry<EmbeddingKey, List<Integer>> entry : missing.entrySet()) {
+
+                float[] vector = response.getResults().get(index++).getOutput();
+
+                store(entry.getKey(), vector);
+
+                entry.getValue().forEach(position -> vectors[position] = vector);
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+
+        return delegate.dimensions();
+    }
+
+    public EmbeddingCacheStats stats() {
+
+        long bytes;
+
+        synchronized (heapEntries) {
+            bytes = heapBytes;
+        }
+
+        return new EmbeddingCacheStats(heapHits.sum(), diskHits.sum(), misses.sum(), bytes, diskStore == null ? 0 : diskStore.bytesUsed());
+    }
+
+    @Override
+    public void close() {
+
+        if (diskStore != null) {
+            diskStore.close();
+        }
+    }
+
+    /*
+    The model and dimensions the delegate embeds with, the request options win over the delegate's defaults.
+     */
+
+    private String modelOf(EmbeddingOptions options) {
+
+        String model = options == null || options.getModel() == null ? defaultModel : options.getModel();
+
+        Integer dimensions = options == null || options.getDimensions() == null ? defaultDimensions : options.getDimensions();
+
+        return model(model, dimensions);
+    }
+
+    /*
+    Identifies the vectors of a model, null dimensions are the model's own number of dimensions.
+     */
+
+    public static String model(String model, Integer dimensions) {
+
+        return model + "|" + (dimensions == null ? "default" : dimensions);
+    }
+
+    private float[] lookup(EmbeddingKey key) {
+
+        synchronized (heapEntries) {
+
+            float[] vector = heapEntries.get(key);
+
+            if (vector != null) {
+
+                heapHits.increment();
+
+                return vector;
+            }
+        }
+
+        if (diskStore != null) {
+
+            float[] vector = diskStore.get(key);
+
+            if (vector != null) {
+
+                diskHits.increment();
+
+                putOnHeap(key, vector);
+
+                return vector;
+            }
+        }
+
+        return null;
+    }
+
+    private void store(EmbeddingKey key, float[] vector) {
+
+        putOnHeap(key, vector);
+
+        if (diskStore != null) {
+
+            try {
+
+                diskStore.put(key, vector);
+
+            } catch (RuntimeException exception) {
+
+                log.warn("Could not write embedding to the disk cache: {}", exception.getMessage());
+            }
+        }
+    }
+
+    private void putOnHeap(EmbeddingKey key, float[] vector) {
+
+        synchronized (heapEntries) {
+
+            float[] previous = heapEntries.put(key, vector);
+
+            heapBytes += sizeOf(vector) - (previous == null ? 0 : sizeOf(previous));
+
+            var iterator = heapEntries.values().iterator();
+
+            while (heapBytes > maxHeapBytes && iterator.hasNext()) {
+
+                heapBytes -= sizeOf(iterator.next());
+
+                iterator.remove();
+            }
+        }
+    }
+
+    private static long sizeOf(float[] vector) {
+
+        return (long) vector.length * Float.BYTES;
+    }
+
+    /*
+    128 bits of the SHA-256 of the text, the effective model and dimensions that produce the vector are hashed with it.
+     */
+
+    record EmbeddingKey(long high, long low) {
+
+        static EmbeddingKey of(String text, String model) {
+
+            ByteBuffer hash = ByteBuffer.wrap(ContentHash.sha256(model + '\n' + text));
+
+            return new EmbeddingKey(hash.getLong(), hash.getLong());
+        }
+    }
+
+    public record EmbeddingCacheStats(long heapHits, long diskHits, long misses, long heapBytes, long diskBytes) {
+
+        public double hitRatio() {
+
+            long total = heapHits + diskHits + misses;
+
+            return total == 0 ? 0 : (double) (heapHits + diskHits) / total;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.samjay.spring_ai_demo.embedding;
+
+import com.samjay.spring_ai_demo.helper.ContentHash;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Fixed size embedding store backed by a memory mapped file.
+Every record has the same size (a 128 bit key followed by the vector), so the file is a simple array of slots that is
+filled like a ring buffer: once it is full the oldest slot is overwritten. Only the key to slot index lives on the heap,
+it is rebuilt from the file when the application starts.
+The header holds a hash of the embedding model the vectors came from and their dimensions, a file written for another
+model, other dimensions or another capacity is deleted on start instead of being served.
+ */
+
+@Slf4j
+public class MappedEmbeddingStore {
+
+    private static final int MAGIC = 0x454d4243;
+
+    private static final int HEADER_BYTES = 32;
+
+    private final Path path;
+
+    private final int capacity;
+
+    private final long modelHash;
+
+    private final Integer expectedDimensions;
+
+    private final Map<CachingEmbeddingModel.EmbeddingKey, Integer> slots = new HashMap<>();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private int dimensions;
+
+    private int recordBytes;
+
+    private int count;
+
+    private int next;
+
+    public MappedEmbeddingStore(Path path, int capacity, String model, Integer dimensions) {
+
+        this.path = path;
+
+        this.capacity = capacity;
+
+        this.modelHash = ByteBuffer.wrap(ContentHash.sha256(model)).getLong();
+
+        this.expectedDimensions = dimensions;
+
+        if (Files.exists(path)) {
+            open();
+        }
+    }
+
+    synchronized float[] get(CachingEmbeddingModel.EmbeddingKey key) {
+
+        Integer slot = slots.get(key);
+
+        if (slot == null) {
+            return null;
+        }
+
+        float[] vector = new float[dimensions];
+
+        buffer.slice(offsetOf(slot) + 2 * Long.BYTES, dimensions * Float.BYTES).asFloatBuffer().get(vector);
+
+        return vector;
+    }
+
+    synchronized void put(CachingEmbeddingModel.EmbeddingKey key, float[] vector) {
+
+        if (buffer == null) {
+            create(expectedDimensions == null ? vector.length : expectedDimensions);
+        }
+
+        if (vector.length != dimensions || slots.containsKey(key)) {
+            return;
+        }
+
+        int slot = next;
+
+        int offset = offsetOf(slot);
+
+        if (count == capacity) {
+            slots.remove(new CachingEmbeddingModel.EmbeddingKey(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES)));
+        } else {
+            count++;
+        }
+
+        buffer.putLong(offset, key.high());
+
+        buffer.putLong(offset + Long.BYTES, key.low());
+
+        buffer.slice(offset + 2 * Long.BYTES, dimensions * Float.BYTES).asFloatBuffer().put(vector);
+
+        slots.put(key, slot);
+
+        next = (slot + 1) % capacity;
+
+        buffer.putInt(12, count);
+
+        buffer.putInt(16, next);
+    }
+
+    synchronized long bytesUsed() {
+
+        return (long) count * recordBytes;
+    }
+
+    synchronized void close() {
+
+        if (buffer != null) {
+            buffer.force();
+        }
+
+        try {
+
+            if (channel != null) {
+                channel.close();
+            }
+
+        } catch (IOException exception) {
+
+            log.warn("Could not close embedding cache file {}", path, exception);
+        }
+    }
+
+    private void open() {
+
+        try {
+
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+            if (header.getInt(0) != MAGIC || header.getInt(8) != capacity || header.getLong(24) != modelHash
+                    || (expectedDimensions != null && header.getInt(4) != expectedDimensions)) {
+
+                log.warn("Embedding cache file {} has a different layout or embedding model, starting with an empty cache", path);
+
+                channel.close();
+
+                Files.delete(path);
+
+                return;
+            }
+
+            map(header.getInt(4));
+
+            count = buffer.getInt(12);
+
+            next = buffer.getInt(16);
+
+            for (int slot = 0; slot < count; slot++) {
+
+                int offset = offsetOf(slot);
+
+                slots.put(new CachingEmbeddingModel.EmbeddingKey(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES)), slot);
+            }
+
+            log.info("Loaded {} cached embeddings from {}", count, path);
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not open embedding cache file " + path, exception);
+        }
+    }
+
+    private void create(int vectorDimensions) {
+
+        try {
+
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            map(vectorDimensions);
+
+            buffer.putInt(0, MAGIC);
+
+            buffer.putInt(4, dimensions);
+
+            buffer.putInt(8, capacity);
+
+            buffer.putLong(24, modelHash);
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not create embedding cache file " + path, exception);
+        }
+    }
+
+    private void map(int vectorDimensions) throws IOException {
+
+        dimensions = vectorDimensions;
+
+        recordBytes = 2 * Long.BYTES + dimensions * Float.BYTES;
+
+        long size = HEADER_BYTES + (long) capacity * recordBytes;
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Embedding cache file would exceed 2 GB, lower the capacity");
+        }
+
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private int offsetOf(int slot) {
+
+        return HEADER_BYTES + slot * recordBytes;
+    }
+}
@@ -0,0 +1,4 @@
+package com.samjay.spring_ai_demo.entity;
+
+public record IndexingReport(String source, long added, long unchanged, long deleted, IngestionReport ingestion) {
+}
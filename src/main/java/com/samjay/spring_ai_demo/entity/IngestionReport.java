@@ -0,0 +1,19 @@
+package com.samjay.spring_ai_demo.entity;
+
+import java.util.List;
+
+public record IngestionReport(String source, long elapsedMillis, List<StageReport> stages) {
+
+    public record StageReport(String name, long documents, long tokens, long elapsedMillis) {
+
+        public double documentsPerSecond() {
+
+            return elapsedMillis == 0 ? documents : documents * 1000.0 / elapsedMillis;
+        }
+
+        public double tokensPerSecond() {
+
+            return elapsedMillis == 0 ? tokens : tokens * 1000.0 / elapsedMillis;
+        }
+    }
+}
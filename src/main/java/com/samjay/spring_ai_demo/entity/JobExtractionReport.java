@@ -0,0 +1,7 @@
+package com.samjay.spring_ai_demo.entity;
+
+import java.util.List;
+
+public record JobExtractionReport(List<JobExtractionResult> results, int batches, int individualRetries, int failures,
+                                  long elapsedMillis, double itemsPerSecond) {
+}
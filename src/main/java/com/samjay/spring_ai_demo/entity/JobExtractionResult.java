@@ -0,0 +1,4 @@
+package com.samjay.spring_ai_demo.entity;
+
+public record JobExtractionResult(int index, Job job, boolean retriedIndividually, String error) {
+}
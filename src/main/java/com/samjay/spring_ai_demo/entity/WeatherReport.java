@@ -0,0 +1,21 @@
+package com.samjay.spring_ai_demo.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/*
+The part of a weatherapi.com current weather response the model needs, everything else in the response
+(icons, imperial units, epochs, coordinates) is dropped before it reaches the prompt.
+ */
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record WeatherReport(String city,
+                            String country,
+                            String localTime,
+                            Double tempC,
+                            Double feelsLikeC,
+                            String condition,
+                            Integer humidity,
+                            Double windKph,
+                            String windDir,
+                            Double precipMm) {
+}
@@ -0,0 +1,46 @@
+package com.samjay.spring_ai_demo.helper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+public class ContentHash {
+
+    public static final String SOURCE = "source";
+
+    public static final String CONTENT_HASH = "content_hash";
+
+    private ContentHash() {}
+
+    /*
+    The source is part of the hash so the same text coming from two different files is indexed once per file.
+     */
+
+    public static String of(String source, String text) {
+
+        return HexFormat.of().formatHex(sha256(source + '\n' + text));
+    }
+
+    /*
+    pgvector stores ids as uuid, so the hash is turned into a name based uuid which is stable across runs.
+     */
+
+    public static String idOf(String hash) {
+
+        return UUID.nameUUIDFromBytes(hash.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public static byte[] sha256(String text) {
+
+        try {
+
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+
+        } catch (NoSuchAlgorithmException exception) {
+
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.samjay.spring_ai_demo.limiter;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Concurrency limit that adapts to the backend, in the style of TCP Vegas with an AIMD back-off.
+Every completed call is a latency sample, normalized by the number of completion tokens because the length of the
+answer dominates the latency of a model call. The lowest sample of the recent window is the latency of an idle
+backend, the ratio between it and the current sample estimates how many requests are queued inside the backend:
+the limit grows while that queue is short and shrinks when it gets long. A failed call cuts the limit by a quarter.
+Requests above the limit wait in a bounded FIFO queue until a permit is released or their deadline passes.
+ */
+
+public class AdaptiveConcurrencyLimit {
+
+    private static final double QUEUE_LOW = 3;
+
+    private static final double QUEUE_HIGH = 6;
+
+    private static final double QUEUE_LOW_RATIO = 0.25;
+
+    private static final double QUEUE_HIGH_RATIO = 0.5;
+
+    private static final double BACKOFF_RATIO = 0.75;
+
+    private static final int MIN_LATENCY_WINDOW = 200;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final int maxQueueSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitReleased = lock.newCondition();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private double limit;
+
+    private int inFlight;
+
+    private int waiting;
+
+    private double minLatency = Double.MAX_VALUE;
+
+    private double windowMinLatency = Double.MAX_VALUE;
+
+    private int windowSamples;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, int maxQueueSize) {
+
+        this.minLimit = minLimit;
+
+        this.maxLimit = maxLimit;
+
+        this.maxQueueSize = maxQueueSize;
+
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    /*
+    Requests only take a free permit directly when nobody is waiting, so queued requests are admitted in order.
+     */
+
+    public void acquire(long deadlineNanos) {
+
+        lock.lock();
+
+        try {
+
+            if (waiting == 0 && inFlight < (int) limit) {
+
+                inFlight++;
+
+                return;
+            }
+
+            if (waiting >= maxQueueSize) {
+
+                rejected.increment();
+
+                throw new AdmissionRejectedException("Too many requests are waiting for the model backend");
+            }
+
+            waiting++;
+
+            try {
+
+                long remaining = deadlineNanos - System.nanoTime();
+
+                while (inFlight >= (int) limit) {
+
+                    if (remaining <= 0) {
+
+                        rejected.increment();
+
+                        throw new AdmissionRejectedException("The model backend did not admit the request before its deadline");
+                    }
+
+                    remaining = permitReleased.awaitNanos(remaining);
+                }
+
+                inFlight++;
+
+            } finally {
+
+                waiting--;
+            }
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            throw new AdmissionRejectedException("Interrupted while waiting for the model backend");
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    public void release(long latencyNanos, Integer completionTokens, boolean failed) {
+
+        lock.lock();
+
+        try {
+
+            int inFlightBeforeRelease = inFlight--;
+
+            if (failed) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else {
+                update(latencyNanos / (double) Math.max(1, completionTokens == null ? 1 : completionTokens), inFlightBeforeRelease);
+            }
+
+            permitReleased.signalAll();
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /*
+    Returns a permit of a call that never reached the backend, without taking a latency sample.
+     */
+
+    public void releaseUnused() {
+
+        lock.lock();
+
+        try {
+
+            inFlight--;
+
+            permitReleased.signalAll();
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /*
+    The limit only grows while at least half of it is in use, otherwise a quiet period would inflate it without
+    the backend ever being tested at that concurrency.
+    The queue estimate is always below the limit, so fixed thresholds would never shrink a small limit. They grow with
+    log10 of the limit like Netflix's Vegas limiter (3 and 6 up to a limit of 10) and are capped at a quarter and a half
+    of the limit: a limit of 4 shrinks once the latency has doubled, a limit of 100 once more than 12 requests queue.
+     */
+
+    private void update(double latency, int inFlightBeforeRelease) {
+
+        windowMinLatency = Math.min(windowMinLatency, latency);
+
+        if (++windowSamples >= MIN_LATENCY_WINDOW) {
+
+            minLatency = windowMinLatency;
+
+            windowMinLatency = Double.MAX_VALUE;
+
+            windowSamples = 0;
+        }
+
+        minLatency = Math.min(minLatency, latency);
+
+        double queued = limit * (1 - minLatency / latency);
+
+        double scale = Math.max(1, Math.log10(limit));
+
+        if (queued > Math.min(QUEUE_HIGH * scale, QUEUE_HIGH_RATIO * limit)) {
+            limit = Math.max(minLimit, limit - 1 / limit);
+        } else if (queued < Math.min(QUEUE_LOW * scale, QUEUE_LOW_RATIO * limit) && inFlightBeforeRelease * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    public int limit() {
+
+        lock.lock();
+
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+
+        lock.lock();
+
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int waiting() {
+
+        lock.lock();
+
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long rejected() {
+
+        return rejected.sum();
+    }
+}
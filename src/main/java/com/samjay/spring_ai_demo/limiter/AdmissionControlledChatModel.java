@@ -0,0 +1,207 @@
+package com.samjay.spring_ai_demo.limiter;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+Admission control in front of a model backend.
+Every call first reserves its estimated tokens from the tokens per minute budget and then waits for a permit of the
+adaptive concurrency limit, both within the same deadline, so a traffic spike queues in the application for a
+bounded time instead of turning into hundreds of parallel calls, 429s and timeouts at the backend.
+The estimate is the prompt plus the requested max tokens, it is settled against the reported usage afterwards.
+ */
+
+public class AdmissionControlledChatModel implements ChatModel {
+
+    private final String name;
+
+    private final ChatModel delegate;
+
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+    private final TokenRateLimiter tokenRateLimiter;
+
+    private final Duration maxWait;
+
+    private final int defaultCompletionTokens;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    public AdmissionControlledChatModel(String name, ChatModel delegate, AdaptiveConcurrencyLimit concurrencyLimit,
+                                        TokenRateLimiter tokenRateLimiter, Duration maxWait, int defaultCompletionTokens) {
+
+        this.name = name;
+
+        this.delegate = delegate;
+
+        this.concurrencyLimit = concurrencyLimit;
+
+        this.tokenRateLimiter = tokenRateLimiter;
+
+        this.maxWait = maxWait;
+
+        this.defaultCompletionTokens = defaultCompletionTokens;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+
+        Admission admission = admit(prompt);
+
+        ChatResponse chatResponse = null;
+
+        try {
+
+            chatResponse = delegate.call(prompt);
+
+            return chatResponse;
+
+        } finally {
+
+            admission.release(chatResponse == null, chatResponse == null ? null : chatResponse.getMetadata().getUsage(), null);
+        }
+    }
+
+    /*
+    Waiting for admission blocks, so it happens on the bounded elastic scheduler and never on an event loop thread.
+    The admission is a resource of usingWhen, released when the stream completes, fails or is cancelled. A subscriber
+    that cancels after admit() returned but before the stream was subscribed leaves the admission to be discarded,
+    the discard hook gives its permit and tokens back so a disconnecting client never leaks them.
+     */
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+
+        return Flux.usingWhen(
+                Mono.fromCallable(() -> admit(prompt))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .doOnDiscard(Admission.class, Admission::releaseUnused),
+                admission -> delegate.stream(prompt).doOnNext(admission::record),
+                admission -> Mono.fromRunnable(() -> admission.releaseStream(false)),
+                (admission, exception) -> Mono.fromRunnable(() -> admission.releaseStream(true)),
+                admission -> Mono.fromRunnable(() -> admission.releaseStream(false)));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+
+        return delegate.getDefaultOptions();
+    }
+
+    public String name() {
+
+        return name;
+    }
+
+    public AdaptiveConcurrencyLimit concurrencyLimit() {
+
+        return concurrencyLimit;
+    }
+
+    public TokenRateLimiter tokenRateLimiter() {
+
+        return tokenRateLimiter;
+    }
+
+    private Admission admit(Prompt prompt) {
+
+        long deadline = System.nanoTime() + maxWait.toNanos();
+
+        Integer maxTokens = prompt.getOptions() == null ? null : prompt.getOptions().getMaxTokens();
+
+        long reservedTokens = tokenCountEstimator.estimate(prompt.getContents()) + (maxTokens == null ? defaultCompletionTokens : maxTokens);
+
+        tokenRateLimiter.acquire(reservedTokens, deadline);
+
+        try {
+
+            concurrencyLimit.acquire(deadline);
+
+        } catch (AdmissionRejectedException exception) {
+
+            tokenRateLimiter.settle(-reservedTokens);
+
+            throw exception;
+        }
+
+        return new Admission(reservedTokens, System.nanoTime());
+    }
+
+    private final class Admission {
+
+        private final long reservedTokens;
+
+        private final long startNanos;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private final AtomicLong chunks = new AtomicLong();
+
+        private final AtomicReference<Usage> usage = new AtomicReference<>();
+
+        private Admission(long reservedTokens, long startNanos) {
+
+            this.reservedTokens = reservedTokens;
+
+            this.startNanos = startNanos;
+        }
+
+        private void record(ChatResponse chatResponse) {
+
+            chunks.incrementAndGet();
+
+            Usage chunkUsage = chatResponse.getMetadata().getUsage();
+
+            if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0) {
+                usage.set(chunkUsage);
+            }
+        }
+
+        /*
+        When a stream reports no usage the number of chunks stands in for the completion tokens.
+         */
+
+        private void releaseStream(boolean failed) {
+
+            release(failed, usage.get(), chunks.get());
+        }
+
+        private void releaseUnused() {
+
+            if (released.compareAndSet(false, true)) {
+
+                concurrencyLimit.releaseUnused();
+
+                tokenRateLimiter.settle(-reservedTokens);
+            }
+        }
+
+        private void release(boolean failed, Usage usage, Long chunks) {
+
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+
+            Integer completionTokens = usage != null ? usage.getCompletionTokens() : chunks == null ? null : chunks.intValue();
+
+            concurrencyLimit.release(System.nanoTime() - startNanos, completionTokens, failed);
+
+            if (usage != null && usage.getTotalTokens() != null) {
+                tokenRateLimiter.settle(usage.getTotalTokens() - reservedTokens);
+            }
+        }
+    }
+}
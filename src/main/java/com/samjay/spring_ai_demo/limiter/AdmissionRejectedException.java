@@ -0,0 +1,18 @@
+package com.samjay.spring_ai_demo.limiter;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/*
+Thrown when a model backend is saturated and a request could not be admitted before its deadline,
+the caller gets a 429 instead of a request that times out against the model.
+ */
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class AdmissionRejectedException extends RuntimeException {
+
+    public AdmissionRejectedException(String message) {
+
+        super(message);
+    }
+}
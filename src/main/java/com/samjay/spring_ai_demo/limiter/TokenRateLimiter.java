@@ -0,0 +1,122 @@
+package com.samjay.spring_ai_demo.limiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Tokens per minute budget of a model backend, a token bucket that refills continuously.
+A request reserves its estimated tokens up front and, when the bucket is short, waits until the refill covers the
+reservation. Reservations are taken in arrival order, so waiting requests are served first come first served.
+A request that would have to wait past its deadline is rejected immediately instead of waiting for nothing.
+Once the model reports the real usage the difference to the estimate is settled.
+ */
+
+public class TokenRateLimiter {
+
+    private final double capacity;
+
+    private final double tokensPerNano;
+
+    private final LongAdder rejected = new LongAdder();
+
+    private double available;
+
+    private long lastRefillNanos = System.nanoTime();
+
+    /*
+    A budget of zero or less turns the limiter off, which is what a local model without a quota needs.
+     */
+
+    public TokenRateLimiter(long tokensPerMinute) {
+
+        this.capacity = tokensPerMinute;
+
+        this.tokensPerNano = tokensPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+
+        this.available = capacity;
+    }
+
+    public void acquire(long tokens, long deadlineNanos) {
+
+        if (capacity <= 0) {
+            return;
+        }
+
+        long waitNanos = reserve(tokens, deadlineNanos);
+
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        try {
+
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+
+        } catch (InterruptedException exception) {
+
+            settle(-tokens);
+
+            Thread.currentThread().interrupt();
+
+            throw new AdmissionRejectedException("Interrupted while waiting for the tokens per minute budget");
+        }
+    }
+
+    /*
+    A positive difference takes more tokens from the bucket, a negative one gives unused tokens back.
+     */
+
+    public synchronized void settle(long difference) {
+
+        if (capacity <= 0) {
+            return;
+        }
+
+        available = Math.min(capacity, available - difference);
+    }
+
+    public synchronized long available() {
+
+        if (capacity <= 0) {
+            return 0;
+        }
+
+        refill(System.nanoTime());
+
+        return (long) available;
+    }
+
+    public long rejected() {
+
+        return rejected.sum();
+    }
+
+    private synchronized long reserve(long tokens, long deadlineNanos) {
+
+        long now = System.nanoTime();
+
+        refill(now);
+
+        double reserved = Math.min(tokens, capacity);
+
+        long waitNanos = available >= reserved ? 0 : (long) ((reserved - available) / tokensPerNano);
+
+        if (now + waitNanos > deadlineNanos) {
+
+            rejected.increment();
+
+            throw new AdmissionRejectedException("The tokens per minute budget of the model backend is used up");
+        }
+
+        available -= reserved;
+
+        return waitNanos;
+    }
+
+    private void refill(long now) {
+
+        available = Math.min(capacity, available + (now - lastRefillNanos) * tokensPerNano);
+
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,317 @@
+package com.samjay.spring_ai_demo.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Chat memory that limits the history sent with a prompt by tokens instead of by number of messages.
+get() returns the running summary of the conversation (if there is one) followed by the newest messages that fit in
+the token budget. When the stored messages grow past the budget, the oldest ones are folded into the summary by a
+background task, so the request path never waits for the summarization call.
+The summary is stored as the first message of the conversation, a system message starting with SUMMARY_PREFIX,
+which keeps it in the same repository as the messages and survives a restart.
+The stripes are ReentrantLocks rather than monitors because the repository is read and written while they are held,
+and a virtual thread blocked on JDBC inside a synchronized block would pin its carrier thread.
+ */
+
+@Slf4j
+public class TokenBudgetChatMemory implements ChatMemory, DisposableBean {
+
+    public static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private static final String SUMMARY_INSTRUCTIONS = """
+            You maintain a running summary of a conversation between a user and an assistant.
+            Merge the previous summary with the new messages into one concise summary.
+            Keep names, facts, decisions and open questions, drop greetings and repetition.
+            Reply with the summary only.
+            """;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ChatMemoryRepository chatMemoryRepository;
+
+    private final ChatModel summaryChatModel;
+
+    private final ChatOptions summaryChatOptions;
+
+    private final int maxTokens;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private final Set<String> compactingConversations = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ExecutorService summaryExecutor = Executors.newFixedThreadPool(2, runnable -> {
+
+        Thread thread = new Thread(runnable, "chat-memory-summary-" + threadCounter.incrementAndGet());
+
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    public TokenBudgetChatMemory(ChatMemoryRepository chatMemoryRepository, ChatModel summaryChatModel,
+                                 ChatOptions summaryChatOptions, int maxTokens) {
+
+        this.chatMemoryRepository = chatMemoryRepository;
+
+        this.summaryChatModel = summaryChatModel;
+
+        this.summaryChatOptions = summaryChatOptions;
+
+        this.maxTokens = maxTokens;
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+
+        int historyTokens;
+
+        ReentrantLock lock = lockFor(conversationId);
+
+        lock.lock();
+
+        try {
+
+            List<Message> stored = new ArrayList<>(chatMemoryRepository.findByConversationId(conversationId));
+
+            stored.addAll(messages);
+
+            chatMemoryRepository.saveAll(conversationId, stored);
+
+            historyTokens = tokens(history(stored));
+
+        } finally {
+
+            lock.unlock();
+        }
+
+        if (historyTokens > maxTokens && compactingConversations.add(conversationId)) {
+            summaryExecutor.execute(() -> compact(conversationId));
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+
+        List<Message> stored = chatMemoryRepository.findByConversationId(conversationId);
+
+        Message summary = summary(stored);
+
+        List<Message> history = history(stored);
+
+        int budget = maxTokens - (summary == null ? 0 : tokens(summary));
+
+        int start = history.size();
+
+        while (start > 0) {
+
+            int messageTokens = tokens(history.get(start - 1));
+
+            if (budget - messageTokens < 0 && start < history.size()) {
+                break;
+            }
+
+            budget -= messageTokens;
+
+            start--;
+        }
+
+        List<Message> window = new ArrayList<>();
+
+        if (summary != null) {
+            window.add(summary);
+        }
+
+        window.addAll(history.subList(start, history.size()));
+
+        return window;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+
+        ReentrantLock lock = lockFor(conversationId);
+
+        lock.lock();
+
+        try {
+
+            chatMemoryRepository.deleteByConversationId(conversationId);
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+
+        summaryExecutor.shutdownNow();
+    }
+
+    /*
+    Keeps the newest messages that fit in half of the budget and folds everything older into the summary.
+    Messages added while the summary was computed are kept, only the summarized prefix is replaced.
+     */
+
+    private void compact(String conversationId) {
+
+        try {
+
+            List<Message> stored = chatMemoryRepository.findByConversationId(conversationId);
+
+            Message summary = summary(stored);
+
+            List<Message> history = history(stored);
+
+            int keepFrom = history.size();
+
+            int keptTokens = 0;
+
+            while (keepFrom > 0 && keptTokens + tokens(history.get(keepFrom - 1)) <= maxTokens / 2) {
+
+                keptTokens += tokens(history.get(keepFrom - 1));
+
+                keepFrom--;
+            }
+
+            List<Message> summarized = history.subList(0, keepFrom);
+
+            if (summarized.isEmpty()) {
+                return;
+            }
+
+            String newSummary = summarize(summary, summarized);
+
+            ReentrantLock lock = lockFor(conversationId);
+
+            lock.lock();
+
+            try {
+
+                List<Message> current = history(chatMemoryRepository.findByConversationId(conversationId));
+
+                if (current.size() < summarized.size() || !sameMessages(current.subList(0, summarized.size()), summarized)) {
+
+                    log.debug("Conversation {} changed while it was summarized, skipping compaction", conversationId);
+
+                    return;
+                }
+
+                List<Message> compacted = new ArrayList<>();
+
+                compacted.add(new SystemMessage(SUMMARY_PREFIX + newSummary));
+
+                compacted.addAll(current.subList(summarized.size(), current.size()));
+
+                chatMemoryRepository.saveAll(conversationId, compacted);
+
+            } finally {
+
+                lock.unlock();
+            }
+
+            log.debug("Folded {} messages of conversation {} into its summary", summarized.size(), conversationId);
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Could not summarize conversation {}", conversationId, exception);
+
+        } finally {
+
+            compactingConversations.remove(conversationId);
+        }
+    }
+
+    private String summarize(Message previousSummary, List<Message> messages) {
+
+        StringBuilder transcript = new StringBuilder();
+
+        if (previousSummary != null) {
+            transcript.append("Previous summary:\n").append(previousSummary.getText().substring(SUMMARY_PREFIX.length())).append("\n\n");
+        }
+
+        transcript.append("New messages:\n");
+
+        messages.forEach(message -> transcript.append(message.getMessageType().getValue()).append(": ").append(message.getText()).append('\n'));
+
+        ChatResponse chatResponse = summaryChatModel.call(new Prompt(
+                List.of(new SystemMessage(SUMMARY_INSTRUCTIONS), new UserMessage(transcript.toString())), summaryChatOptions));
+
+        return chatResponse.getResult().getOutput().getText();
+    }
+
+    private ReentrantLock lockFor(String conversationId) {
+
+        return locks[Math.floorMod(conversationId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private int tokens(Message message) {
+
+        return message.getText() == null ? 0 : tokenCountEstimator.estimate(message.getText());
+    }
+
+    private int tokens(List<Message> messages) {
+
+        return messages.stream().mapToInt(this::tokens).sum();
+    }
+
+    private static boolean isSummary(Message message) {
+
+        return message.getMessageType() == MessageType.SYSTEM && message.getText() != null && message.getText().startsWith(SUMMARY_PREFIX);
+    }
+
+    private static Message summary(List<Message> stored) {
+
+        return !stored.isEmpty() && isSummary(stored.get(0)) ? stored.get(0) : null;
+    }
+
+    private static List<Message> history(List<Message> stored) {
+
+        return summary(stored) == null ? stored : stored.subList(1, stored.size());
+    }
+
+    private static boolean sameMessages(List<Message> left, List<Message> right) {
+
+        for (int i = 0; i < left.size(); i++) {
+
+            if (left.get(i).getMessageType() != right.get(i).getMessageType()
+                    || !Objects.equals(left.get(i).getText(), right.get(i).getText())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,422 @@
+package com.samjay.spring_ai_demo.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/*
+Tiered chat memory repository.
+The hot tier keeps the message window of every active conversation in memory, every conversation has its own lock
+so turns of different users never wait on each other. Reads are served from the hot tier, writes mark the conversation
+dirty and a background task writes the latest window of every dirty conversation to the delegate (JDBC) repository.
+Several turns of the same conversation between two flushes become a single write.
+With WRITE_THROUGH durability every write also goes to the delegate before returning, with WRITE_BEHIND up to one
+flush interval of turns can be lost if the process dies. Pending writes are always flushed on shutdown.
+Conversations that have not been used for the idle timeout are evicted from the hot tier once they are flushed.
+Everything that touches a conversation in the delegate (loading, flushing, write-through and deleting) holds its
+striped write lock, so a delete waits for a flush of the same conversation that is writing and a flush that starts
+after a delete sees the conversation is gone, instead of writing the deleted window back.
+Both kinds of locks are ReentrantLocks rather than monitors: loading and write-through hit JDBC while they are held,
+and a virtual thread blocked inside a synchronized block would pin its carrier thread.
+ */
+
+@Slf4j
+public class WriteBehindChatMemoryRepository implements ChatMemoryRepository, DisposableBean {
+
+    public enum Durability {
+
+        WRITE_THROUGH,
+
+        WRITE_BEHIND
+    }
+
+    private final ChatMemoryRepository delegate;
+
+    private final Durability durability;
+
+    private final long idleTimeoutMillis;
+
+    private final int maxFlushBatchSize;
+
+    private final ConcurrentHashMap<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    private final Set<String> dirtyConversations = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock[] writeLocks = new ReentrantLock[64];
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+        Thread thread = new Thread(runnable, "chat-memory-flusher");
+
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    public WriteBehindChatMemoryRepository(ChatMemoryRepository delegate, Durability durability, Duration flushInterval,
+                                           Duration idleTimeout, int maxFlushBatchSize) {
+
+        this.delegate = delegate;
+
+        this.durability = durability;
+
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+
+        this.maxFlushBatchSize = maxFlushBatchSize;
+
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+
+        flusher.scheduleWithFixedDelay(this::flushAndEvict, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+
+        Set<String> conversationIds = new LinkedHashSet<>(delegate.findConversationIds());
+
+        conversationIds.addAll(conversations.keySet());
+
+        return new ArrayList<>(conversationIds);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+
+        return withConversation(conversationId, conversation -> List.copyOf(conversation.messages));
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+
+        if (durability == Durability.WRITE_THROUGH) {
+
+            ReentrantLock writeLock = writeLock(conversationId);
+
+            writeLock.lock();
+
+            try {
+
+                save(conversationId, messages);
+
+            } finally {
+
+                writeLock.unlock();
+            }
+
+        } else {
+
+            save(conversationId, messages);
+        }
+    }
+
+    private void save(String conversationId, List<Message> messages) {
+
+        withConversation(conversationId, conversation -> {
+
+            conversation.messages = List.copyOf(messages);
+
+            conversation.version++;
+
+            if (durability == Durability.WRITE_THROUGH) {
+
+                delegate.saveAll(conversationId, conversation.messages);
+
+                conversation.flushedVersion = conversation.version;
+
+            } else {
+
+                dirtyConversations.add(conversationId);
+            }
+
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+
+        ReentrantLock writeLock = writeLock(conversationId);
+
+        writeLock.lock();
+
+        try {
+
+            Conversation conversation = conversations.remove(conversationId);
+
+            if (conversation != null) {
+
+                conversation.lock.lock();
+
+                try {
+
+                    conversation.evicted = true;
+
+                } finally {
+
+                    conversation.lock.unlock();
+                }
+            }
+
+            dirtyConversations.remove(conversationId);
+
+            delegate.deleteByConversationId(conversationId);
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    /*
+    Writes every dirty conversation to the delegate, at most maxFlushBatchSize conversations per run.
+    The window is copied under the conversation lock and written outside of it, so a slow database never blocks a turn.
+    The write holds the write lock of the conversation, a conversation deleted before the lock was taken is skipped.
+     */
+
+    public void flush() {
+
+        int flushed = 0;
+
+        for (String conversationId : List.copyOf(dirtyConversations)) {
+
+            if (flushed++ >= maxFlushBatchSize) {
+                break;
+            }
+
+            dirtyConversations.remove(conversationId);
+
+            Conversation conversation = conversations.get(conversationId);
+
+            if (conversation == null) {
+                continue;
+            }
+
+            ReentrantLock writeLock = writeLock(conversationId);
+
+            writeLock.lock();
+
+            try {
+
+                List<Message> snapshot;
+
+                long version;
+
+                conversation.lock.lock();
+
+                try {
+
+                    if (conversation.evicted) {
+                        continue;
+                    }
+
+                    snapshot = conversation.messages;
+
+                    version = conversation.version;
+
+                } finally {
+
+                    conversation.lock.unlock();
+                }
+
+                delegate.saveAll(conversationId, snapshot);
+
+                conversation.lock.lock();
+
+                try {
+
+                    conversation.flushedVersion = Math.max(conversation.flushedVersion, version);
+
+                } finally {
+
+                    conversation.lock.unlock();
+                }
+
+            } catch (RuntimeException exception) {
+
+                dirtyConversations.add(conversationId);
+
+                log.warn("Could not write chat memory of conversation {}, retrying on the next flush", conversationId, exception);
+
+            } finally {
+
+                writeLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        flusher.shutdown();
+
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+
+        while (!dirtyConversations.isEmpty()) {
+
+            int pending = dirtyConversations.size();
+
+            flush();
+
+            if (dirtyConversations.size() >= pending) {
+
+                log.error("Could not write {} conversations to chat memory on shutdown", pending);
+
+                break;
+            }
+        }
+    }
+
+    private void flushAndEvict() {
+
+        try {
+
+            flush();
+
+            evictIdleConversations();
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Chat memory flush failed", exception);
+        }
+    }
+
+    private void evictIdleConversations() {
+
+        long now = System.currentTimeMillis();
+
+        conversations.forEach((conversationId, conversation) -> {
+
+            conversation.lock.lock();
+
+            try {
+
+                if (now - conversation.lastAccess > idleTimeoutMillis && conversation.flushedVersion == conversation.version) {
+
+                    conversation.evicted = true;
+
+                    conversations.remove(conversationId, conversation);
+                }
+
+            } finally {
+
+                conversation.lock.unlock();
+            }
+        });
+    }
+
+    /*
+    Runs the work under the conversation lock, loading the conversation from the delegate on first use.
+    A conversation that was evicted while the caller waited for its lock is loaded again. Loading holds the write lock,
+    taken before the conversation lock like everywhere else, so it never reads a conversation that is being deleted.
+     */
+
+    private <T> T withConversation(String conversationId, Function<Conversation, T> work) {
+
+        while (true) {
+
+            Conversation conversation = conversations.computeIfAbsent(conversationId, id -> new Conversation());
+
+            if (!isLoaded(conversation)) {
+                load(conversationId, conversation);
+            }
+
+            conversation.lock.lock();
+
+            try {
+
+                if (conversation.evicted || !conversation.loaded) {
+                    continue;
+                }
+
+                conversation.lastAccess = System.currentTimeMillis();
+
+                return work.apply(conversation);
+
+            } finally {
+
+                conversation.lock.unlock();
+            }
+        }
+    }
+
+    private void load(String conversationId, Conversation conversation) {
+
+        ReentrantLock writeLock = writeLock(conversationId);
+
+        writeLock.lock();
+
+        try {
+
+            conversation.lock.lock();
+
+            try {
+
+                if (!conversation.evicted && !conversation.loaded) {
+
+                    conversation.messages = List.copyOf(delegate.findByConversationId(conversationId));
+
+                    conversation.loaded = true;
+                }
+
+            } finally {
+
+                conversation.lock.unlock();
+            }
+
+        } finally {
+
+            writeLock.unlock();
+        }
+    }
+
+    private static boolean isLoaded(Conversation conversation) {
+
+        conversation.lock.lock();
+
+        try {
+
+            return conversation.loaded;
+
+        } finally {
+
+            conversation.lock.unlock();
+        }
+    }
+
+    private ReentrantLock writeLock(String conversationId) {
+
+        return writeLocks[Math.floorMod(conversationId.hashCode(), writeLocks.length)];
+    }
+
+    private static final class Conversation {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private List<Message> messages = List.of();
+
+        private boolean loaded;
+
+        private boolean evicted;
+
+        private long lastAccess;
+
+        private long version;
+
+        private long flushedVersion;
+    }
+}
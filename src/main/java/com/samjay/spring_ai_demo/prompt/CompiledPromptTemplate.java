@@ -0,0 +1,125 @@
+package com.samjay.spring_ai_demo.prompt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+A prompt template split once into its literal parts and its {variable} placeholders.
+Rendering appends the parts and the values into one StringBuilder sized up front, there is no template parsing,
+no lexer and no intermediate strings per call, and a template without placeholders is returned as is.
+Only plain {name} placeholders are supported, which is all the templates in /prompts use. Any other text in braces
+is kept literally.
+ */
+
+public final class CompiledPromptTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([A-Za-z_][A-Za-z0-9_]*)}");
+
+    private final String name;
+
+    private final String text;
+
+    private final String[] literals;
+
+    private final String[] variables;
+
+    private final Set<String> variableNames;
+
+    private final int literalLength;
+
+    public CompiledPromptTemplate(String name, String text) {
+
+        this.name = name;
+
+        this.text = text;
+
+        List<String> literalParts = new ArrayList<>();
+
+        List<String> variableParts = new ArrayList<>();
+
+        Matcher matcher = PLACEHOLDER.matcher(text);
+
+        int position = 0;
+
+        while (matcher.find()) {
+
+            literalParts.add(text.substring(position, matcher.start()));
+
+            variableParts.add(matcher.group(1));
+
+            position = matcher.end();
+        }
+
+        literalParts.add(text.substring(position));
+
+        this.literals = literalParts.toArray(String[]::new);
+
+        this.variables = variableParts.toArray(String[]::new);
+
+        this.variableNames = new LinkedHashSet<>(variableParts);
+
+        this.literalLength = literalParts.stream().mapToInt(String::length).sum();
+    }
+
+    public String render() {
+
+        return render(Map.of());
+    }
+
+    public String render(Map<String, ?> values) {
+
+        if (variables.length == 0) {
+            return text;
+        }
+
+        int valueLength = 0;
+
+        for (String variable : variables) {
+
+            Object value = values.get(variable);
+
+            if (value == null) {
+                throw new IllegalStateException("Prompt template '" + name + "' is missing a value for {" + variable + "}");
+            }
+
+            valueLength += value instanceof CharSequence sequence ? sequence.length() : 16;
+        }
+
+        StringBuilder rendered = new StringBuilder(literalLength + valueLength);
+
+        for (int i = 0; i < variables.length; i++) {
+
+            rendered.append(literals[i]);
+
+            Object value = values.get(variables[i]);
+
+            if (value instanceof CharSequence sequence) {
+                rendered.append(sequence);
+            } else {
+                rendered.append(value);
+            }
+        }
+
+        return rendered.append(literals[variables.length]).toString();
+    }
+
+    public String name() {
+
+        return name;
+    }
+
+    public String text() {
+
+        return text;
+    }
+
+    public Set<String> variableNames() {
+
+        return variableNames;
+    }
+}
@@ -0,0 +1,172 @@
+package com.samjay.spring_ai_demo.prompt;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Loads every *.st file of the prompts location once at startup and keeps it compiled, keyed by its file name without
+the extension (prompts/systemMessage.st is "systemMessage").
+A request only looks its template up in an immutable map, instead of reading the resource and parsing it again.
+With hot reload enabled (the dev profile points the location at the source folder) the files are checked
+periodically, changed files are compiled again and the map is swapped in one step.
+ */
+
+@Slf4j
+@Component
+public class PromptTemplateRegistry implements DisposableBean {
+
+    private final String location;
+
+    private final PathMatchingResourcePatternResolver resourceResolver = new PathMatchingResourcePatternResolver();
+
+    private final ScheduledExecutorService reloader;
+
+    private volatile Map<String, LoadedTemplate> templates;
+
+    public PromptTemplateRegistry(@Value("${prompts.location:classpath*:/prompts/}") String location,
+                                  @Value("${prompts.hot-reload.enabled:false}") boolean hotReload,
+                                  @Value("${prompts.hot-reload.interval:PT1S}") Duration hotReloadInterval) {
+
+        this.location = location.endsWith("/") ? location : location + "/";
+
+        this.templates = load(Map.of());
+
+        log.info("Compiled prompt templates {}", templates.keySet());
+
+        if (hotReload) {
+
+            reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+                Thread thread = new Thread(runnable, "prompt-template-reload");
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
+            reloader.scheduleWithFixedDelay(this::reloadQuietly, hotReloadInterval.toMillis(), hotReloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+
+        } else {
+
+            reloader = null;
+        }
+    }
+
+    public CompiledPromptTemplate get(String name) {
+
+        LoadedTemplate template = templates.get(name);
+
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown prompt template '" + name + "', available templates are " + templates.keySet());
+        }
+
+        return template.compiled();
+    }
+
+    public String render(String name) {
+
+        return get(name).render();
+    }
+
+    public String render(String name, Map<String, ?> values) {
+
+        return get(name).render(values);
+    }
+
+    @Override
+    public void destroy() {
+
+        if (reloader != null) {
+            reloader.shutdownNow();
+        }
+    }
+
+    private void reloadQuietly() {
+
+        try {
+
+            Map<String, LoadedTemplate> previous = templates;
+
+            Map<String, LoadedTemplate> reloaded = load(previous);
+
+            if (!reloaded.equals(previous)) {
+
+                templates = reloaded;
+
+                log.info("Reloaded prompt templates {}", reloaded.keySet());
+            }
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Could not reload the prompt templates, keeping the loaded ones", exception);
+        }
+    }
+
+    /*
+    A file whose modification time did not change keeps its compiled template.
+     */
+
+    private Map<String, LoadedTemplate> load(Map<String, LoadedTemplate> previous) {
+
+        try {
+
+            Map<String, LoadedTemplate> loaded = new HashMap<>();
+
+            for (Resource resource : resourceResolver.getResources(location + "*.st")) {
+
+                String fileName = Objects.requireNonNull(resource.getFilename());
+
+                String name = fileName.substring(0, fileName.length() - ".st".length());
+
+                long lastModified = lastModified(resource);
+
+                LoadedTemplate existing = previous.get(name);
+
+                if (existing != null && existing.lastModified() == lastModified) {
+
+                    loaded.put(name, existing);
+
+                    continue;
+                }
+
+                loaded.put(name, new LoadedTemplate(new CompiledPromptTemplate(name, resource.getContentAsString(StandardCharsets.UTF_8)), lastModified));
+            }
+
+            return Map.copyOf(loaded);
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not load the prompt templates from " + location, exception);
+        }
+    }
+
+    private static long lastModified(Resource resource) {
+
+        try {
+
+            return resource.lastModified();
+
+        } catch (IOException exception) {
+
+            return 0;
+        }
+    }
+
+    private record LoadedTemplate(CompiledPromptTemplate compiled, long lastModified) {
+    }
+}
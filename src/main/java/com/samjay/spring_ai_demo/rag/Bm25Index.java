@@ -0,0 +1,321 @@
+package com.samjay.spring_ai_demo.rag;
+
+import com.samjay.spring_ai_demo.repository.IndexedChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+In-memory inverted index over the chunks of the vector store, scored with Okapi BM25.
+Embeddings are weak on short, keyword heavy questions ("@Autowired", "javac"), an exact term match finds those chunks
+even when their cosine similarity stays under the threshold.
+The ingestion pipeline and the incremental indexer update it together with the vector store, at startup it is rebuilt
+from the chunks already stored.
+ */
+
+@Slf4j
+@Component
+public class Bm25Index {
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private static final Pattern TERM = Pattern.compile("@?[\\p{L}\\p{N}_]+");
+
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "for", "from",
+            "how", "in", "is", "it", "of", "on", "or", "that", "the", "this", "to", "was", "what", "when", "where",
+            "which", "who", "why", "with");
+
+    private final IndexedChunkRepository indexedChunkRepository;
+
+    private final Map<String, IndexedChunk> chunks = new HashMap<>();
+
+    private final Map<String, Set<String>> postings = new HashMap<>();
+
+    private final SimpleVectorStoreFilterExpressionConverter filterExpressionConverter = new SimpleVectorStoreFilterExpressionConverter();
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long totalLength;
+
+    public Bm25Index(IndexedChunkRepository indexedChunkRepository) {
+
+        this.indexedChunkRepository = indexedChunkRepository;
+    }
+
+    /*
+    Runs once the vector store has created its schema, chunks ingested meanwhile are simply indexed twice.
+     */
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+
+        long start = System.nanoTime();
+
+        try {
+
+            List<Document> batch = new ArrayList<>();
+
+            indexedChunkRepository.forEachChunk(chunk -> {
+
+                batch.add(chunk);
+
+                if (batch.size() == 1_000) {
+
+                    add(batch);
+
+                    batch.clear();
+                }
+            });
+
+            add(batch);
+
+            log.info("Built the BM25 index with {} chunks in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Could not build the BM25 index from the vector store, it only holds newly ingested chunks", exception);
+        }
+    }
+
+    public void add(List<Document> documents) {
+
+        lock.writeLock().lock();
+
+        try {
+
+            for (Document document : documents) {
+
+                remove(document.getId());
+
+                Map<String, Integer> termFrequencies = new HashMap<>();
+
+                int length = 0;
+
+                for (String term : terms(document.getText())) {
+
+                    termFrequencies.merge(term, 1, Integer::sum);
+
+                    length++;
+                }
+
+                chunks.put(document.getId(), new IndexedChunk(document, termFrequencies, length));
+
+                termFrequencies.keySet().forEach(term -> postings.computeIfAbsent(term, key -> new HashSet<>()).add(document.getId()));
+
+                totalLength += length;
+            }
+
+        } finally {
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void delete(List<String> ids) {
+
+        lock.writeLock().lock();
+
+        try {
+
+            ids.forEach(this::remove);
+
+        } finally {
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Returns up to topK chunks containing at least one query term, best first. The score of a document is its BM25
+    score, the filter expression has the same syntax and meaning as for the vector store.
+     */
+
+    public List<Document> search(String query, int topK, Filter.Expression filterExpression) {
+
+        List<String> queryTerms = terms(query).stream().distinct().toList();
+
+        Expression filter = filterExpression != null
+                ? expressionParser.parseExpression(filterExpressionConverter.convertExpression(filterExpression))
+                : null;
+
+        lock.readLock().lock();
+
+        try {
+
+            if (chunks.isEmpty() || queryTerms.isEmpty()) {
+                return List.of();
+            }
+
+            double averageLength = (double) totalLength / chunks.size();
+
+            Map<String, Double> scores = new HashMap<>();
+
+            for (String term : queryTerms) {
+
+                Set<String> matching = postings.get(term);
+
+                if (matching == null) {
+                    continue;
+                }
+
+                double idf = Math.log(1 + (chunks.size() - matching.size() + 0.5) / (matching.size() + 0.5));
+
+                for (String id : matching) {
+
+                    IndexedChunk chunk = chunks.get(id);
+
+                    int frequency = chunk.termFrequencies().get(term);
+
+                    double normalizedFrequency = frequency * (K1 + 1)
+                            / (frequency + K1 * (1 - B + B * chunk.length() / averageLength));
+
+                    scores.merge(id, idf * normalizedFrequency, Double::sum);
+                }
+            }
+
+            PriorityQueue<Map.Entry<String, Double>> best = new PriorityQueue<>(Map.Entry.comparingByValue());
+
+            for (Map.Entry<String, Double> score : scores.entrySet()) {
+
+                if (filter != null && !matches(filter, chunks.get(score.getKey()).document())) {
+                    continue;
+                }
+
+                best.add(score);
+
+                if (best.size() > topK) {
+                    best.poll();
+                }
+            }
+
+            return best.stream()
+                    .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                    .map(score -> chunks.get(score.getKey()).document().mutate().score(score.getValue()).build())
+                    .toList();
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.readLock().lock();
+
+        try {
+
+            return chunks.size();
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+
+        lock.readLock().lock();
+
+        try {
+
+            return postings.size();
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+    }
+
+    private void remove(String id) {
+
+        IndexedChunk removed = chunks.remove(id);
+
+        if (removed == null) {
+            return;
+        }
+
+        totalLength -= removed.length();
+
+        removed.termFrequencies().keySet().forEach(term -> {
+
+            Set<String> matching = postings.get(term);
+
+            matching.remove(id);
+
+            if (matching.isEmpty()) {
+                postings.remove(term);
+            }
+        });
+    }
+
+    private boolean matches(Expression expression, Document document) {
+
+        StandardEvaluationContext context = new StandardEvaluationContext();
+
+        context.setVariable("metadata", document.getMetadata());
+
+        return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+    }
+
+    /*
+    Lower cased words, an annotation like @Autowired is indexed both with and without its @.
+     */
+
+    static List<String> terms(String text) {
+
+        List<String> terms = new ArrayList<>();
+
+        if (text == null) {
+            return terms;
+        }
+
+        Matcher matcher = TERM.matcher(text.toLowerCase(Locale.ROOT));
+
+        while (matcher.find()) {
+
+            String term = matcher.group();
+
+            if (term.startsWith("@")) {
+
+                terms.add(term);
+
+                term = term.substring(1);
+            }
+
+            if (!STOP_WORDS.contains(term)) {
+                terms.add(term);
+            }
+        }
+
+        return terms;
+    }
+
+    private record IndexedChunk(Document document, Map<String, Integer> termFrequencies, int length) {
+    }
+}
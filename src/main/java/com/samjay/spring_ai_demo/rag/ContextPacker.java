@@ -0,0 +1,187 @@
+package com.samjay.spring_ai_demo.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.postretrieval.document.DocumentPostProcessor;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Assembles the retrieved documents into the context that is sent to the model.
+Documents are taken best first. A document whose word shingles mostly appear in a document that was already taken
+(the same passage stored for two sources, or overlapping chunks of one text) is dropped, and documents are added
+while they fit into the token budget, a document that does not fit is skipped so a smaller one further down can
+still be used. The packed documents are then ordered by id, so the same retrieved set always renders to the same
+text and the prompt prefix in front of it stays byte for byte identical for the provider's prompt cache.
+ */
+
+@Slf4j
+@Component
+public class ContextPacker implements DocumentPostProcessor {
+
+    private static final int SHINGLE_SIZE = 8;
+
+    private static final String SEPARATOR = "\n\n";
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final int maxTokens;
+
+    private final double duplicateOverlap;
+
+    private final LongAdder packedDocuments = new LongAdder();
+
+    private final LongAdder duplicateDocuments = new LongAdder();
+
+    private final LongAdder overBudgetDocuments = new LongAdder();
+
+    private final LongAdder packedTokens = new LongAdder();
+
+    private final LongAdder droppedTokens = new LongAdder();
+
+    public ContextPacker(@Value("${rag.context.max-tokens:1500}") int maxTokens,
+                         @Value("${rag.context.duplicate-overlap:0.6}") double duplicateOverlap) {
+
+        this.maxTokens = maxTokens;
+
+        this.duplicateOverlap = duplicateOverlap;
+    }
+
+    @Override
+    public List<Document> process(Query query, List<Document> documents) {
+
+        return pack(documents);
+    }
+
+    /*
+    Documents without a score keep their retrieval order, the advisors and the vector stores return them best first.
+     */
+
+    public List<Document> pack(List<Document> documents) {
+
+        List<Document> ranked = new ArrayList<>(documents);
+
+        ranked.sort(Comparator.comparing((Document document) -> document.getScore() == null ? 0 : document.getScore()).reversed());
+
+        Set<Long> seenShingles = new HashSet<>();
+
+        List<Document> packed = new ArrayList<>();
+
+        int budget = maxTokens;
+
+        for (Document document : ranked) {
+
+            String text = document.getText();
+
+            if (text == null || text.isBlank()) {
+                continue;
+            }
+
+            int tokens = tokenCountEstimator.estimate(text);
+
+            Set<Long> shingles = shingles(text);
+
+            if (isDuplicate(shingles, seenShingles)) {
+
+                duplicateDocuments.increment();
+
+                droppedTokens.add(tokens);
+
+                continue;
+            }
+
+            if (tokens > budget) {
+
+                overBudgetDocuments.increment();
+
+                droppedTokens.add(tokens);
+
+                continue;
+            }
+
+            budget -= tokens;
+
+            seenShingles.addAll(shingles);
+
+            packed.add(document);
+
+            packedDocuments.increment();
+
+            packedTokens.add(tokens);
+        }
+
+        packed.sort(Comparator.comparing(Document::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        log.debug("Packed {} of {} documents into {} of {} context tokens", packed.size(), documents.size(), maxTokens - budget, maxTokens);
+
+        return packed;
+    }
+
+    public String render(List<Document> packed) {
+
+        return String.join(SEPARATOR, packed.stream().map(Document::getText).filter(Objects::nonNull).toList());
+    }
+
+    public String packAndRender(List<Document> documents) {
+
+        return render(pack(documents));
+    }
+
+    public ContextPackingStats stats() {
+
+        return new ContextPackingStats(packedDocuments.sum(), duplicateDocuments.sum(), overBudgetDocuments.sum(),
+                packedTokens.sum(), droppedTokens.sum());
+    }
+
+    private boolean isDuplicate(Set<Long> shingles, Set<Long> seenShingles) {
+
+        if (shingles.isEmpty() || seenShingles.isEmpty()) {
+            return false;
+        }
+
+        long overlapping = shingles.stream().filter(seenShingles::contains).count();
+
+        return overlapping >= duplicateOverlap * shingles.size();
+    }
+
+    /*
+    Hashes of every run of SHINGLE_SIZE consecutive words, lower cased with the punctuation removed, so a chunk
+    boundary or a different line break does not hide an overlap. A text shorter than a shingle is one shingle.
+     */
+
+    private static Set<Long> shingles(String text) {
+
+        String[] words = text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}\\s]", " ").trim().split("\\s+");
+
+        Set<Long> shingles = new HashSet<>();
+
+        for (int start = 0; start == 0 || start + SHINGLE_SIZE <= words.length; start++) {
+
+            long hash = 1125899906842597L;
+
+            for (int i = start; i < Math.min(start + SHINGLE_SIZE, words.length); i++) {
+                hash = 31 * hash + words[i].hashCode();
+            }
+
+            shingles.add(hash);
+        }
+
+        return shingles;
+    }
+
+    public record ContextPackingStats(long packedDocuments, long duplicateDocuments, long overBudgetDocuments,
+                                      long packedTokens, long droppedTokens) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.samjay.spring_ai_demo.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.StringUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+Drop-in replacement for the VectorStoreDocumentRetriever that also searches the BM25 index.
+The vector search (an embedding call and a database round trip) runs on the retrieval executor while the lexical
+search runs on the calling thread, both return a larger candidate list and the two lists are merged with
+reciprocal rank fusion. A chunk found by both searches ranks first, so the topK sent to the model can stay small.
+A filter expression in the query context is applied to both searches.
+ */
+
+public class HybridDocumentRetriever implements DocumentRetriever {
+
+    private final VectorStore vectorStore;
+
+    private final Bm25Index bm25Index;
+
+    private final TaskExecutor taskExecutor;
+
+    private final int topK;
+
+    private final int candidates;
+
+    private final double similarityThreshold;
+
+    private final FilterExpressionTextParser filterExpressionTextParser = new FilterExpressionTextParser();
+
+    public HybridDocumentRetriever(VectorStore vectorStore, Bm25Index bm25Index, TaskExecutor taskExecutor,
+                                   int topK, int candidates, double similarityThreshold) {
+
+        this.vectorStore = vectorStore;
+
+        this.bm25Index = bm25Index;
+
+        this.taskExecutor = taskExecutor;
+
+        this.topK = topK;
+
+        this.candidates = Math.max(candidates, topK);
+
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+
+        Filter.Expression filterExpression = filterExpression(query);
+
+        SearchRequest.Builder searchRequest = SearchRequest.builder()
+                .query(query.text())
+                .topK(candidates)
+                .similarityThreshold(similarityThreshold);
+
+        if (filterExpression != null) {
+            searchRequest.filterExpression(filterExpression);
+        }
+
+        CompletableFuture<List<Document>> vectorResults = CompletableFuture
+                .supplyAsync(() -> vectorStore.similaritySearch(searchRequest.build()), taskExecutor);
+
+        List<Document> lexicalResults = bm25Index.search(query.text(), candidates, filterExpression);
+
+        try {
+
+            return ReciprocalRankFusionDocumentJoiner.fuse(List.of(vectorResults.join(), lexicalResults),
+                    ReciprocalRankFusionDocumentJoiner.DEFAULT_RANK_CONSTANT, topK);
+
+        } catch (CompletionException exception) {
+
+            if (exception.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw exception;
+        }
+    }
+
+    private Filter.Expression filterExpression(Query query) {
+
+        Object filter = query.context().get(VectorStoreDocumentRetriever.FILTER_EXPRESSION);
+
+        if (filter instanceof Filter.Expression expression) {
+            return expression;
+        }
+
+        if (filter instanceof String text && StringUtils.hasText(text)) {
+            return filterExpressionTextParser.parse(text);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,169 @@
+package com.samjay.spring_ai_demo.rag;
+
+import com.samjay.spring_ai_demo.configuration.RagPipelineProperties;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
+import org.springframework.ai.rag.preretrieval.query.expansion.MultiQueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
+import org.springframework.ai.rag.preretrieval.query.transformation.TranslationQueryTransformer;
+import org.springframework.ai.rag.retrieval.join.ConcatenationDocumentJoiner;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.EXPAND;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.HYBRID;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.PARALLEL_RETRIEVAL;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.RANK_FUSION;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.REWRITE;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.REWRITE_AND_TRANSLATE;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.TRANSLATE;
+
+/*
+Builds every configured RAG profile once at startup.
+Transformers, expanders, retrievers and advisors are immutable and thread safe, so a request only looks its pipeline
+up by name instead of rebuilding all components and cloning the chat client each time.
+Query transformers and expanders use a plain chat client built on the admission controlled chat model, they must not
+go through the memory or cache advisors of the client that answers the user.
+The hybrid stage replaces the vector store retriever with one that also searches the BM25 index.
+The retrieved documents of every retrieval augmentation profile are deduplicated and packed into the context token
+budget before they are added to the prompt.
+ */
+
+@Slf4j
+@Component
+public class RagPipelineRegistry {
+
+    private final Map<String, Advisor> pipelines;
+
+    public RagPipelineRegistry(RagPipelineProperties ragPipelineProperties,
+                               @Qualifier("openAiAdmissionControlledChatModel") AdmissionControlledChatModel openAiChatModel,
+                               VectorStore vectorStore, Bm25Index bm25Index, ContextPacker contextPacker,
+                               RagStageTimings ragStageTimings, RetrievalExecutor retrievalExecutor) {
+
+        ChatClient.Builder queryChatClientBuilder = ChatClient.builder(openAiChatModel);
+
+        Map<String, RagPipelineProperties.Profile> profiles = ragPipelineProperties.profiles() == null
+                ? Map.of() : ragPipelineProperties.profiles();
+
+        Map<String, Advisor> built = new HashMap<>();
+
+        profiles.forEach((name, profile) -> built.put(name,
+                build(name, profile, queryChatClientBuilder, vectorStore, bm25Index, contextPacker,
+                        ragStageTimings, retrievalExecutor)));
+
+        this.pipelines = Collections.unmodifiableMap(built);
+
+        log.info("Built RAG pipelines {}", pipelines.keySet());
+    }
+
+    public Advisor get(String profile) {
+
+        Advisor advisor = pipelines.get(profile);
+
+        if (advisor == null) {
+            throw new IllegalArgumentException("Unknown RAG profile '" + profile + "', available profiles are " + pipelines.keySet());
+        }
+
+        return advisor;
+    }
+
+    public Set<String> profiles() {
+
+        return pipelines.keySet();
+    }
+
+    private static Advisor build(String name, RagPipelineProperties.Profile profile, ChatClient.Builder queryChatClientBuilder,
+                                 VectorStore vectorStore, Bm25Index bm25Index, ContextPacker contextPacker,
+                                 RagStageTimings ragStageTimings, RetrievalExecutor retrievalExecutor) {
+
+        if (profile.type() == RagPipelineProperties.Type.QUESTION_ANSWER) {
+
+            return QuestionAnswerAdvisor.builder(vectorStore)
+                    .searchRequest(SearchRequest.builder()
+                            .similarityThreshold(profile.similarityThreshold())
+                            .topK(profile.topK())
+                            .build())
+                    .build();
+        }
+
+        List<RagPipelineProperties.Stage> stages = profile.stages();
+
+        List<QueryTransformer> queryTransformers = new ArrayList<>();
+
+        if (stages.contains(REWRITE_AND_TRANSLATE)) {
+
+            queryTransformers.add(ragStageTimings.timed(name + ".rewrite-and-translate",
+                    new RewriteAndTranslateQueryTransformer(queryChatClientBuilder.clone(), profile.targetLanguage())));
+        }
+
+        if (stages.contains(REWRITE)) {
+
+            queryTransformers.add(ragStageTimings.timed(name + ".rewrite", RewriteQueryTransformer
+                    .builder()
+                    .chatClientBuilder(queryChatClientBuilder.clone())
+                    .build()));
+        }
+
+        if (stages.contains(TRANSLATE)) {
+
+            queryTransformers.add(ragStageTimings.timed(name + ".translate", TranslationQueryTransformer
+                    .builder()
+                    .chatClientBuilder(queryChatClientBuilder.clone())
+                    .targetLanguage(profile.targetLanguage())
+                    .build()));
+        }
+
+        DocumentRetriever documentRetriever = stages.contains(HYBRID)
+                ? new HybridDocumentRetriever(vectorStore, bm25Index, retrievalExecutor.taskExecutor(), profile.topK(),
+                        profile.hybridCandidates(), profile.similarityThreshold())
+                : VectorStoreDocumentRetriever
+                        .builder()
+                        .vectorStore(vectorStore)
+                        .topK(profile.topK())
+                        .similarityThreshold(profile.similarityThreshold())
+                        .build();
+
+        var advisorBuilder = RetrievalAugmentationAdvisor
+                .builder()
+                .queryTransformers(queryTransformers)
+                .documentRetriever(ragStageTimings.timed(name + ".retrieve", documentRetriever))
+                .documentJoiner(stages.contains(RANK_FUSION)
+                        ? new ReciprocalRankFusionDocumentJoiner(profile.topK())
+                        : new ConcatenationDocumentJoiner())
+                .documentPostProcessors(contextPacker)
+                .queryAugmenter(ContextualQueryAugmenter.builder().allowEmptyContext(true).build());
+
+        if (stages.contains(EXPAND)) {
+
+            advisorBuilder.queryExpander(ragStageTimings.timed(name + ".expand", MultiQueryExpander
+                    .builder()
+                    .chatClientBuilder(queryChatClientBuilder.clone())
+                    .numberOfQueries(profile.expandedQueries())
+                    .includeOriginal(stages.contains(RANK_FUSION))
+                    .build()));
+        }
+
+        if (stages.contains(PARALLEL_RETRIEVAL)) {
+            advisorBuilder.taskExecutor(retrievalExecutor.taskExecutor());
+        }
+
+        return advisorBuilder.build();
+    }
+}
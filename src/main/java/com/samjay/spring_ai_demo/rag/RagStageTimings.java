@@ -0,0 +1,96 @@
+package com.samjay.spring_ai_demo.rag;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.rag.preretrieval.query.expansion.QueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+Records how long each RAG stage takes, so the critical path of a request can be read from the logs and the
+aggregated numbers. Stages are wrapped rather than changed, any transformer, expander or retriever can be timed.
+ */
+
+@Slf4j
+@Component
+public class RagStageTimings {
+
+    private final Map<String, StageTiming> stages = new ConcurrentHashMap<>();
+
+    public QueryTransformer timed(String stage, QueryTransformer queryTransformer) {
+
+        return query -> time(stage, () -> queryTransformer.transform(query));
+    }
+
+    public QueryExpander timed(String stage, QueryExpander queryExpander) {
+
+        return query -> time(stage, () -> queryExpander.expand(query));
+    }
+
+    public DocumentRetriever timed(String stage, DocumentRetriever documentRetriever) {
+
+        return query -> time(stage, () -> documentRetriever.retrieve(query));
+    }
+
+    public <T> T time(String stage, Supplier<T> work) {
+
+        long start = System.nanoTime();
+
+        try {
+
+            return work.get();
+
+        } finally {
+
+            long elapsedMicros = (System.nanoTime() - start) / 1_000;
+
+            stages.computeIfAbsent(stage, name -> new StageTiming()).record(elapsedMicros);
+
+            log.debug("RAG stage {} took {} ms on {}", stage, elapsedMicros / 1_000, Thread.currentThread().getName());
+        }
+    }
+
+    public Map<String, StageSummary> summary() {
+
+        Map<String, StageSummary> summary = new TreeMap<>();
+
+        stages.forEach((stage, timing) -> summary.put(stage, timing.summary()));
+
+        return summary;
+    }
+
+    private static final class StageTiming {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalMicros = new LongAdder();
+
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        void record(long elapsedMicros) {
+
+            count.increment();
+
+            totalMicros.add(elapsedMicros);
+
+            maxMicros.accumulate(elapsedMicros);
+        }
+
+        StageSummary summary() {
+
+            long calls = count.sum();
+
+            return new StageSummary(calls, calls == 0 ? 0 : totalMicros.sum() / calls / 1_000.0, maxMicros.get() / 1_000.0);
+        }
+    }
+
+    public record StageSummary(long count, double averageMillis, double maxMillis) {
+    }
+}
@@ -0,0 +1,70 @@
+package com.samjay.spring_ai_demo.rag;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.join.DocumentJoiner;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Joins the result lists of several queries with reciprocal rank fusion.
+A document found by several queries is kept once and ranked higher the more lists it appears in and the better it
+ranks in them, instead of being repeated like the concatenation joiner does.
+ */
+
+public class ReciprocalRankFusionDocumentJoiner implements DocumentJoiner {
+
+    public static final int DEFAULT_RANK_CONSTANT = 60;
+
+    private final int rankConstant;
+
+    private final int topK;
+
+    public ReciprocalRankFusionDocumentJoiner(int topK) {
+
+        this(DEFAULT_RANK_CONSTANT, topK);
+    }
+
+    public ReciprocalRankFusionDocumentJoiner(int rankConstant, int topK) {
+
+        this.rankConstant = rankConstant;
+
+        this.topK = topK;
+    }
+
+    @Override
+    public List<Document> join(Map<Query, List<List<Document>>> documentsForQuery) {
+
+        return fuse(documentsForQuery.values().stream().flatMap(List::stream).toList(), rankConstant, topK);
+    }
+
+    public static List<Document> fuse(Collection<List<Document>> rankedLists, int rankConstant, int topK) {
+
+        Map<String, Document> documents = new LinkedHashMap<>();
+
+        Map<String, Double> scores = new HashMap<>();
+
+        for (List<Document> rankedList : rankedLists) {
+
+            for (int rank = 0; rank < rankedList.size(); rank++) {
+
+                Document document = rankedList.get(rank);
+
+                documents.putIfAbsent(document.getId(), document);
+
+                scores.merge(document.getId(), 1.0 / (rankConstant + rank + 1), Double::sum);
+            }
+        }
+
+        return documents.values().stream()
+                .sorted(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed())
+                .limit(topK)
+                .map(document -> document.mutate().score(scores.get(document.getId())).build())
+                .toList();
+    }
+}
@@ -0,0 +1,66 @@
+package com.samjay.spring_ai_demo.rag;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/*
+Executor used by the Retrieval Augmentation Advisor to retrieve documents for every expanded query at the same time.
+Retrieval is I/O bound (an embedding call followed by a vector search), so the pool is sized by the number of
+concurrent queries rather than by the number of cores.
+When virtual threads are enabled every retrieval gets its own virtual thread, limited to the same concurrency.
+The executor is not exposed as an Executor bean so it does not replace the application task executor of Spring Boot.
+ */
+
+@Component
+public class RetrievalExecutor implements DisposableBean {
+
+    private final TaskExecutor taskExecutor;
+
+    public RetrievalExecutor(@Value("${rag.retrieval.concurrency:16}") int concurrency,
+                             @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+
+        if (virtualThreads) {
+
+            var virtualThreadExecutor = new SimpleAsyncTaskExecutor("rag-retrieval-");
+
+            virtualThreadExecutor.setVirtualThreads(true);
+
+            virtualThreadExecutor.setConcurrencyLimit(concurrency);
+
+            taskExecutor = virtualThreadExecutor;
+
+        } else {
+
+            var threadPoolExecutor = new ThreadPoolTaskExecutor();
+
+            threadPoolExecutor.setCorePoolSize(concurrency);
+
+            threadPoolExecutor.setMaxPoolSize(concurrency);
+
+            threadPoolExecutor.setQueueCapacity(concurrency * 8);
+
+            threadPoolExecutor.setThreadNamePrefix("rag-retrieval-");
+
+            threadPoolExecutor.initialize();
+
+            taskExecutor = threadPoolExecutor;
+        }
+    }
+
+    public TaskExecutor taskExecutor() {
+
+        return taskExecutor;
+    }
+
+    @Override
+    public void destroy() {
+
+        if (taskExecutor instanceof ThreadPoolTaskExecutor threadPoolExecutor) {
+            threadPoolExecutor.shutdown();
+        }
+    }
+}
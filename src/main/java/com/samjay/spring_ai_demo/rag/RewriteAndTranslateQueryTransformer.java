@@ -0,0 +1,51 @@
+package com.samjay.spring_ai_demo.rag;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
+import org.springframework.util.StringUtils;
+
+/*
+Does the work of RewriteQueryTransformer and TranslationQueryTransformer in a single model call.
+Both transformers run one after the other on the critical path, so folding them saves a full round trip per request.
+ */
+
+public class RewriteAndTranslateQueryTransformer implements QueryTransformer {
+
+    private static final String PROMPT = """
+            Given a user query, translate it to {targetLanguage} if it is written in another language and rewrite it
+            to provide better results when querying a vector database. Remove any irrelevant information and make sure
+            the query is concise and specific.
+
+            Original query:
+            {query}
+
+            Rewritten query:
+            """;
+
+    private final ChatClient chatClient;
+
+    private final String targetLanguage;
+
+    public RewriteAndTranslateQueryTransformer(ChatClient.Builder chatClientBuilder, String targetLanguage) {
+
+        this.chatClient = chatClientBuilder.build();
+
+        this.targetLanguage = targetLanguage;
+    }
+
+    @Override
+    public Query transform(Query query) {
+
+        String transformedText = chatClient.prompt()
+                .user(user -> user.text(PROMPT).param("targetLanguage", targetLanguage).param("query", query.text()))
+                .call()
+                .content();
+
+        if (!StringUtils.hasText(transformedText)) {
+            return query;
+        }
+
+        return query.mutate().text(transformedText.trim()).build();
+    }
+}
@@ -0,0 +1,18 @@
+package com.samjay.spring_ai_demo.repository;
+
+import org.springframework.ai.document.Document;
+
+import java.util.Set;
+import java.util.function.Consumer;
+
+public interface IndexedChunkRepository {
+
+    Set<String> findIdsBySource(String source);
+
+    /*
+    Passes every stored chunk (id, text and metadata, without the embedding) to the action, used to rebuild the
+    indexes that live next to the vector store.
+     */
+
+    void forEachChunk(Consumer<Document> action);
+}
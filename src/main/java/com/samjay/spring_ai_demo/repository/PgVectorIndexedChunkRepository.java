@@ -0,0 +1,82 @@
+package com.samjay.spring_ai_demo.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samjay.spring_ai_demo.helper.ContentHash;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/*
+Reads the ids already stored for a source straight from the pgvector table.
+Only ids are loaded, so this stays cheap even for large sources.
+The local vector store answers the same lookups itself, so this repository is only created for pgvector.
+ */
+
+@Repository
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class PgVectorIndexedChunkRepository implements IndexedChunkRepository {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String tableName;
+
+    public PgVectorIndexedChunkRepository(JdbcTemplate jdbcTemplate,
+                                          @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schemaName,
+                                          @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName) {
+
+        this.jdbcTemplate = jdbcTemplate;
+
+        this.tableName = schemaName + "." + tableName;
+    }
+
+    @Override
+    public Set<String> findIdsBySource(String source) {
+
+        String sql = "SELECT id::text FROM " + tableName + " WHERE metadata->>'" + ContentHash.SOURCE + "' = ?";
+
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, source));
+    }
+
+    @Override
+    public void forEachChunk(Consumer<Document> action) {
+
+        jdbcTemplate.query("SELECT id::text, content, metadata::text FROM " + tableName, resultSet -> {
+
+            action.accept(Document.builder()
+                    .id(resultSet.getString(1))
+                    .text(resultSet.getString(2))
+                    .metadata(readMetadata(resultSet.getString(3)))
+                    .build());
+        });
+    }
+
+    private Map<String, Object> readMetadata(String json) {
+
+        if (json == null) {
+            return Map.of();
+        }
+
+        try {
+
+            return objectMapper.readValue(json, METADATA_TYPE);
+
+        } catch (JsonProcessingException exception) {
+
+            throw new IllegalStateException("Could not read the metadata of a vector store row", exception);
+        }
+    }
+}
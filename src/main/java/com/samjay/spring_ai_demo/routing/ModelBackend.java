@@ -0,0 +1,129 @@
+package com.samjay.spring_ai_demo.routing;
+
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+One chat model the router can send requests to, together with its cost policy and what the router observed about it.
+Latency is tracked as an exponentially weighted moving average of successful calls, so a backend that slows down
+loses traffic within a few requests and wins it back once it recovers.
+A backend that failed is skipped until its cooldown is over.
+ */
+
+public class ModelBackend {
+
+    private final String name;
+
+    private final ChatModel chatModel;
+
+    private final double costPerMillionTokens;
+
+    private final int maxPromptTokens;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private double latencyEwmaMillis;
+
+    private boolean latencyObserved;
+
+    private volatile long unavailableUntilMillis;
+
+    public ModelBackend(String name, ChatModel chatModel, double costPerMillionTokens, int maxPromptTokens) {
+
+        this.name = name;
+
+        this.chatModel = chatModel;
+
+        this.costPerMillionTokens = costPerMillionTokens;
+
+        this.maxPromptTokens = maxPromptTokens;
+    }
+
+    public String name() {
+
+        return name;
+    }
+
+    public ChatModel chatModel() {
+
+        return chatModel;
+    }
+
+    public double costPerMillionTokens() {
+
+        return costPerMillionTokens;
+    }
+
+    public int maxPromptTokens() {
+
+        return maxPromptTokens;
+    }
+
+    public int inFlight() {
+
+        return inFlight.get();
+    }
+
+    public long requests() {
+
+        return requests.sum();
+    }
+
+    public long failures() {
+
+        return failures.sum();
+    }
+
+    public synchronized double latencyEwmaMillis() {
+
+        return latencyEwmaMillis;
+    }
+
+    public boolean isAvailable(long nowMillis) {
+
+        return nowMillis >= unavailableUntilMillis;
+    }
+
+    void started() {
+
+        requests.increment();
+
+        inFlight.incrementAndGet();
+    }
+
+    void finished() {
+
+        inFlight.decrementAndGet();
+    }
+
+    /*
+    The first observation seeds the average, so a new backend does not look faster than it is for its first requests.
+     */
+
+    synchronized void recordLatency(long elapsedMillis, double alpha) {
+
+        if (!latencyObserved) {
+
+            latencyEwmaMillis = elapsedMillis;
+
+            latencyObserved = true;
+
+            return;
+        }
+
+        latencyEwmaMillis = alpha * elapsedMillis + (1 - alpha) * latencyEwmaMillis;
+    }
+
+    void recordFailure(long nowMillis, long cooldownMillis) {
+
+        failures.increment();
+
+        unavailableUntilMillis = nowMillis + cooldownMillis;
+    }
+}
@@ -0,0 +1,337 @@
+package com.samjay.spring_ai_demo.routing;
+
+import com.samjay.spring_ai_demo.limiter.AdmissionRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Chat model that sends every request to one of several backends, chosen per request.
+Backends whose prompt limit is smaller than the prompt are left out, the rest are ranked by expected latency
+(latency average times the requests already waiting on the backend) plus the estimated cost of the prompt weighed by
+the cost policy. Backends that failed recently go to the end of the list.
+A call that has not answered within the hedge delay is sent to the next backend as well and the first answer wins,
+the slower call is cancelled. When a backend fails the request fails over to the next one.
+Streams are not hedged, they fail over only while nothing has been sent to the caller yet.
+Backends are plain ChatModels, so the router can be exercised with stub models.
+ */
+
+@Slf4j
+public class RoutingChatModel implements ChatModel, DisposableBean {
+
+    private final List<ModelBackend> backends;
+
+    private final RoutingPolicy policy;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder hedgedCalls = new LongAdder();
+
+    private final LongAdder failovers = new LongAdder();
+
+    public RoutingChatModel(List<ModelBackend> backends, RoutingPolicy policy) {
+
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("The router needs at least one backend");
+        }
+
+        this.backends = List.copyOf(backends);
+
+        this.policy = policy;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+
+        List<ModelBackend> candidates = rank(prompt);
+
+        Prompt routedPrompt = portable(prompt);
+
+        BlockingQueue<Attempt> completed = new LinkedBlockingQueue<>();
+
+        AtomicBoolean decided = new AtomicBoolean();
+
+        List<Future<?>> running = new ArrayList<>();
+
+        running.add(submit(candidates.get(0), routedPrompt, completed, decided));
+
+        int next = 1;
+
+        int pending = 1;
+
+        boolean hedged = false;
+
+        long hedgeDelayMillis = hedgeDelayMillis(candidates.get(0));
+
+        try {
+
+            while (true) {
+
+                Attempt attempt;
+
+                if (!hedged && policy.hedgingEnabled() && next < candidates.size()) {
+
+                    attempt = completed.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS);
+
+                    if (attempt == null) {
+
+                        hedged = true;
+
+                        hedgedCalls.increment();
+
+                        log.debug("No answer from {} after {} ms, hedging on {}", candidates.get(next - 1).name(),
+                                hedgeDelayMillis, candidates.get(next).name());
+
+                        running.add(submit(candidates.get(next++), routedPrompt, completed, decided));
+
+                        pending++;
+
+                        continue;
+                    }
+
+                } else {
+
+                    attempt = completed.take();
+                }
+
+                pending--;
+
+                if (attempt.failure() == null) {
+                    return attempt.response();
+                }
+
+                if (pending > 0) {
+                    continue;
+                }
+
+                if (next >= candidates.size()) {
+                    throw attempt.failure();
+                }
+
+                failovers.increment();
+
+                log.warn("Chat model backend {} failed, failing over to {}: {}", attempt.backend().name(),
+                        candidates.get(next).name(), attempt.failure().getMessage());
+
+                hedgeDelayMillis = hedgeDelayMillis(candidates.get(next));
+
+                running.add(submit(candidates.get(next++), routedPrompt, completed, decided));
+
+                pending++;
+            }
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Routed chat call was interrupted", exception);
+
+        } finally {
+
+            decided.set(true);
+
+            running.forEach(future -> future.cancel(true));
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+
+        return Flux.defer(() -> stream(portable(prompt), rank(prompt), 0));
+    }
+
+    public List<ModelBackend> backends() {
+
+        return backends;
+    }
+
+    public List<BackendStats> stats() {
+
+        long now = System.currentTimeMillis();
+
+        return backends.stream()
+                .map(backend -> new BackendStats(backend.name(), backend.latencyEwmaMillis(), backend.inFlight(),
+                        backend.requests(), backend.failures(), backend.isAvailable(now)))
+                .toList();
+    }
+
+    public long hedgedCalls() {
+
+        return hedgedCalls.sum();
+    }
+
+    public long failovers() {
+
+        return failovers.sum();
+    }
+
+    @Override
+    public void destroy() {
+
+        executor.shutdownNow();
+    }
+
+    /*
+    Only the prompt tokens are known before the call, so the cost estimate leaves the completion out.
+     */
+
+    List<ModelBackend> rank(Prompt prompt) {
+
+        int promptTokens = tokenCountEstimator.estimate(prompt.getContents());
+
+        long now = System.currentTimeMillis();
+
+        List<ModelBackend> eligible = backends.stream()
+                .filter(backend -> backend.maxPromptTokens() >= promptTokens)
+                .toList();
+
+        if (eligible.isEmpty()) {
+            eligible = backends;
+        }
+
+        return eligible.stream()
+                .sorted(Comparator.comparing((ModelBackend backend) -> !backend.isAvailable(now))
+                        .thenComparingDouble(backend -> score(backend, promptTokens)))
+                .toList();
+    }
+
+    private double score(ModelBackend backend, int promptTokens) {
+
+        double expectedLatencyMillis = backend.latencyEwmaMillis() * (backend.inFlight() + 1);
+
+        double estimatedCents = promptTokens * backend.costPerMillionTokens() / 10_000.0;
+
+        return expectedLatencyMillis + policy.millisPerCent() * estimatedCents;
+    }
+
+    private long hedgeDelayMillis(ModelBackend backend) {
+
+        return Math.max(policy.hedgeMinDelay().toMillis(), Math.round(backend.latencyEwmaMillis() * policy.hedgeLatencyMultiplier()));
+    }
+
+    /*
+    Failures of calls that lost to another backend are not held against their backend, they were cancelled.
+    Neither are admission rejections, the backend is busy rather than broken and its limiter already backs off.
+     */
+
+    private Future<?> submit(ModelBackend backend, Prompt prompt, BlockingQueue<Attempt> completed, AtomicBoolean decided) {
+
+        return executor.submit(() -> {
+
+            backend.started();
+
+            long start = System.nanoTime();
+
+            try {
+
+                ChatResponse chatResponse = backend.chatModel().call(prompt);
+
+                backend.recordLatency((System.nanoTime() - start) / 1_000_000, policy.ewmaAlpha());
+
+                completed.add(new Attempt(backend, chatResponse, null));
+
+            } catch (RuntimeException exception) {
+
+                if (!decided.get() && !(exception instanceof AdmissionRejectedException)) {
+                    backend.recordFailure(System.currentTimeMillis(), policy.failureCooldown().toMillis());
+                }
+
+                completed.add(new Attempt(backend, null, exception));
+
+            } finally {
+
+                backend.finished();
+            }
+        });
+    }
+
+    private Flux<ChatResponse> stream(Prompt prompt, List<ModelBackend> candidates, int index) {
+
+        ModelBackend backend = candidates.get(index);
+
+        AtomicBoolean emitted = new AtomicBoolean();
+
+        return Flux.defer(() -> {
+
+                    backend.started();
+
+                    return backend.chatModel().stream(prompt);
+                })
+                .doOnNext(chatResponse -> emitted.set(true))
+                .doFinally(signal -> backend.finished())
+                .onErrorResume(exception -> {
+
+                    if (!(exception instanceof AdmissionRejectedException)) {
+                        backend.recordFailure(System.currentTimeMillis(), policy.failureCooldown().toMillis());
+                    }
+
+                    if (emitted.get() || index + 1 >= candidates.size()) {
+                        return Flux.error(exception);
+                    }
+
+                    failovers.increment();
+
+                    log.warn("Chat model backend {} failed before streaming, failing over to {}: {}", backend.name(),
+                            candidates.get(index + 1).name(), exception.getMessage());
+
+                    return stream(prompt, candidates, index + 1);
+                });
+    }
+
+    /*
+    Options that belong to one provider, like the model name, would break the other backends, so only the portable
+    options and the tools are passed on and every backend uses its own model.
+     */
+
+    private static Prompt portable(Prompt prompt) {
+
+        ChatOptions options = prompt.getOptions();
+
+        if (options == null) {
+            return prompt;
+        }
+
+        ToolCallingChatOptions.Builder portableOptions = ToolCallingChatOptions.builder()
+                .temperature(options.getTemperature())
+                .maxTokens(options.getMaxTokens())
+                .topP(options.getTopP())
+                .stopSequences(options.getStopSequences());
+
+        if (options instanceof ToolCallingChatOptions toolCallingChatOptions) {
+
+            portableOptions.toolCallbacks(toolCallingChatOptions.getToolCallbacks())
+                    .toolNames(toolCallingChatOptions.getToolNames())
+                    .toolContext(toolCallingChatOptions.getToolContext())
+                    .internalToolExecutionEnabled(toolCallingChatOptions.getInternalToolExecutionEnabled());
+        }
+
+        return new Prompt(prompt.getInstructions(), portableOptions.build());
+    }
+
+    private record Attempt(ModelBackend backend, ChatResponse response, RuntimeException failure) {
+    }
+
+    public record BackendStats(String name, double latencyEwmaMillis, int inFlight, long requests, long failures, boolean available) {
+    }
+}
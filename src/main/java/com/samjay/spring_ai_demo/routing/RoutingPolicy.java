@@ -0,0 +1,19 @@
+package com.samjay.spring_ai_demo.routing;
+
+import java.time.Duration;
+
+/*
+Tuning of the model router.
+ewmaAlpha is the weight of the newest latency observation, millisPerCent is how many milliseconds of expected latency
+one cent of estimated spend is worth when backends are compared.
+A call is hedged on the next best backend when it has not answered after the larger of hedgeMinDelay and
+hedgeLatencyMultiplier times the latency average of the backend it was sent to.
+ */
+
+public record RoutingPolicy(double ewmaAlpha,
+                            double millisPerCent,
+                            boolean hedgingEnabled,
+                            Duration hedgeMinDelay,
+                            double hedgeLatencyMultiplier,
+                            Duration failureCooldown) {
+}
@@ -31,6 +31,8 @@ public interface ChatService {
 
     Flux<String> streamChatResponseFromAiModel(String message);
 
+    Flux<String> streamChatResponseReactively(String message, String conversationId);
+
     String addingMemoryForASpecificChatConversation(String message, String userId);
 
     void addingDataToVectorDB(List<String> dataList);
@@ -43,6 +45,10 @@ public interface ChatService {
 
     String usingAdvancedRagFeaturesToChatWithLLM(String message);
 
+    String usingParallelRagFeaturesToChatWithLLM(String message);
+
+    String chatWithRagProfile(String message, String profile);
+
     void howToLoadPdfDocumentIntoAVectorDB();
 
     void howToLoadJsonDocumentIntoAVectorDB();
@@ -1,25 +1,21 @@
 package com.samjay.spring_ai_demo.service;
 
+import com.samjay.spring_ai_demo.advisors.PromptLayoutAdvisor;
 import com.samjay.spring_ai_demo.entity.Job;
-import com.samjay.spring_ai_demo.toolcalling.SimpleDateTimeTool;
-import com.samjay.spring_ai_demo.toolcalling.WeatherApiTool;
+import com.samjay.spring_ai_demo.prompt.PromptTemplateRegistry;
+import com.samjay.spring_ai_demo.rag.ContextPacker;
+import com.samjay.spring_ai_demo.rag.RagPipelineRegistry;
+import com.samjay.spring_ai_demo.rag.RagStageTimings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
-import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
-import org.springframework.ai.rag.preretrieval.query.expansion.MultiQueryExpander;
-import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
-import org.springframework.ai.rag.preretrieval.query.transformation.TranslationQueryTransformer;
-import org.springframework.ai.rag.retrieval.join.ConcatenationDocumentJoiner;
-import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -28,23 +24,23 @@ import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Stream;
 
 @Service
 public class ChatServiceImplementation implements ChatService {
 
-    private final ChatClient openAiChatClient;
-
-    @Value("classpath:/prompts/userMessage.st")
-    private Resource userMessage;
+    private static final String INLINE_DATA_SOURCE = "inline-data";
 
-    @Value("classpath:/prompts/systemMessage.st")
-    private Resource systemMessage;
+    private final ChatClient openAiChatClient;
 
-    @Value("classpath:sample_data.json")
+    @Value("classpath:sampleData.json")
     private Resource jsonFileResource;
 
     @Value("classpath:Samuel Nwachukwu Mbanisi CV.pdf")
@@ -54,22 +50,53 @@ public class ChatServiceImplementation implements ChatService {
 
     private final DataLoaderService dataLoaderService;
 
-    private final DataTransformerService dataTransformerService;
+    private final ToolCallbackProvider weatherToolCallbackProvider;
+
+    private final ToolCallbackProvider dateTimeToolCallbackProvider;
+
+    private final IncrementalIndexingService incrementalIndexingService;
+
+    private final RagStageTimings ragStageTimings;
 
-    private final WeatherApiTool weatherApiTool;
+    private final RagPipelineRegistry ragPipelineRegistry;
+
+    private final ContextPacker contextPacker;
+
+    private final PromptTemplateRegistry promptTemplates;
+
+    @Value("${chat.stream.coalesce.max-tokens:16}")
+    private int streamCoalesceMaxTokens;
+
+    @Value("${chat.stream.coalesce.window:PT0.05S}")
+    private Duration streamCoalesceWindow;
 
     private final Logger logger = LoggerFactory.getLogger(ChatServiceImplementation.class);
 
     public ChatServiceImplementation(@Qualifier("openAiChatClient") ChatClient openAiChatClient,
                                      VectorStore vectorStore, DataLoaderService dataLoaderService,
-                                     DataTransformerService dataTransformerService,
-                                     WeatherApiTool weatherApiTool) {
+                                     @Qualifier("weatherToolCallbackProvider") ToolCallbackProvider weatherToolCallbackProvider,
+                                     @Qualifier("dateTimeToolCallbackProvider") ToolCallbackProvider dateTimeToolCallbackProvider,
+                                     IncrementalIndexingService incrementalIndexingService,
+                                     RagStageTimings ragStageTimings,
+                                     RagPipelineRegistry ragPipelineRegistry,
+                                     ContextPacker contextPacker,
+                                     PromptTemplateRegistry promptTemplates) {
 
-        this.weatherApiTool = weatherApiTool;
+        this.promptTemplates = promptTemplates;
 
-        this.dataLoaderService = dataLoaderService;
+        this.contextPacker = contextPacker;
 
-        this.dataTransformerService = dataTransformerService;
+        this.ragStageTimings = ragStageTimings;
+
+        this.ragPipelineRegistry = ragPipelineRegistry;
+
+        this.weatherToolCallbackProvider = weatherToolCallbackProvider;
+
+        this.dateTimeToolCallbackProvider = dateTimeToolCallbackProvider;
+
+        this.incrementalIndexingService = incrementalIndexingService;
+
+        this.dataLoaderService = dataLoaderService;
 
         this.vectorStore = vectorStore;
 
@@ -184,31 +211,26 @@ public class ChatServiceImplementation implements ChatService {
 
     /*
     Adding prompt templating, when you have only user prompt with dynamic parameters
+    The templates in /prompts are compiled once by the registry, rendering one only fills in the parameters.
      */
 
     @Override
     public String addingPromptTemplating(String name) {
 
-        String message = "Create a welcome message for {name} who just registered on our platform.";
-
         return openAiChatClient.prompt()
-                .user(u -> u.text(message).param("name", name))
+                .user(promptTemplates.render("welcomeMessage", Map.of("name", name)))
                 .call()
                 .content();
     }
 
     /*
-    More about prompt templating with PromptTemplate class with dynamic parameters
+    More about prompt templating with a compiled template from the registry with dynamic parameters
      */
 
     @Override
     public String moreAboutPromptTemplating(String name, String role) {
 
-        PromptTemplate promptTemplate = PromptTemplate.builder()
-                .template("Create a professional bio for {name} who works as a {role}.")
-                .build();
-
-        String message = promptTemplate.render(
+        String message = promptTemplates.render("professionalBio",
                 Map.of(
                         "name", name,
                         "role", role
@@ -229,20 +251,14 @@ public class ChatServiceImplementation implements ChatService {
     @Override
     public String configuringBothSystemAndUserPromptUsingPromptTemplating(String name, String role) {
 
-        var systemPromptTemplate = SystemPromptTemplate.builder().template("You are an expert career counselor.").build();
-
-        var systemPrompt = systemPromptTemplate.createMessage();
+        var systemPrompt = new SystemMessage(promptTemplates.render("careerCounselor"));
 
-        var userPromptTemplate = PromptTemplate.builder()
-                .template("Provide career advice for {name} who is working as a {role}.")
-                .build();
-
-        var userPrompt = userPromptTemplate.createMessage(
+        var userPrompt = new UserMessage(promptTemplates.render("userMessage",
                 Map.of(
                         "name", name,
                         "role", role
                 )
-        );
+        ));
 
         var prompt = new Prompt(systemPrompt, userPrompt);
 
@@ -259,8 +275,8 @@ public class ChatServiceImplementation implements ChatService {
     public String readingFromFileAndUsingItAsPrompt(String name, String role) {
 
         return openAiChatClient.prompt()
-                .system(system -> system.text(systemMessage))
-                .user(user -> user.text(userMessage).param("name", name).param("role", role))
+                .system(promptTemplates.render("systemMessage"))
+                .user(promptTemplates.render("userMessage", Map.of("name", name, "role", role)))
                 .call()
                 .content();
     }
@@ -273,12 +289,52 @@ public class ChatServiceImplementation implements ChatService {
     public Flux<String> streamChatResponseFromAiModel(String message) {
 
         return openAiChatClient.prompt()
-                .system(system -> system.text(systemMessage))
+                .system(promptTemplates.render("systemMessage"))
                 .user(message)
                 .stream()
                 .content();
     }
 
+    /*
+    Fully reactive streaming chat with memory, data from the vector database and tool calling.
+    Retrieving documents runs on the bounded elastic scheduler as part of the reactive chain instead of blocking the
+    caller, and the memory advisor and tool calls already run on it in streaming mode. The system prompt is rendered
+    from its compiled template, so nothing is read from disk per request.
+    Tokens are coalesced into chunks of up to streamCoalesceMaxTokens or streamCoalesceWindow, whichever comes first,
+    and only as fast as the client requests them, so a slow client receives fewer and larger events.
+    When the client disconnects the subscription is cancelled, which cancels the upstream model call as well.
+     */
+
+    @Override
+    public Flux<String> streamChatResponseReactively(String message, String conversationId) {
+
+        Mono<String> context = Mono.fromCallable(() -> vectorStore.similaritySearch(SearchRequest
+                        .builder()
+                        .topK(3)
+                        .similarityThreshold(0.7)
+                        .query(message)
+                        .build()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(contextPacker::packAndRender);
+
+        return context
+                .flatMapMany(documents -> openAiChatClient.prompt()
+                        .system(promptTemplates.render("systemMessage"))
+                        .user(message)
+                        .advisors(advisor -> {
+                            advisor.param(PromptLayoutAdvisor.RETRIEVED_DOCUMENTS, documents);
+                            if (conversationId != null) {
+                                advisor.param(ChatMemory.CONVERSATION_ID, conversationId);
+                            }
+                        })
+                        .toolCallbacks(weatherToolCallbackProvider.getToolCallbacks())
+                        .stream()
+                        .content())
+                .bufferTimeout(streamCoalesceMaxTokens, streamCoalesceWindow, true)
+                .map(tokens -> String.join("", tokens))
+                .doOnCancel(() -> logger.info("Client cancelled the stream, the upstream model call was cancelled"));
+    }
+
     /*
     Adding chat memory for a specific chat conversation to avoid losing context
      */
@@ -295,18 +351,20 @@ public class ChatServiceImplementation implements ChatService {
 
     /*
     Adding data to vector database
+    The data is indexed incrementally, so adding the same list again does not create duplicate rows or new embeddings
+    and entries that were removed from the list are deleted from the vector database.
      */
 
     @Override
     public void addingDataToVectorDB(List<String> dataList) {
 
-        List<Document> document = dataList.stream().map(Document::new).toList();
-
-        vectorStore.add(document);
+        incrementalIndexingService.reindex(INLINE_DATA_SOURCE, dataList.stream().map(Document::new));
     }
 
     /*
     Chat with llm using data from vector database manually
+    The documents are deduplicated and packed into the context token budget. They are handed to the prompt layout
+    advisor, which puts them into the user message behind the stable system prompt and history.
      */
 
     @Override
@@ -322,133 +380,79 @@ public class ChatServiceImplementation implements ChatService {
 
         List<Document> documents = vectorStore.similaritySearch(searchRequest);
 
-        List<String> contextList = documents.stream().map(Document::getText).toList();
-
-        String context = String.join("\n", contextList);
+        String context = contextPacker.packAndRender(documents);
 
         return openAiChatClient.prompt()
-                .system(system -> system.text(systemMessage).param("documents", context))
+                .system(promptTemplates.render("systemMessage"))
                 .user(message)
+                .advisors(advisor -> advisor.param(PromptLayoutAdvisor.RETRIEVED_DOCUMENTS, context))
                 .call()
                 .content();
     }
 
     /*
     Chat with llm using data from vector database with Question Answer Advisor
+    The advisor is built once from the "question-answer" RAG profile instead of on every request.
      */
 
     @Override
     public String chatWithDataFromVectorDBWithQuestionAnswerAdvisor(String message) {
 
-        var qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
-                .searchRequest(SearchRequest.builder().similarityThreshold(0.75).topK(3).build())
-                .build();
-
-        return openAiChatClient.prompt()
-                .advisors(qaAdvisor)
-                .user(message)
-                .call()
-                .content();
+        return chatWithRagProfile(message, "question-answer");
     }
 
     /*
     Chat with llm using data from vector database with Retrieval Augmentation Advisor
+    The advisor is built once from the "retrieval-augmentation" RAG profile.
      */
 
     @Override
     public String chatWithDataFromVectorDBWithRetrievalAugmentationAdvisor(String message) {
 
-        var advisor = RetrievalAugmentationAdvisor
-                .builder()
-                .documentRetriever(VectorStoreDocumentRetriever
-                        .builder()
-                        .vectorStore(vectorStore)
-                        .topK(3)
-                        .similarityThreshold(0.75)
-                        .build()
-                )
-                .queryAugmenter(ContextualQueryAugmenter.builder().allowEmptyContext(true).build())
-                .build();
-
-        return openAiChatClient.prompt()
-                .advisors(advisor)
-                .user(message)
-                .call()
-                .content();
+        return chatWithRagProfile(message, "retrieval-augmentation");
     }
 
     /*
     Using advanced RAG features to chat with LLM, including query rewriting, translation, multi-query expansion,
-    document retrieval, and contextual query augmentation
+    document retrieval, and contextual query augmentation.
+    The "advanced" RAG profile rewrites the user query for retrieval, translates it to English, expands it into
+    3 variations, retrieves documents for every variation and augments the user query with the retrieved context
+    even when no documents are found.
      */
 
     @Override
     public String usingAdvancedRagFeaturesToChatWithLLM(String message) {
 
-        /*
-        This rewrites the user query to make it more effective for retrieval.
-         */
-        var rewriteQueryTransformer = RewriteQueryTransformer
-                .builder()
-                .chatClientBuilder(openAiChatClient.mutate().clone())
-                .build();
-
-        /*
-        This translates the user query to the target language for better retrieval.
-         */
-
-        var translationQueryTransformer = TranslationQueryTransformer
-                .builder()
-                .chatClientBuilder(openAiChatClient.mutate().clone())
-                .targetLanguage("English")
-                .build();
-
-        /*
-        This expands the user query into multiple queries to improve retrieval.
-        Generates 3 different variations of the query.
-         */
+        return chatWithRagProfile(message, "advanced");
+    }
 
-        var multiQueryExpander = MultiQueryExpander
-                .builder()
-                .chatClientBuilder(openAiChatClient.mutate().clone())
-                .numberOfQueries(3)
-                .build();
+    /*
+    Same pipeline as the advanced RAG example, arranged so that independent work runs concurrently.
+    The "parallel" RAG profile folds rewrite and translation into a single model call, retrieves the expanded queries
+    in parallel on the retrieval executor and merges the results with reciprocal rank fusion.
+    Every stage is timed, so the critical path shows up in the logs and in the stage timings.
+     */
 
-        /*
-        This retrieves documents from the vector store based on the transformed and expanded queries.
-         */
+    @Override
+    public String usingParallelRagFeaturesToChatWithLLM(String message) {
 
-        var vectorStoreDocumentRetriever = VectorStoreDocumentRetriever
-                .builder()
-                .vectorStore(vectorStore)
-                .topK(5)
-                .similarityThreshold(0.8)
-                .build();
+        return chatWithRagProfile(message, "parallel");
+    }
 
-        /*
-        This augments the user query with contextual information from the retrieved documents.
-        Adds the context to the user query even if no documents are found.
-         */
+    /*
+    Chat with llm using any of the RAG pipelines configured under rag.profiles
+     */
 
-        var contextualQueryAugmenter = ContextualQueryAugmenter
-                .builder()
-                .allowEmptyContext(true)
-                .build();
+    @Override
+    public String chatWithRagProfile(String message, String profile) {
 
-        var retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor
-                .builder()
-                .queryTransformers(rewriteQueryTransformer, translationQueryTransformer)
-                .queryExpander(multiQueryExpander)
-                .documentRetriever(vectorStoreDocumentRetriever)
-                .documentJoiner(new ConcatenationDocumentJoiner())
-                .queryAugmenter(contextualQueryAugmenter)
-                .build();
+        var advisor = ragPipelineRegistry.get(profile);
 
-        return openAiChatClient.prompt()
-                .advisors(retrievalAugmentationAdvisor)
+        return ragStageTimings.time(profile + ".total", () -> openAiChatClient.prompt()
+                .advisors(advisor)
                 .user(message)
                 .call()
-                .content();
+                .content());
     }
 
     /*
@@ -458,19 +462,17 @@ public class ChatServiceImplementation implements ChatService {
     @Override
     public void howToLoadPdfDocumentIntoAVectorDB() {
 
-        //First load the PDF document by either paragraph or by page
-
-        List<Document> pdfDocuments = dataLoaderService.loadDocumentsFromPdfByParagraph(pdfFileResource);
-
-        //List<Document> pdfDocumentsByPage = dataLoaderService.loadDocumentsFromPDFByPage(pdfFileResource);
+        //First load the PDF document by either paragraph or by page, the page stream reads one page at a time
+        //so splitting and embedding start before the whole file has been parsed
 
-        //Then transform the loaded documents
+        Stream<Document> pdfDocuments = dataLoaderService.streamDocumentsFromPDFByPage(pdfFileResource);
 
-        List<Document> transformedDocuments = dataTransformerService.transformDocuments(pdfDocuments);
+        //List<Document> pdfDocumentsByParagraph = dataLoaderService.loadDocumentsFromPdfByParagraph(pdfFileResource);
 
-        //Finally add the transformed documents to the vector store
+        //Then transform the loaded documents and add them to the vector store, the ingestion pipeline splits
+        //and embeds the documents in parallel batches and only chunks that changed since the last run are embedded
 
-        vectorStore.add(transformedDocuments);
+        incrementalIndexingService.reindex(pdfFileResource.getFilename(), pdfDocuments);
     }
 
     /*
@@ -480,17 +482,13 @@ public class ChatServiceImplementation implements ChatService {
     @Override
     public void howToLoadJsonDocumentIntoAVectorDB() {
 
-        //First load the JSON document
-
-        List<Document> jsonDocuments = dataLoaderService.loadDocumentsFromJsonFile(jsonFileResource);
-
-        //Then transform the loaded documents
+        //First load the JSON document, elements of a top level array are streamed one at a time
 
-        List<Document> transformedDocuments = dataTransformerService.transformDocuments(jsonDocuments);
+        Stream<Document> jsonDocuments = dataLoaderService.streamDocumentsFromJsonFile(jsonFileResource);
 
-        //Finally add the transformed documents to the vector store
+        //Then transform the loaded documents and add them to the vector store through the ingestion pipeline
 
-        vectorStore.add(transformedDocuments);
+        incrementalIndexingService.reindex(jsonFileResource.getFilename(), jsonDocuments);
     }
 
     /*
@@ -501,7 +499,7 @@ public class ChatServiceImplementation implements ChatService {
     public String howToConfigureLLmForToolCalling(String message) {
 
         return openAiChatClient.prompt()
-                .tools(new SimpleDateTimeTool())
+                .toolCallbacks(dateTimeToolCallbackProvider.getToolCallbacks())
                 .user(message)
                 .call()
                 .content();
@@ -509,13 +507,14 @@ public class ChatServiceImplementation implements ChatService {
 
     /*
     How to call Weather API tool to get current weather information for a specified city
+    The weather tool results are cached per city and the weather of several cities is fetched in parallel.
      */
 
     @Override
     public String howToCallWeatherApiTool(String message) {
 
         return openAiChatClient.prompt()
-                .tools(weatherApiTool)
+                .toolCallbacks(weatherToolCallbackProvider.getToolCallbacks())
                 .user(message)
                 .call()
                 .content();
@@ -4,6 +4,7 @@ import org.springframework.ai.document.Document;
 import org.springframework.core.io.Resource;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface DataLoaderService {
 
@@ -12,4 +13,8 @@ public interface DataLoaderService {
     List<Document> loadDocumentsFromPDFByPage(Resource resource);
 
     List<Document> loadDocumentsFromPdfByParagraph(Resource resource);
+
+    Stream<Document> streamDocumentsFromJsonFile(Resource resource);
+
+    Stream<Document> streamDocumentsFromPDFByPage(Resource resource);
 }
@@ -1,5 +1,12 @@
 package com.samjay.spring_ai_demo.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.JsonReader;
@@ -9,11 +16,26 @@ import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 public class DataLoaderServiceImplementation implements DataLoaderService {
 
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     @Override
     public List<Document> loadDocumentsFromJsonFile(Resource resource) {
 
@@ -57,4 +79,184 @@ public class DataLoaderServiceImplementation implements DataLoaderService {
 
         return pdfReader.read();
     }
+
+    /*
+    Streaming variant of the JSON reader, a top level array is read one element at a time with the Jackson streaming
+    parser so only the current element is held in memory. The stream must be closed to release the file.
+     */
+
+    @Override
+    public Stream<Document> streamDocumentsFromJsonFile(Resource resource) {
+
+        try {
+
+            JsonParser parser = objectMapper.createParser(resource.getInputStream());
+
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+
+                JsonNode node = parser.readValueAsTree();
+
+                parser.close();
+
+                return Stream.of(new Document(node.toString()));
+            }
+
+            var elements = new Spliterators.AbstractSpliterator<Document>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+
+                @Override
+                public boolean tryAdvance(Consumer<? super Document> action) {
+
+                    try {
+
+                        JsonToken token = parser.nextToken();
+
+                        if (token == null || token == JsonToken.END_ARRAY) {
+                            return false;
+                        }
+
+                        JsonNode node = parser.readValueAsTree();
+
+                        action.accept(new Document(node.toString()));
+
+                        return true;
+
+                    } catch (IOException exception) {
+
+                        throw new UncheckedIOException(exception);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(elements, false).onClose(() -> close(parser));
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not read JSON from " + resource.getDescription(), exception);
+        }
+    }
+
+    /*
+    Streaming variant of the page reader, pages are extracted one by one when the stream asks for the next document.
+    PDFBox parses the file lazily from disk and the resource cache is switched off, so memory does not grow with the
+    number of pages. Resources that are not plain files are copied to a temporary file first.
+     */
+
+    @Override
+    public Stream<Document> streamDocumentsFromPDFByPage(Resource resource) {
+
+        try {
+
+            Path temporaryFile = resource.isFile() ? null : copyToTemporaryFile(resource);
+
+            File file = temporaryFile == null ? resource.getFile() : temporaryFile.toFile();
+
+            PDDocument pdfDocument;
+
+            try {
+
+                pdfDocument = Loader.loadPDF(file);
+
+            } catch (IOException | RuntimeException exception) {
+
+                deleteTemporaryFile(temporaryFile);
+
+                throw exception;
+            }
+
+            pdfDocument.setResourceCache(null);
+
+            var formatter = ExtractedTextFormatter.builder().withNumberOfTopTextLinesToDelete(0).build();
+
+            var textStripper = new PDFTextStripper();
+
+            var pages = new Spliterators.AbstractSpliterator<Document>(pdfDocument.getNumberOfPages(), Spliterator.ORDERED | Spliterator.NONNULL) {
+
+                private int pageNumber = 0;
+
+                @Override
+                public boolean tryAdvance(Consumer<? super Document> action) {
+
+                    try {
+
+                        while (pageNumber < pdfDocument.getNumberOfPages()) {
+
+                            pageNumber++;
+
+                            textStripper.setStartPage(pageNumber);
+
+                            textStripper.setEndPage(pageNumber);
+
+                            String text = formatter.format(textStripper.getText(pdfDocument));
+
+                            if (!text.isBlank()) {
+
+                                action.accept(new Document(text, Map.of("page_number", pageNumber, "file_name", String.valueOf(resource.getFilename()))));
+
+                                return true;
+                            }
+                        }
+
+                        return false;
+
+                    } catch (IOException exception) {
+
+                        throw new UncheckedIOException(exception);
+                    }
+                }
+            };
+
+            return StreamSupport.stream(pages, false).onClose(() -> {
+
+                close(pdfDocument);
+
+                deleteTemporaryFile(temporaryFile);
+            });
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not read PDF from " + resource.getDescription(), exception);
+        }
+    }
+
+    private static Path copyToTemporaryFile(Resource resource) throws IOException {
+
+        Path temporaryFile = Files.createTempFile("document-", ".pdf");
+
+        try (InputStream inputStream = resource.getInputStream()) {
+
+            Files.copy(inputStream, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+
+        } catch (IOException | RuntimeException exception) {
+
+            deleteTemporaryFile(temporaryFile);
+
+            throw exception;
+        }
+
+        return temporaryFile;
+    }
+
+    /*
+    A corrupt or encrypted PDF fails in Loader.loadPDF before the stream exists, so the copy is deleted there as well
+    as when the stream is closed.
+     */
+
+    private static void deleteTemporaryFile(Path temporaryFile) {
+
+        if (temporaryFile != null) {
+            temporaryFile.toFile().delete();
+        }
+    }
+
+    private static void close(AutoCloseable closeable) {
+
+        try {
+
+            closeable.close();
+
+        } catch (Exception exception) {
+
+            throw new IllegalStateException("Could not close document source", exception);
+        }
+    }
 }
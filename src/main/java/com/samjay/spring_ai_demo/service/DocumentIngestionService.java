@@ -0,0 +1,14 @@
+package com.samjay.spring_ai_demo.service;
+
+import com.samjay.spring_ai_demo.entity.IngestionReport;
+import org.springframework.ai.document.Document;
+
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+public interface DocumentIngestionService {
+
+    IngestionReport ingest(String source, Stream<Document> documents);
+
+    IngestionReport ingest(String source, Stream<Document> documents, Predicate<Document> chunkFilter);
+}
@@ -0,0 +1,336 @@
+package com.samjay.spring_ai_demo.service;
+
+import com.samjay.spring_ai_demo.entity.IngestionReport;
+import com.samjay.spring_ai_demo.helper.ContentHash;
+import com.samjay.spring_ai_demo.rag.Bm25Index;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+Staged ingestion pipeline: reader -> splitter -> token budgeted batches -> parallel embedding and vector store writes.
+Stages are connected by bounded queues, so a slow stage blocks the one before it instead of letting the whole corpus
+pile up in memory. Embedding and the pgvector upsert both happen inside vectorStore.add, which is why the writer stage
+is the one that runs with several threads. Each written batch is also added to the BM25 index.
+Every chunk gets an id derived from its source and content hash, so writing the same chunk twice updates the row
+instead of inserting a duplicate, and the chunk filter can skip chunks that are already indexed.
+ */
+
+@Slf4j
+@Service
+public class DocumentIngestionServiceImplementation implements DocumentIngestionService {
+
+    private static final List<Document> END_OF_STREAM = List.of();
+
+    private final VectorStore vectorStore;
+
+    private final DataTransformerService dataTransformerService;
+
+    private final Bm25Index bm25Index;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    @Value("${ingestion.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${ingestion.embedding-concurrency:4}")
+    private int embeddingConcurrency;
+
+    @Value("${ingestion.batch-token-budget:20000}")
+    private int batchTokenBudget;
+
+    public DocumentIngestionServiceImplementation(VectorStore vectorStore, DataTransformerService dataTransformerService,
+                                                  Bm25Index bm25Index) {
+
+        this.vectorStore = vectorStore;
+
+        this.dataTransformerService = dataTransformerService;
+
+        this.bm25Index = bm25Index;
+    }
+
+    @Override
+    public IngestionReport ingest(String source, Stream<Document> documents) {
+
+        return ingest(source, documents, chunk -> true);
+    }
+
+    @Override
+    public IngestionReport ingest(String source, Stream<Document> documents, Predicate<Document> chunkFilter) {
+
+        BlockingQueue<List<Document>> readQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        BlockingQueue<List<Document>> batchQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        StageStatistics reader = new StageStatistics("read");
+
+        StageStatistics splitter = new StageStatistics("split");
+
+        StageStatistics writer = new StageStatistics("embed-and-store");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2 + embeddingConcurrency, runnable -> {
+
+            Thread thread = new Thread(runnable, "ingestion-" + threadCounter.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        long start = System.nanoTime();
+
+        List<CompletableFuture<Void>> stages = new ArrayList<>();
+
+        stages.add(CompletableFuture.runAsync(() -> read(documents, readQueue, reader), executor));
+
+        stages.add(CompletableFuture.runAsync(() -> split(source, readQueue, batchQueue, chunkFilter, splitter), executor));
+
+        for (int i = 0; i < embeddingConcurrency; i++) {
+            stages.add(CompletableFuture.runAsync(() -> write(batchQueue, writer), executor));
+        }
+
+        try {
+
+            stages.forEach(stage -> stage.whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    executor.shutdownNow();
+                }
+            }));
+
+            CompletableFuture.allOf(stages.toArray(CompletableFuture[]::new)).join();
+
+        } catch (CompletionException exception) {
+
+            throw new IllegalStateException("Ingestion of " + source + " failed", exception.getCause());
+
+        } finally {
+
+            executor.shutdownNow();
+
+            documents.close();
+        }
+
+        var report = new IngestionReport(source, (System.nanoTime() - start) / 1_000_000,
+                List.of(reader.report(), splitter.report(), writer.report()));
+
+        report.stages().forEach(stage -> log.info("Ingestion of {} stage {}: {} documents, {} tokens, {} docs/s, {} tokens/s",
+                source, stage.name(), stage.documents(), stage.tokens(),
+                Math.round(stage.documentsPerSecond()), Math.round(stage.tokensPerSecond())));
+
+        log.info("Ingestion of {} finished in {} ms", source, report.elapsedMillis());
+
+        return report;
+    }
+
+    private void read(Stream<Document> documents, BlockingQueue<List<Document>> readQueue, StageStatistics statistics) {
+
+        statistics.start();
+
+        try {
+
+            documents.forEach(document -> {
+
+                statistics.record(1, 0);
+
+                put(readQueue, List.of(document));
+            });
+
+        } finally {
+
+            put(readQueue, END_OF_STREAM);
+
+            statistics.finish();
+        }
+    }
+
+    private void split(String source, BlockingQueue<List<Document>> readQueue, BlockingQueue<List<Document>> batchQueue,
+                       Predicate<Document> chunkFilter, StageStatistics statistics) {
+
+        statistics.start();
+
+        List<Document> batch = new ArrayList<>();
+
+        int batchTokens = 0;
+
+        try {
+
+            List<Document> next;
+
+            while ((next = take(readQueue)) != END_OF_STREAM) {
+
+                for (Document split : dataTransformerService.transformDocuments(next)) {
+
+                    Document chunk = withContentHash(source, split);
+
+                    if (!chunkFilter.test(chunk)) {
+                        continue;
+                    }
+
+                    int tokens = tokenCountEstimator.estimate(chunk.getText());
+
+                    statistics.record(1, tokens);
+
+                    if (!batch.isEmpty() && batchTokens + tokens > batchTokenBudget) {
+
+                        put(batchQueue, batch);
+
+                        batch = new ArrayList<>();
+
+                        batchTokens = 0;
+                    }
+
+                    batch.add(chunk);
+
+                    batchTokens += tokens;
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                put(batchQueue, batch);
+            }
+
+        } finally {
+
+            for (int i = 0; i < embeddingConcurrency; i++) {
+                put(batchQueue, END_OF_STREAM);
+            }
+
+            statistics.finish();
+        }
+    }
+
+    private void write(BlockingQueue<List<Document>> batchQueue, StageStatistics statistics) {
+
+        statistics.start();
+
+        try {
+
+            List<Document> batch;
+
+            while ((batch = take(batchQueue)) != END_OF_STREAM) {
+
+                vectorStore.add(batch);
+
+                bm25Index.add(batch);
+
+                statistics.record(batch.size(), batch.stream().mapToInt(chunk -> tokenCountEstimator.estimate(chunk.getText())).sum());
+            }
+
+        } finally {
+
+            statistics.finish();
+        }
+    }
+
+    private static Document withContentHash(String source, Document chunk) {
+
+        String hash = ContentHash.of(source, chunk.getText());
+
+        Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+
+        metadata.put(ContentHash.SOURCE, source);
+
+        metadata.put(ContentHash.CONTENT_HASH, hash);
+
+        return Document.builder()
+                .id(ContentHash.idOf(hash))
+                .text(chunk.getText())
+                .metadata(metadata)
+                .build();
+    }
+
+    private static void put(BlockingQueue<List<Document>> queue, List<Document> item) {
+
+        try {
+
+            queue.put(item);
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Ingestion was interrupted", exception);
+        }
+    }
+
+    private static List<Document> take(BlockingQueue<List<Document>> queue) {
+
+        try {
+
+            return queue.take();
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Ingestion was interrupted", exception);
+        }
+    }
+
+    /*
+    A stage can run on several threads, the elapsed time covers the first start to the last finish.
+     */
+
+    private static final class StageStatistics {
+
+        private final String name;
+
+        private final AtomicLong documents = new AtomicLong();
+
+        private final AtomicLong tokens = new AtomicLong();
+
+        private final AtomicLong startedAt = new AtomicLong(Long.MAX_VALUE);
+
+        private final AtomicLong finishedAt = new AtomicLong();
+
+        private StageStatistics(String name) {
+
+            this.name = name;
+        }
+
+        void start() {
+
+            startedAt.accumulateAndGet(System.nanoTime(), Math::min);
+        }
+
+        void finish() {
+
+            finishedAt.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        void record(long documentCount, long tokenCount) {
+
+            documents.addAndGet(documentCount);
+
+            tokens.addAndGet(tokenCount);
+        }
+
+        IngestionReport.StageReport report() {
+
+            long elapsed = Math.max(0, finishedAt.get() - startedAt.get()) / 1_000_000;
+
+            return new IngestionReport.StageReport(name, documents.get(), tokens.get(), elapsed);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.samjay.spring_ai_demo.service;
+
+import com.samjay.spring_ai_demo.entity.IndexingReport;
+import org.springframework.ai.document.Document;
+
+import java.util.stream.Stream;
+
+public interface IncrementalIndexingService {
+
+    IndexingReport reindex(String source, Stream<Document> documents);
+}
@@ -0,0 +1,93 @@
+package com.samjay.spring_ai_demo.service;
+
+import com.samjay.spring_ai_demo.entity.IndexingReport;
+import com.samjay.spring_ai_demo.entity.IngestionReport;
+import com.samjay.spring_ai_demo.rag.Bm25Index;
+import com.samjay.spring_ai_demo.repository.IndexedChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*
+Incremental re-indexing of a source.
+Chunk ids are derived from the chunk content, so a chunk whose id is already stored for the source is unchanged and
+is skipped before it reaches the embedding model. Stored ids that were not produced by this run belong to text that
+has been removed from the source and are deleted from the vector store and the BM25 index once the new chunks are
+written.
+ */
+
+@Slf4j
+@Service
+public class IncrementalIndexingServiceImplementation implements IncrementalIndexingService {
+
+    private final DocumentIngestionService documentIngestionService;
+
+    private final IndexedChunkRepository indexedChunkRepository;
+
+    private final VectorStore vectorStore;
+
+    private final Bm25Index bm25Index;
+
+    public IncrementalIndexingServiceImplementation(DocumentIngestionService documentIngestionService,
+                                                    IndexedChunkRepository indexedChunkRepository,
+                                                    VectorStore vectorStore, Bm25Index bm25Index) {
+
+        this.documentIngestionService = documentIngestionService;
+
+        this.indexedChunkRepository = indexedChunkRepository;
+
+        this.vectorStore = vectorStore;
+
+        this.bm25Index = bm25Index;
+    }
+
+    @Override
+    public IndexingReport reindex(String source, Stream<Document> documents) {
+
+        Set<String> existingIds = indexedChunkRepository.findIdsBySource(source);
+
+        Set<String> seenIds = ConcurrentHashMap.newKeySet();
+
+        AtomicLong unchanged = new AtomicLong();
+
+        IngestionReport ingestion = documentIngestionService.ingest(source, documents, chunk -> {
+
+            if (!seenIds.add(chunk.getId())) {
+                return false;
+            }
+
+            if (existingIds.contains(chunk.getId())) {
+
+                unchanged.incrementAndGet();
+
+                return false;
+            }
+
+            return true;
+        });
+
+        List<String> staleIds = new ArrayList<>(existingIds);
+
+        staleIds.removeAll(seenIds);
+
+        if (!staleIds.isEmpty()) {
+            vectorStore.delete(staleIds);
+
+            bm25Index.delete(staleIds);
+        }
+
+        var report = new IndexingReport(source, seenIds.size() - unchanged.get(), unchanged.get(), staleIds.size(), ingestion);
+
+        log.info("Re-indexed {}: {} chunks added, {} unchanged, {} deleted", source, report.added(), report.unchanged(), report.deleted());
+
+        return report;
+    }
+}
@@ -0,0 +1,10 @@
+package com.samjay.spring_ai_demo.service;
+
+import com.samjay.spring_ai_demo.entity.JobExtractionReport;
+
+import java.util.List;
+
+public interface JobExtractionService {
+
+    JobExtractionReport extractJobs(List<String> descriptions);
+}
@@ -0,0 +1,243 @@
+package com.samjay.spring_ai_demo.service;
+
+import com.samjay.spring_ai_demo.entity.Job;
+import com.samjay.spring_ai_demo.entity.JobExtractionReport;
+import com.samjay.spring_ai_demo.entity.JobExtractionResult;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+Bulk structured extraction of Job objects.
+Descriptions are packed into batches that fit a token budget, every batch is a single model call that returns one
+indexed Job per description, so the instructions and output schema are paid once per batch instead of once per item.
+Items that are missing from a batch answer or cannot be parsed are retried one at a time, the number of model calls
+running at the same time is bounded by a semaphore.
+ */
+
+@Slf4j
+@Service
+public class JobExtractionServiceImplementation implements JobExtractionService {
+
+    private static final String BATCH_INSTRUCTIONS = """
+            Extract a job from every numbered job description below.
+            Return exactly one entry per description and set index to the number of the description it was extracted from.
+            """;
+
+    private final ChatClient chatClient;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    @Value("${jobs.extraction.batch-token-budget:3000}")
+    private int batchTokenBudget;
+
+    @Value("${jobs.extraction.max-items-per-batch:25}")
+    private int maxItemsPerBatch;
+
+    @Value("${jobs.extraction.concurrency:4}")
+    private int concurrency;
+
+    /*
+    A plain client on the admission controlled chat model is used, bulk extraction must not go through the chat memory
+    or response cache but must respect the backend limits.
+     */
+
+    public JobExtractionServiceImplementation(@Qualifier("openAiAdmissionControlledChatModel") AdmissionControlledChatModel openAiChatModel) {
+
+        this.chatClient = ChatClient.builder(openAiChatModel).build();
+    }
+
+    @Override
+    public JobExtractionReport extractJobs(List<String> descriptions) {
+
+        long start = System.nanoTime();
+
+        List<List<Integer>> batches = batch(descriptions);
+
+        Map<Integer, JobExtractionResult> results = new ConcurrentHashMap<>();
+
+        AtomicInteger individualRetries = new AtomicInteger();
+
+        Semaphore permits = new Semaphore(concurrency);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (List<Integer> batch : batches) {
+
+                futures.add(executor.submit(() -> {
+
+                    Map<Integer, Job> extracted = withPermit(permits, () -> extractBatch(descriptions, batch));
+
+                    for (Integer index : batch) {
+
+                        Job job = extracted.get(index);
+
+                        if (job != null) {
+
+                            results.put(index, new JobExtractionResult(index, job, false, null));
+
+                            continue;
+                        }
+
+                        individualRetries.incrementAndGet();
+
+                        results.put(index, withPermit(permits, () -> extractSingle(index, descriptions.get(index))));
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Bulk job extraction was interrupted", exception);
+
+        } catch (Exception exception) {
+
+            throw new IllegalStateException("Bulk job extraction failed", exception);
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<JobExtractionResult> orderedResults = results.values().stream()
+                .sorted(Comparator.comparingInt(JobExtractionResult::index))
+                .toList();
+
+        int failures = (int) orderedResults.stream().filter(result -> result.job() == null).count();
+
+        double itemsPerSecond = elapsedMillis == 0 ? descriptions.size() : descriptions.size() * 1000.0 / elapsedMillis;
+
+        log.info("Extracted {} jobs in {} batches and {} individual retries, {} failed, {} items/s",
+                descriptions.size(), batches.size(), individualRetries.get(), failures, Math.round(itemsPerSecond));
+
+        return new JobExtractionReport(orderedResults, batches.size(), individualRetries.get(), failures, elapsedMillis, itemsPerSecond);
+    }
+
+    private List<List<Integer>> batch(List<String> descriptions) {
+
+        List<List<Integer>> batches = new ArrayList<>();
+
+        List<Integer> batch = new ArrayList<>();
+
+        int batchTokens = 0;
+
+        for (int index = 0; index < descriptions.size(); index++) {
+
+            int tokens = tokenCountEstimator.estimate(descriptions.get(index));
+
+            if (!batch.isEmpty() && (batchTokens + tokens > batchTokenBudget || batch.size() >= maxItemsPerBatch)) {
+
+                batches.add(batch);
+
+                batch = new ArrayList<>();
+
+                batchTokens = 0;
+            }
+
+            batch.add(index);
+
+            batchTokens += tokens;
+        }
+
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    private Map<Integer, Job> extractBatch(List<String> descriptions, List<Integer> batch) {
+
+        StringBuilder numberedDescriptions = new StringBuilder(BATCH_INSTRUCTIONS);
+
+        for (Integer index : batch) {
+            numberedDescriptions.append("\n[").append(index).append("] ").append(descriptions.get(index)).append('\n');
+        }
+
+        try {
+
+            List<IndexedJob> indexedJobs = chatClient.prompt()
+                    .user(numberedDescriptions.toString())
+                    .call()
+                    .entity(new ParameterizedTypeReference<List<IndexedJob>>() {
+                    });
+
+            Map<Integer, Job> extracted = new ConcurrentHashMap<>();
+
+            if (indexedJobs != null) {
+
+                indexedJobs.stream()
+                        .filter(indexedJob -> indexedJob != null && batch.contains(indexedJob.index()))
+                        .forEach(indexedJob -> extracted.putIfAbsent(indexedJob.index(),
+                                new Job(indexedJob.title(), indexedJob.description(), indexedJob.createdDate())));
+            }
+
+            return extracted;
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Could not parse the answer for a batch of {} job descriptions, retrying them one by one: {}", batch.size(), exception.getMessage());
+
+            return Map.of();
+        }
+    }
+
+    private JobExtractionResult extractSingle(int index, String description) {
+
+        try {
+
+            Job job = chatClient.prompt(description)
+                    .call()
+                    .entity(Job.class);
+
+            return new JobExtractionResult(index, job, true, job == null ? "Empty answer" : null);
+
+        } catch (RuntimeException exception) {
+
+            return new JobExtractionResult(index, null, true, exception.getMessage());
+        }
+    }
+
+    private static <T> T withPermit(Semaphore permits, Supplier<T> work) {
+
+        permits.acquireUninterruptibly();
+
+        try {
+
+            return work.get();
+
+        } finally {
+
+            permits.release();
+        }
+    }
+
+    record IndexedJob(int index, String title, String description, String createdDate) {
+    }
+}
@@ -0,0 +1,201 @@
+package com.samjay.spring_ai_demo.toolcalling;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+Wraps a tool callback, records the latency of every invocation per tool and, for idempotent tools, caches the result
+by arguments for a time to live.
+Arguments are compared after parsing, so the same arguments written with different spacing or key order share an
+entry. Concurrent invocations with the same arguments wait for the first one instead of calling the tool again.
+Failed invocations are never cached. Cached results do not depend on the tool context, tools that read the context
+must be registered without a time to live.
+ */
+
+public class CachingToolCallback implements ToolCallback {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final ToolCallback delegate;
+
+    private final long timeToLiveMillis;
+
+    private final int maxEntries;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CachedResult> results = new ConcurrentHashMap<>();
+
+    public CachingToolCallback(ToolCallback delegate, Duration timeToLive, int maxEntries, MeterRegistry meterRegistry) {
+
+        this.delegate = delegate;
+
+        this.timeToLiveMillis = timeToLive.toMillis();
+
+        this.maxEntries = maxEntries;
+
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+
+        long start = System.nanoTime();
+
+        if (!isCacheable()) {
+            return timed(start, "uncached", () -> delegate.call(toolInput, toolContext));
+        }
+
+        String key = key(toolInput);
+
+        long now = System.currentTimeMillis();
+
+        CachedResult created = new CachedResult(new CompletableFuture<>(), now + timeToLiveMillis);
+
+        CachedResult cached = results.compute(key, (ignored, existing) ->
+                existing != null && existing.expiresAt() > now ? existing : created);
+
+        if (cached != created) {
+            return timed(start, "hit", () -> join(cached.result()));
+        }
+
+        evictIfFull(now);
+
+        return timed(start, "miss", () -> {
+
+            try {
+
+                String result = delegate.call(toolInput, toolContext);
+
+                created.result().complete(result);
+
+                return result;
+
+            } catch (RuntimeException | Error exception) {
+
+                results.remove(key, created);
+
+                created.result().completeExceptionally(exception);
+
+                throw exception;
+            }
+        });
+    }
+
+    public boolean isCacheable() {
+
+        return timeToLiveMillis > 0;
+    }
+
+    private String timed(long start, String result, Supplier<String> invocation) {
+
+        String outcome = "error";
+
+        try {
+
+            String toolResult = invocation.get();
+
+            outcome = result;
+
+            return toolResult;
+
+        } finally {
+
+            Timer.builder("tool.calls")
+                    .tag("tool", getToolDefinition().name())
+                    .tag("result", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /*
+    Expired entries are dropped first, when the cache is still full the entries closest to expiry go.
+     */
+
+    private void evictIfFull(long now) {
+
+        if (results.size() <= maxEntries) {
+            return;
+        }
+
+        results.entrySet().removeIf(entry -> entry.getValue().expiresAt() <= now);
+
+        results.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue((left, right) -> Long.compare(left.expiresAt(), right.expiresAt())))
+                .limit(Math.max(0, results.size() - maxEntries))
+                .toList()
+                .forEach(entry -> results.remove(entry.getKey(), entry.getValue()));
+    }
+
+    private String key(String toolInput) {
+
+        if (!StringUtils.hasText(toolInput)) {
+            return "{}";
+        }
+
+        try {
+
+            return OBJECT_MAPPER.writeValueAsString(OBJECT_MAPPER.readValue(toolInput, new TypeReference<TreeMap<String, Object>>() {
+            }));
+
+        } catch (JsonProcessingException exception) {
+
+            return toolInput;
+        }
+    }
+
+    private static String join(CompletableFuture<String> result) {
+
+        try {
+
+            return result.join();
+
+        } catch (CompletionException exception) {
+
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+
+            throw exception;
+        }
+    }
+
+    private record CachedResult(CompletableFuture<String> result, long expiresAt) {
+    }
+}
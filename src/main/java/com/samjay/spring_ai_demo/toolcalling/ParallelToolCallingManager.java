@@ -0,0 +1,107 @@
+package com.samjay.spring_ai_demo.toolcalling;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+Tool calling manager that runs the idempotent tool calls of one model turn at the same time.
+When the model asks for several cacheable tool calls in one turn (the weather in three cities), they are started
+together on virtual threads and fill the tool result cache, then the default manager builds the tool responses and
+the conversation history as usual and finds every result in the cache. A turn takes as long as its slowest call
+instead of the sum of all calls.
+Tools that are not cacheable may have side effects, they keep running one after another in the order the model asked for.
+ */
+
+@Slf4j
+public class ParallelToolCallingManager implements ToolCallingManager, DisposableBean {
+
+    private static final ToolContext EMPTY_TOOL_CONTEXT = new ToolContext(Map.of());
+
+    private final ToolCallingManager delegate;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ParallelToolCallingManager(ToolCallingManager delegate) {
+
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+
+        if (prompt.getOptions() instanceof ToolCallingChatOptions toolCallingChatOptions) {
+            prefetch(toolCallingChatOptions, chatResponse);
+        }
+
+        return delegate.executeToolCalls(prompt, chatResponse);
+    }
+
+    @Override
+    public void destroy() {
+
+        executor.shutdownNow();
+    }
+
+    /*
+    Failures are left to the default manager, it calls the tool again and reports the error to the model.
+     */
+
+    private void prefetch(ToolCallingChatOptions toolCallingChatOptions, ChatResponse chatResponse) {
+
+        Map<String, ToolCallback> toolCallbacks = toolCallingChatOptions.getToolCallbacks().stream()
+                .collect(Collectors.toMap(toolCallback -> toolCallback.getToolDefinition().name(), Function.identity(),
+                        (first, second) -> first));
+
+        List<AssistantMessage.ToolCall> cacheableToolCalls = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .map(AssistantMessage::getToolCalls)
+                .orElse(List.of())
+                .stream()
+                .filter(toolCall -> toolCallbacks.get(toolCall.name()) instanceof CachingToolCallback caching && caching.isCacheable())
+                .toList();
+
+        if (cacheableToolCalls.size() < 2) {
+            return;
+        }
+
+        List<CompletableFuture<Void>> prefetches = cacheableToolCalls.stream()
+                .map(toolCall -> CompletableFuture.runAsync(() ->
+                        toolCallbacks.get(toolCall.name()).call(toolCall.arguments(), EMPTY_TOOL_CONTEXT), executor))
+                .toList();
+
+        try {
+
+            CompletableFuture.allOf(prefetches.toArray(CompletableFuture[]::new)).join();
+
+        } catch (RuntimeException exception) {
+
+            log.debug("A prefetched tool call failed, it is retried in order: {}", exception.getMessage());
+        }
+    }
+}
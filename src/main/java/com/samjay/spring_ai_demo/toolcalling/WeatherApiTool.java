@@ -1,14 +1,19 @@
 package com.samjay.spring_ai_demo.toolcalling;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samjay.spring_ai_demo.entity.WeatherReport;
 import lombok.RequiredArgsConstructor;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 
-import java.util.Map;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 
 @Service
 @RequiredArgsConstructor
@@ -19,22 +24,151 @@ public class WeatherApiTool {
 
     private final RestClient restClient;
 
+    private final ObjectMapper objectMapper;
+
+    /*
+    The response body is read with the Jackson streaming parser and projected straight into a WeatherReport,
+    no map of the full response is built and only the trimmed report is serialized back into the prompt.
+     */
+
     @Tool(description = "Get the current weather information for a specified city")
-    public String getWeatherForCity(@ToolParam(description = "This is the city we want to get current weather information.") String city) {
+    public WeatherReport getWeatherForCity(@ToolParam(description = "This is the city we want to get current weather information.") String city) {
 
-        var response = restClient.get()
+        return restClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/current.json")
                         .queryParam("q", city)
                         .queryParam("key", weatherApiKey)
                         .build()
                 )
-                .retrieve()
-                .body(new ParameterizedTypeReference<Map<String, Object>>() {
-                });
+                .exchange((request, response) -> read(response.getBody(), response.getStatusCode().isError()));
+    }
+
+    private WeatherReport read(InputStream body, boolean error) {
+
+        var report = new WeatherReportFields();
+
+        try (JsonParser parser = objectMapper.createParser(body)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Unexpected weather API response");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+                String section = parser.currentName();
+
+                parser.nextToken();
+
+                switch (section) {
+                    case "location" -> readObject(parser, field -> readLocationField(parser, field, report));
+                    case "current" -> readObject(parser, field -> readCurrentField(parser, field, report));
+                    case "error" -> readObject(parser, field -> {
+                        if (field.equals("message")) {
+                            report.errorMessage = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    });
+                    default -> parser.skipChildren();
+                }
+            }
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not read the weather API response", exception);
+        }
+
+        if (error || report.errorMessage != null) {
+            throw new IllegalStateException("Weather API error: " + (report.errorMessage == null ? "unknown error" : report.errorMessage));
+        }
+
+        return new WeatherReport(report.city, report.country, report.localTime, report.tempC, report.feelsLikeC,
+                report.condition, report.humidity, report.windKph, report.windDir, report.precipMm);
+    }
+
+    private void readLocationField(JsonParser parser, String field, WeatherReportFields report) throws IOException {
+
+        switch (field) {
+            case "name" -> report.city = parser.getValueAsString();
+            case "country" -> report.country = parser.getValueAsString();
+            case "localtime" -> report.localTime = parser.getValueAsString();
+            default -> parser.skipChildren();
+        }
+    }
+
+    private void readCurrentField(JsonParser parser, String field, WeatherReportFields report) throws IOException {
+
+        switch (field) {
+            case "temp_c" -> report.tempC = parser.getValueAsDouble();
+            case "feelslike_c" -> report.feelsLikeC = parser.getValueAsDouble();
+            case "humidity" -> report.humidity = parser.getValueAsInt();
+            case "wind_kph" -> report.windKph = parser.getValueAsDouble();
+            case "wind_dir" -> report.windDir = parser.getValueAsString();
+            case "precip_mm" -> report.precipMm = parser.getValueAsDouble();
+            case "condition" -> readObject(parser, conditionField -> {
+                if (conditionField.equals("text")) {
+                    report.condition = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            });
+            default -> parser.skipChildren();
+        }
+    }
+
+    /*
+    Calls the reader for every field of the object the parser is on, the parser is positioned on the field value.
+    Anything that is not an object is skipped.
+     */
+
+    private static void readObject(JsonParser parser, FieldReader fieldReader) throws IOException {
+
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+
+            parser.skipChildren();
+
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+
+            String field = parser.currentName();
+
+            parser.nextToken();
+
+            fieldReader.read(field);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldReader {
+
+        void read(String field) throws IOException;
+    }
+
+    private static final class WeatherReportFields {
+
+        private String city;
+
+        private String country;
+
+        private String localTime;
+
+        private Double tempC;
+
+        private Double feelsLikeC;
+
+        private String condition;
+
+        private Integer humidity;
+
+        private Double windKph;
+
+        private String windDir;
 
-        assert response != null;
+        private Double precipMm;
 
-        return response.toString();
+        private String errorMessage;
     }
 }
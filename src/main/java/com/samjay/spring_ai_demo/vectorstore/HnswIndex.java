@@ -0,0 +1,301 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/*
+Hierarchical navigable small world graph over the rows of a vector matrix.
+Every row is a node, a node is placed on a random number of layers (exponentially fewer nodes on every higher layer)
+and linked to its closest nodes on each of them. A search descends greedily through the sparse upper layers and
+then runs a best first search of width ef on the bottom layer, so it only compares the query with a small part of
+the rows instead of all of them.
+Deleted rows stay in the graph as routing nodes: a search walks through them to reach their neighbors but never
+returns them, so the result keeps ef live nodes however many tombstones accumulated from replaced documents.
+The graph is not thread safe, the vector store guards it with its read write lock.
+ */
+
+class HnswIndex {
+
+    private final VectorMatrix matrix;
+
+    private final int maxNeighbors;
+
+    private final int maxBottomNeighbors;
+
+    private final int efConstruction;
+
+    private final double levelMultiplier;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final List<int[][]> links = new ArrayList<>();
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    HnswIndex(VectorMatrix matrix, int maxNeighbors, int efConstruction) {
+
+        this.matrix = matrix;
+
+        this.maxNeighbors = maxNeighbors;
+
+        this.maxBottomNeighbors = maxNeighbors * 2;
+
+        this.efConstruction = efConstruction;
+
+        this.levelMultiplier = 1 / Math.log(maxNeighbors);
+    }
+
+    /*
+    Nodes must be inserted in row order, rows that are not in the graph (deleted before it was built) are added
+    without links and are never reached.
+     */
+
+    void insert(int node, boolean linked) {
+
+        while (links.size() < node) {
+            links.add(new int[][]{new int[1]});
+        }
+
+        int level = linked ? (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier) : 0;
+
+        int[][] nodeLinks = new int[level + 1][];
+
+        for (int layer = 0; layer <= level; layer++) {
+            nodeLinks[layer] = new int[(layer == 0 ? maxBottomNeighbors : maxNeighbors) + 1];
+        }
+
+        links.add(nodeLinks);
+
+        if (!linked) {
+            return;
+        }
+
+        if (entryPoint == -1) {
+
+            entryPoint = node;
+
+            maxLevel = level;
+
+            return;
+        }
+
+        float[] vector = new float[matrix.dimensions()];
+
+        matrix.read(node, vector);
+
+        float[] scratch = new float[matrix.dimensions()];
+
+        Candidate closest = new Candidate(entryPoint, matrix.similarity(entryPoint, vector, scratch));
+
+        for (int layer = maxLevel; layer > level; layer--) {
+            closest = greedy(vector, closest, layer, scratch);
+        }
+
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+
+            List<Candidate> candidates = searchLayer(vector, closest, efConstruction, layer, scratch, candidate -> true);
+
+            int limit = layer == 0 ? maxBottomNeighbors : maxNeighbors;
+
+            for (Candidate neighbor : candidates.subList(0, Math.min(maxNeighbors, candidates.size()))) {
+
+                link(node, neighbor.node(), layer, limit, scratch);
+
+                link(neighbor.node(), node, layer, limit, scratch);
+            }
+
+            closest = candidates.getFirst();
+        }
+
+        if (level > maxLevel) {
+
+            entryPoint = node;
+
+            maxLevel = level;
+        }
+    }
+
+    /*
+    Returns up to ef nodes closest to the normalized query that pass the live test, best first.
+     */
+
+    List<Candidate> search(float[] query, int ef, IntPredicate live) {
+
+        if (entryPoint == -1) {
+            return List.of();
+        }
+
+        float[] scratch = new float[matrix.dimensions()];
+
+        Candidate closest = new Candidate(entryPoint, matrix.similarity(entryPoint, query, scratch));
+
+        for (int layer = maxLevel; layer > 0; layer--) {
+            closest = greedy(query, closest, layer, scratch);
+        }
+
+        return searchLayer(query, closest, ef, 0, scratch, live);
+    }
+
+    private Candidate greedy(float[] query, Candidate start, int layer, float[] scratch) {
+
+        Candidate closest = start;
+
+        boolean improved = true;
+
+        while (improved) {
+
+            improved = false;
+
+            int[] neighbors = links.get(closest.node())[layer];
+
+            for (int i = 1; i <= neighbors[0]; i++) {
+
+                float similarity = matrix.similarity(neighbors[i], query, scratch);
+
+                if (similarity > closest.similarity()) {
+
+                    closest = new Candidate(neighbors[i], similarity);
+
+                    improved = true;
+                }
+            }
+        }
+
+        return closest;
+    }
+
+    /*
+    Every node that gets close enough is expanded, only the ones that pass the live test are kept in the result.
+     */
+
+    private List<Candidate> searchLayer(float[] query, Candidate start, int ef, int layer, float[] scratch, IntPredicate live) {
+
+        BitSet visited = new BitSet(links.size());
+
+        visited.set(start.node());
+
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity).reversed());
+
+        PriorityQueue<Candidate> found = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+
+        toVisit.add(start);
+
+        if (live.test(start.node())) {
+            found.add(start);
+        }
+
+        while (!toVisit.isEmpty()) {
+
+            Candidate current = toVisit.poll();
+
+            if (found.size() >= ef && current.similarity() < found.peek().similarity()) {
+                break;
+            }
+
+            int[][] currentLinks = links.get(current.node());
+
+            if (currentLinks.length <= layer) {
+                continue;
+            }
+
+            int[] neighbors = currentLinks[layer];
+
+            for (int i = 1; i <= neighbors[0]; i++) {
+
+                int neighbor = neighbors[i];
+
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+
+                visited.set(neighbor);
+
+                float similarity = matrix.similarity(neighbor, query, scratch);
+
+                if (found.size() < ef || similarity > found.peek().similarity()) {
+
+                    Candidate candidate = new Candidate(neighbor, similarity);
+
+                    toVisit.add(candidate);
+
+                    if (!live.test(neighbor)) {
+                        continue;
+                    }
+
+                    found.add(candidate);
+
+                    if (found.size() > ef) {
+                        found.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(found);
+
+        result.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+
+        return result;
+    }
+
+    /*
+    Adds target to the neighbors of node on the layer, a full list keeps only its closest neighbors.
+     */
+
+    private void link(int node, int target, int layer, int limit, float[] scratch) {
+
+        int[] neighbors = links.get(node)[layer];
+
+        int count = neighbors[0];
+
+        for (int i = 1; i <= count; i++) {
+
+            if (neighbors[i] == target) {
+                return;
+            }
+        }
+
+        if (count < limit) {
+
+            neighbors[count + 1] = target;
+
+            neighbors[0] = count + 1;
+
+            return;
+        }
+
+        float[] nodeVector = new float[matrix.dimensions()];
+
+        matrix.read(node, nodeVector);
+
+        int farthest = -1;
+
+        float farthestSimilarity = matrix.similarity(target, nodeVector, scratch);
+
+        for (int i = 1; i <= count; i++) {
+
+            float similarity = matrix.similarity(neighbors[i], nodeVector, scratch);
+
+            if (similarity < farthestSimilarity) {
+
+                farthest = i;
+
+                farthestSimilarity = similarity;
+            }
+        }
+
+        if (farthest != -1) {
+            neighbors[farthest] = target;
+        }
+    }
+
+    record Candidate(int node, float similarity) {
+    }
+}
@@ -0,0 +1,536 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samjay.spring_ai_demo.helper.ContentHash;
+import com.samjay.spring_ai_demo.repository.IndexedChunkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/*
+In-process vector store, an alternative to pgvector for corpora that fit on one machine.
+Vectors live off heap in a memory mapped matrix, ids, texts and metadata on the heap. Small stores are searched by
+brute force over the matrix, once the store holds hnswThreshold documents an HNSW graph is built and kept up to date.
+Searches with a filter expression always scan the matching rows, so a selective filter never loses results.
+Deleted or replaced documents are marked and skipped, the HNSW search walks through them without returning them,
+and they are dropped from the matrix when the store is loaded.
+The matrix is flushed and the documents are written to a snapshot file periodically and on shutdown, the HNSW graph
+is rebuilt from the matrix when the store is loaded.
+It also answers the indexed chunk lookups of the incremental indexer, which pgvector answers with SQL.
+ */
+
+@Slf4j
+public class LocalVectorStore implements VectorStore, IndexedChunkRepository, DisposableBean {
+
+    private static final String MATRIX_FILE = "vectors.bin";
+
+    private static final String SNAPSHOT_FILE = "documents.json";
+
+    private final EmbeddingModel embeddingModel;
+
+    private final Path directory;
+
+    private final int hnswThreshold;
+
+    private final int hnswMaxNeighbors;
+
+    private final int hnswEfConstruction;
+
+    private final int hnswEfSearch;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final SimpleVectorStoreFilterExpressionConverter filterExpressionConverter = new SimpleVectorStoreFilterExpressionConverter();
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<StoredDocument> documents = new ArrayList<>();
+
+    private final Map<String, Integer> rowsById = new HashMap<>();
+
+    private final BitSet deletedRows = new BitSet();
+
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+
+        Thread thread = new Thread(runnable, "local-vector-store-snapshot");
+
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private VectorMatrix matrix;
+
+    private HnswIndex hnswIndex;
+
+    private volatile boolean dirty;
+
+    public LocalVectorStore(EmbeddingModel embeddingModel, Path directory, int hnswThreshold, int hnswMaxNeighbors,
+                            int hnswEfConstruction, int hnswEfSearch, Duration snapshotInterval) {
+
+        this.embeddingModel = embeddingModel;
+
+        this.directory = directory;
+
+        this.hnswThreshold = hnswThreshold;
+
+        this.hnswMaxNeighbors = hnswMaxNeighbors;
+
+        this.hnswEfConstruction = hnswEfConstruction;
+
+        this.hnswEfSearch = hnswEfSearch;
+
+        load();
+
+        snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(List<Document> documentsToAdd) {
+
+        if (documentsToAdd.isEmpty()) {
+            return;
+        }
+
+        List<float[]> embeddings = embeddingModel.embed(documentsToAdd.stream().map(Document::getText).toList());
+
+        lock.writeLock().lock();
+
+        try {
+
+            if (matrix == null) {
+                matrix = new VectorMatrix(directory.resolve(MATRIX_FILE), embeddings.getFirst().length, 0);
+            }
+
+            for (int i = 0; i < documentsToAdd.size(); i++) {
+
+                Document document = documentsToAdd.get(i);
+
+                Integer replacedRow = rowsById.get(document.getId());
+
+                if (replacedRow != null) {
+                    deletedRows.set(replacedRow);
+                }
+
+                int row = matrix.append(embeddings.get(i));
+
+                documents.add(new StoredDocument(document.getId(), document.getText(), new HashMap<>(document.getMetadata())));
+
+                rowsById.put(document.getId(), row);
+
+                if (hnswIndex != null) {
+                    hnswIndex.insert(row, true);
+                }
+            }
+
+            if (hnswIndex == null && rowsById.size() >= hnswThreshold) {
+                buildHnswIndex();
+            }
+
+            dirty = true;
+
+        } finally {
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+
+        lock.writeLock().lock();
+
+        try {
+
+            for (String id : ids) {
+
+                Integer row = rowsById.remove(id);
+
+                if (row != null) {
+                    deletedRows.set(row);
+                }
+            }
+
+            dirty = true;
+
+        } finally {
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+
+        Expression expression = expressionParser.parseExpression(filterExpressionConverter.convertExpression(filterExpression));
+
+        lock.writeLock().lock();
+
+        try {
+
+            List<String> matching = rowsById.entrySet().stream()
+                    .filter(entry -> matches(expression, documents.get(entry.getValue())))
+                    .map(Map.Entry::getKey)
+                    .toList();
+
+            matching.forEach(id -> deletedRows.set(rowsById.remove(id)));
+
+            dirty = true;
+
+        } finally {
+
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+
+        float[] query = embeddingModel.embed(request.getQuery()).clone();
+
+        VectorMatrix.normalize(query);
+
+        Expression filter = request.hasFilterExpression()
+                ? expressionParser.parseExpression(filterExpressionConverter.convertExpression(request.getFilterExpression()))
+                : null;
+
+        lock.readLock().lock();
+
+        try {
+
+            if (matrix == null) {
+                return List.of();
+            }
+
+            List<HnswIndex.Candidate> candidates;
+
+            if (filter != null) {
+                candidates = bruteForce(query, request.getTopK(), row -> matches(filter, documents.get(row)));
+            } else if (hnswIndex != null) {
+                candidates = hnswIndex.search(query, Math.max(hnswEfSearch, request.getTopK() * 2), row -> !deletedRows.get(row));
+            } else {
+                candidates = bruteForce(query, request.getTopK(), row -> true);
+            }
+
+            return candidates.stream()
+                    .filter(candidate -> !deletedRows.get(candidate.node()))
+                    .filter(candidate -> candidate.similarity() >= request.getSimilarityThreshold())
+                    .limit(request.getTopK())
+                    .map(candidate -> toDocument(documents.get(candidate.node()), candidate.similarity()))
+                    .toList();
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> findIdsBySource(String source) {
+
+        lock.readLock().lock();
+
+        try {
+
+            Set<String> ids = new HashSet<>();
+
+            rowsById.forEach((id, row) -> {
+                if (Objects.equals(documents.get(row).metadata().get(ContentHash.SOURCE), source)) {
+                    ids.add(id);
+                }
+            });
+
+            return ids;
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachChunk(Consumer<Document> action) {
+
+        List<StoredDocument> chunks;
+
+        lock.readLock().lock();
+
+        try {
+
+            chunks = rowsById.values().stream().map(documents::get).toList();
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+
+        chunks.forEach(chunk -> action.accept(Document.builder()
+                .id(chunk.id())
+                .text(chunk.text())
+                .metadata(new HashMap<>(chunk.metadata()))
+                .build()));
+    }
+
+    /*
+    Flushes the matrix and writes the documents, a snapshot describes exactly the rows that were flushed with it.
+    The read lock keeps writers out while the snapshot is taken.
+     */
+
+    public void snapshot() {
+
+        lock.readLock().lock();
+
+        try {
+
+            if (!dirty || matrix == null) {
+                return;
+            }
+
+            matrix.force();
+
+            Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+
+            objectMapper.writeValue(temporary.toFile(), new Snapshot(matrix.dimensions(), documents, deletedRows.stream().boxed().toList()));
+
+            Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            dirty = false;
+
+            log.debug("Wrote snapshot of {} documents to {}", rowsById.size(), directory);
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not write vector store snapshot to " + directory, exception);
+
+        } finally {
+
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+
+        snapshotter.shutdown();
+
+        snapshotter.awaitTermination(10, TimeUnit.SECONDS);
+
+        snapshot();
+
+        if (matrix != null) {
+            matrix.close();
+        }
+    }
+
+    /*
+    Keeps the topK most similar rows that pass the filter in a min heap, best first.
+     */
+
+    private List<HnswIndex.Candidate> bruteForce(float[] query, int topK, IntPredicate filter) {
+
+        PriorityQueue<HnswIndex.Candidate> best = new PriorityQueue<>(topK + 1,
+                (left, right) -> Float.compare(left.similarity(), right.similarity()));
+
+        float[] scratch = new float[matrix.dimensions()];
+
+        for (int row = 0; row < matrix.rows(); row++) {
+
+            if (deletedRows.get(row) || !filter.test(row)) {
+                continue;
+            }
+
+            float similarity = matrix.similarity(row, query, scratch);
+
+            if (best.size() < topK) {
+
+                best.add(new HnswIndex.Candidate(row, similarity));
+
+            } else if (similarity > best.peek().similarity()) {
+
+                best.poll();
+
+                best.add(new HnswIndex.Candidate(row, similarity));
+            }
+        }
+
+        List<HnswIndex.Candidate> result = new ArrayList<>(best);
+
+        result.sort((left, right) -> Float.compare(right.similarity(), left.similarity()));
+
+        return result;
+    }
+
+    private void buildHnswIndex() {
+
+        long start = System.nanoTime();
+
+        hnswIndex = new HnswIndex(matrix, hnswMaxNeighbors, hnswEfConstruction);
+
+        for (int row = 0; row < matrix.rows(); row++) {
+            hnswIndex.insert(row, !deletedRows.get(row));
+        }
+
+        log.info("Built HNSW index over {} documents in {} ms", rowsById.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /*
+    Rows after the last snapshot have no document and are ignored, deleted rows are compacted away.
+     */
+
+    private void load() {
+
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+
+        try {
+
+            Snapshot snapshot = objectMapper.readValue(snapshotFile.toFile(), Snapshot.class);
+
+            VectorMatrix stored = new VectorMatrix(directory.resolve(MATRIX_FILE), snapshot.dimensions(), snapshot.documents().size());
+
+            Set<Integer> deleted = new HashSet<>(snapshot.deletedRows());
+
+            if (deleted.isEmpty()) {
+
+                matrix = stored;
+
+                for (int row = 0; row < snapshot.documents().size(); row++) {
+
+                    documents.add(snapshot.documents().get(row));
+
+                    rowsById.put(snapshot.documents().get(row).id(), row);
+                }
+
+            } else {
+
+                compact(stored, snapshot, deleted);
+            }
+
+            if (rowsById.size() >= hnswThreshold) {
+                buildHnswIndex();
+            }
+
+            log.info("Loaded {} documents into the local vector store from {}", rowsById.size(), directory);
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not load vector store snapshot from " + directory, exception);
+        }
+    }
+
+    private void compact(VectorMatrix stored, Snapshot snapshot, Set<Integer> deleted) throws IOException {
+
+        Path compactedPath = directory.resolve(MATRIX_FILE + ".compacted");
+
+        Files.deleteIfExists(compactedPath);
+
+        VectorMatrix compacted = new VectorMatrix(compactedPath, snapshot.dimensions(), 0);
+
+        float[] vector = new float[snapshot.dimensions()];
+
+        for (int row = 0; row < snapshot.documents().size(); row++) {
+
+            if (deleted.contains(row)) {
+                continue;
+            }
+
+            stored.read(row, vector);
+
+            StoredDocument document = snapshot.documents().get(row);
+
+            rowsById.put(document.id(), compacted.append(vector));
+
+            documents.add(document);
+        }
+
+        stored.close();
+
+        compacted.close();
+
+        Files.move(compactedPath, directory.resolve(MATRIX_FILE), StandardCopyOption.REPLACE_EXISTING);
+
+        matrix = new VectorMatrix(directory.resolve(MATRIX_FILE), snapshot.dimensions(), documents.size());
+
+        dirty = true;
+
+        log.info("Compacted {} deleted documents out of the local vector store", deleted.size());
+    }
+
+    private void snapshotQuietly() {
+
+        try {
+
+            snapshot();
+
+        } catch (RuntimeException exception) {
+
+            log.warn("Vector store snapshot failed", exception);
+        }
+    }
+
+    private boolean matches(Expression expression, StoredDocument document) {
+
+        StandardEvaluationContext context = new StandardEvaluationContext();
+
+        context.setVariable("metadata", document.metadata());
+
+        return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+    }
+
+    private static Document toDocument(StoredDocument document, float similarity) {
+
+        Map<String, Object> metadata = new HashMap<>(document.metadata());
+
+        metadata.put(DocumentMetadata.DISTANCE.value(), 1 - similarity);
+
+        return Document.builder()
+                .id(document.id())
+                .text(document.text())
+                .metadata(metadata)
+                .score((double) similarity)
+                .build();
+    }
+
+    record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+
+    record Snapshot(int dimensions, List<StoredDocument> documents, List<Integer> deletedRows) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+/*
+How the pgvector HNSW index stores the embeddings, the table always keeps the full precision vector for re-ranking.
+HALFVEC stores 2 byte floats (half the size, almost no recall loss), BINARY stores one bit per dimension (1/32 of the
+size, needs a larger re-rank window). pgvector has no 1 byte vector type, so int8 scalar quantization is not offered.
+ */
+
+public enum Quantization {
+
+    NONE(null, null, null, null),
+
+    HALFVEC("(embedding::halfvec(%1$d))", "halfvec_cosine_ops", "<=>", "?::halfvec(%1$d)"),
+
+    BINARY("(binary_quantize(embedding)::bit(%1$d))", "bit_hamming_ops", "<~>", "binary_quantize(?::vector)");
+
+    private final String indexedExpression;
+
+    private final String operatorClass;
+
+    private final String distanceOperator;
+
+    private final String queryExpression;
+
+    Quantization(String indexedExpression, String operatorClass, String distanceOperator, String queryExpression) {
+
+        this.indexedExpression = indexedExpression;
+
+        this.operatorClass = operatorClass;
+
+        this.distanceOperator = distanceOperator;
+
+        this.queryExpression = queryExpression;
+    }
+
+    /*
+    The ORDER BY clause must repeat the indexed expression exactly, otherwise Postgres does not use the index.
+     */
+
+    String indexedExpression(int dimensions) {
+
+        return indexedExpression.formatted(dimensions);
+    }
+
+    String operatorClass() {
+
+        return operatorClass;
+    }
+
+    String orderBy(int dimensions) {
+
+        return indexedExpression(dimensions) + " " + distanceOperator + " " + queryExpression.formatted(dimensions);
+    }
+}
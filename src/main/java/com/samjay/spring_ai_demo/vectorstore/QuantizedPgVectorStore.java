@@ -0,0 +1,234 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+pgvector store whose HNSW index holds quantized embeddings instead of full precision ones.
+Writes and deletes go to the auto configured PgVectorStore, so the table keeps the full precision embedding. An
+expression index over the quantized embedding is created next to it, a search first reads topK * rerankFactor
+candidates through that index and then orders them by their exact cosine distance, so the quantization only affects
+which candidates are read and not the order of the results.
+The index is what has to stay in memory, so the full precision index can be turned off
+(spring.ai.vectorstore.pgvector.index-type=none) once the quantized one exists.
+ */
+
+@Slf4j
+public class QuantizedPgVectorStore implements VectorStore, InitializingBean {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final PgVectorStore delegate;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Quantization quantization;
+
+    private final String tableName;
+
+    private final String indexName;
+
+    private final int dimensions;
+
+    private final int rerankFactor;
+
+    private final int efSearch;
+
+    private final boolean initializeIndex;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final PgVectorFilterExpressionConverter filterExpressionConverter = new PgVectorFilterExpressionConverter();
+
+    public QuantizedPgVectorStore(PgVectorStore delegate, EmbeddingModel embeddingModel, JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager, Quantization quantization,
+                                  String schemaName, String tableName, int dimensions, int rerankFactor, int efSearch,
+                                  boolean initializeIndex) {
+
+        if (quantization == Quantization.NONE) {
+            throw new IllegalArgumentException("A quantized vector store needs a quantization other than NONE");
+        }
+
+        this.delegate = delegate;
+
+        this.embeddingModel = embeddingModel;
+
+        this.jdbcTemplate = jdbcTemplate;
+
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.transactionTemplate.setReadOnly(true);
+
+        this.quantization = quantization;
+
+        this.tableName = schemaName + "." + tableName;
+
+        this.indexName = tableName + "_" + quantization.name().toLowerCase() + "_index";
+
+        this.dimensions = dimensions;
+
+        this.rerankFactor = rerankFactor;
+
+        this.efSearch = efSearch;
+
+        this.initializeIndex = initializeIndex;
+    }
+
+    /*
+    The delegate has already created the table at this point, building the index on a large table takes a while but
+    only happens once.
+     */
+
+    @Override
+    public void afterPropertiesSet() {
+
+        if (!initializeIndex) {
+            return;
+        }
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableName
+                + " USING hnsw (" + quantization.indexedExpression(dimensions) + " " + quantization.operatorClass() + ")");
+
+        log.info("Searching {} through the {} index {}", tableName, quantization, indexName);
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> ids) {
+
+        delegate.delete(ids);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+
+        String queryVector = toVectorLiteral(embeddingModel.embed(request.getQuery()));
+
+        int candidates = request.getTopK() * rerankFactor;
+
+        String filter = request.hasFilterExpression()
+                ? " WHERE metadata::jsonb @@ '" + filterExpressionConverter.convertExpression(request.getFilterExpression()) + "'::jsonpath"
+                : "";
+
+        String sql = "SELECT * FROM ("
+                + "SELECT id, content, metadata, embedding <=> ?::vector AS distance FROM ("
+                + "SELECT id, content, metadata, embedding FROM " + tableName + filter
+                + " ORDER BY " + quantization.orderBy(dimensions) + " LIMIT ?"
+                + ") candidates"
+                + ") reranked WHERE distance <= ? ORDER BY distance LIMIT ?";
+
+        return transactionTemplate.execute(status -> {
+
+            // the HNSW scan returns at most ef_search rows, it has to cover the whole re-rank window
+
+            jdbcTemplate.execute("SET LOCAL hnsw.ef_search = " + Math.max(efSearch, candidates));
+
+            if (!filter.isEmpty()) {
+                jdbcTemplate.execute("SET LOCAL hnsw.iterative_scan = relaxed_order");
+            }
+
+            return jdbcTemplate.query(sql, documentMapper(), queryVector, queryVector, candidates,
+                    1 - request.getSimilarityThreshold(), request.getTopK());
+        });
+    }
+
+    @Override
+    public String getName() {
+
+        return "QuantizedPgVectorStore";
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> getNativeClient() {
+
+        return Optional.of((T) jdbcTemplate);
+    }
+
+    private RowMapper<Document> documentMapper() {
+
+        return (resultSet, rowNumber) -> {
+
+            double distance = resultSet.getDouble("distance");
+
+            Map<String, Object> metadata = new HashMap<>(readMetadata(resultSet.getString("metadata")));
+
+            metadata.put(DocumentMetadata.DISTANCE.value(), distance);
+
+            return Document.builder()
+                    .id(resultSet.getString("id"))
+                    .text(resultSet.getString("content"))
+                    .metadata(metadata)
+                    .score(1 - distance)
+                    .build();
+        };
+    }
+
+    private Map<String, Object> readMetadata(String json) {
+
+        if (json == null) {
+            return Map.of();
+        }
+
+        try {
+
+            return objectMapper.readValue(json, METADATA_TYPE);
+
+        } catch (JsonProcessingException exception) {
+
+            throw new IllegalStateException("Could not read the metadata of a vector store row", exception);
+        }
+    }
+
+    private static String toVectorLiteral(float[] embedding) {
+
+        StringBuilder literal = new StringBuilder(embedding.length * 12).append('[');
+
+        for (int i = 0; i < embedding.length; i++) {
+
+            if (i > 0) {
+                literal.append(',');
+            }
+
+            literal.append(embedding[i]);
+        }
+
+        return literal.append(']').toString();
+    }
+}
@@ -0,0 +1,203 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Append only matrix of unit length float vectors, stored off heap in a memory mapped file.
+The file is mapped in fixed size segments, so it can grow past 2 GB and new rows never move the existing ones.
+Vectors are normalized when they are appended, cosine similarity is then a plain dot product. A row is copied into
+a float array with one bulk copy and multiplied in a loop unrolled over four independent accumulators. HotSpot does not
+vectorize a float sum because that would change its rounding, so this is not SIMD, but the four sums do not wait on
+each other and the loop is bound by throughput instead of by the latency of a single chain of additions.
+The file is written in the native byte order, it is meant to be reopened on the same machine.
+ */
+
+public class VectorMatrix implements AutoCloseable {
+
+    private static final int ROWS_PER_SEGMENT = 16_384;
+
+    private final Path path;
+
+    private final int dimensions;
+
+    private final FileChannel channel;
+
+    private final List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+
+    private final List<FloatBuffer> segments = new ArrayList<>();
+
+    private int rows;
+
+    public VectorMatrix(Path path, int dimensions, int rows) {
+
+        this.path = path;
+
+        this.dimensions = dimensions;
+
+        try {
+
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            for (int segment = 0; segment * ROWS_PER_SEGMENT < rows; segment++) {
+                mapSegment();
+            }
+
+            this.rows = rows;
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not open vector matrix " + path, exception);
+        }
+    }
+
+    public int append(float[] vector) {
+
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+
+        if (rows == segments.size() * ROWS_PER_SEGMENT) {
+            mapSegment();
+        }
+
+        float[] normalized = vector.clone();
+
+        normalize(normalized);
+
+        int row = rows;
+
+        segments.get(row / ROWS_PER_SEGMENT).put((row % ROWS_PER_SEGMENT) * dimensions, normalized);
+
+        rows++;
+
+        return row;
+    }
+
+    /*
+    Copies the row into the scratch array and returns its dot product with the (normalized) query.
+     */
+
+    public float similarity(int row, float[] query, float[] scratch) {
+
+        read(row, scratch);
+
+        return dot(query, scratch, dimensions);
+    }
+
+    public void read(int row, float[] destination) {
+
+        segments.get(row / ROWS_PER_SEGMENT).get((row % ROWS_PER_SEGMENT) * dimensions, destination, 0, dimensions);
+    }
+
+    public int rows() {
+
+        return rows;
+    }
+
+    public int dimensions() {
+
+        return dimensions;
+    }
+
+    public Path path() {
+
+        return path;
+    }
+
+    public void force() {
+
+        mappedSegments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() {
+
+        force();
+
+        try {
+
+            channel.close();
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not close vector matrix " + path, exception);
+        }
+    }
+
+    public static void normalize(float[] vector) {
+
+        float norm = (float) Math.sqrt(dot(vector, vector, vector.length));
+
+        if (norm == 0) {
+            return;
+        }
+
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+    }
+
+    static float dot(float[] left, float[] right, int length) {
+
+        float sum0 = 0;
+
+        float sum1 = 0;
+
+        float sum2 = 0;
+
+        float sum3 = 0;
+
+        int i = 0;
+
+        for (; i + 3 < length; i += 4) {
+
+            sum0 += left[i] * right[i];
+
+            sum1 += left[i + 1] * right[i + 1];
+
+            sum2 += left[i + 2] * right[i + 2];
+
+            sum3 += left[i + 3] * right[i + 3];
+        }
+
+        for (; i < length; i++) {
+            sum0 += left[i] * right[i];
+        }
+
+        return sum0 + sum1 + sum2 + sum3;
+    }
+
+    private void mapSegment() {
+
+        long segmentBytes = (long) ROWS_PER_SEGMENT * dimensions * Float.BYTES;
+
+        try {
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentBytes, segmentBytes);
+
+            mapped.order(ByteOrder.nativeOrder());
+
+            mappedSegments.add(mapped);
+
+            segments.add(mapped.asFloatBuffer());
+
+        } catch (IOException exception) {
+
+            throw new UncheckedIOException("Could not grow vector matrix " + path, exception);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.samjay.spring_ai_demo;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+Chat model for tests, it answers calls and streams with the given functions and counts how often each was used.
+ */
+
+public class StubChatModel implements ChatModel {
+
+    private final Function<Prompt, ChatResponse> call;
+
+    private final Function<Prompt, Flux<ChatResponse>> stream;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicInteger streams = new AtomicInteger();
+
+    private StubChatModel(Function<Prompt, ChatResponse> call, Function<Prompt, Flux<ChatResponse>> stream) {
+
+        this.call = call;
+
+        this.stream = stream;
+    }
+
+    public static StubChatModel answering(String text) {
+
+        return new StubChatModel(prompt -> response(text), prompt -> chunks(text));
+    }
+
+    public static StubChatModel calling(Function<Prompt, ChatResponse> call) {
+
+        return new StubChatModel(call, prompt -> Flux.just(call.apply(prompt)));
+    }
+
+    public static StubChatModel streaming(Function<Prompt, Flux<ChatResponse>> stream) {
+
+        return new StubChatModel(prompt -> stream.apply(prompt).blockLast(), stream);
+    }
+
+    public static ChatResponse response(String text) {
+
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    public static Flux<ChatResponse> chunks(String... texts) {
+
+        return Flux.fromIterable(Arrays.asList(texts)).map(StubChatModel::response);
+    }
+
+    public static String text(ChatResponse chatResponse) {
+
+        return chatResponse.getResult().getOutput().getText();
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+
+        calls.incrementAndGet();
+
+        return call.apply(prompt);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+
+        return Flux.defer(() -> {
+
+            streams.incrementAndGet();
+
+            return stream.apply(prompt);
+        });
+    }
+
+    public int calls() {
+
+        return calls.get();
+    }
+
+    public int streams() {
+
+        return streams.get();
+    }
+}
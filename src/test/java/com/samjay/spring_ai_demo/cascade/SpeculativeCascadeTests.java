@@ -0,0 +1,199 @@
+package com.samjay.spring_ai_demo.cascade;
+
+import com.samjay.spring_ai_demo.StubChatModel;
+import com.samjay.spring_ai_demo.prompt.PromptTemplateRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpeculativeCascadeTests {
+
+    private static final String SYSTEM_TEXT = "You answer questions about geography.";
+
+    private static final String QUESTION = "What is the capital of France?";
+
+    private static final CascadePolicy POLICY = new CascadePolicy(Duration.ofSeconds(2), Duration.ofSeconds(5), 10, true);
+
+    private final PromptTemplateRegistry promptTemplates = new PromptTemplateRegistry("classpath*:/prompts/", false, Duration.ofSeconds(1));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final StubChatModel escalationModel = StubChatModel.streaming(prompt -> StubChatModel.chunks("Paris", " is the capital of France."));
+
+    @Test
+    void acceptsADraftTheVerifierApproves() {
+
+        AtomicReference<Prompt> verification = new AtomicReference<>();
+
+        StubChatModel verifierModel = StubChatModel.calling(prompt -> {
+            verification.set(prompt);
+            return StubChatModel.response("YES");
+        });
+
+        SpeculativeCascade cascade = cascade(draftModel("Paris is", " the capital of France."), verifierModel, POLICY);
+
+        List<CascadeEvent> events = events(cascade);
+
+        assertThat(events).containsExactly(
+                new CascadeEvent(CascadeEvent.Type.DRAFT, "Paris is"),
+                new CascadeEvent(CascadeEvent.Type.DRAFT, " the capital of France."),
+                new CascadeEvent(CascadeEvent.Type.ACCEPTED, ""));
+
+        assertThat(verification.get().getContents()).contains(QUESTION).contains("Paris is the capital of France.");
+
+        assertThat(escalationModel.streams()).isZero();
+
+        assertThat(cascade.stats()).isEqualTo(new SpeculativeCascade.CascadeStats(1, 0, 0));
+    }
+
+    @Test
+    void escalatesADraftTheVerifierRejects() {
+
+        SpeculativeCascade cascade = cascade(draftModel("Lyon is the capital of France."), StubChatModel.answering("NO"), POLICY);
+
+        List<CascadeEvent> events = events(cascade);
+
+        assertThat(events).containsExactly(
+                new CascadeEvent(CascadeEvent.Type.DRAFT, "Lyon is the capital of France."),
+                new CascadeEvent(CascadeEvent.Type.ESCALATED, "verifier-rejected"),
+                new CascadeEvent(CascadeEvent.Type.ANSWER, "Paris"),
+                new CascadeEvent(CascadeEvent.Type.ANSWER, " is the capital of France."));
+
+        assertThat(escalations("verifier-rejected")).isEqualTo(1);
+
+        assertThat(cascade.stats()).isEqualTo(new SpeculativeCascade.CascadeStats(0, 1, 1));
+    }
+
+    @Test
+    void escalatesAHedgingDraftWithoutAskingTheVerifier() {
+
+        StubChatModel verifierModel = StubChatModel.answering("YES");
+
+        SpeculativeCascade cascade = cascade(draftModel("I'm not sure, it could be Paris."), verifierModel, POLICY);
+
+        assertThat(escalationReason(events(cascade))).isEqualTo("draft-hedging");
+
+        assertThat(verifierModel.calls()).isZero();
+
+        assertThat(escalations("draft-hedging")).isEqualTo(1);
+    }
+
+    @Test
+    void escalatesADraftThatIsTooShortWithoutAskingTheVerifier() {
+
+        StubChatModel verifierModel = StubChatModel.answering("YES");
+
+        SpeculativeCascade cascade = cascade(draftModel("Paris"), verifierModel, POLICY);
+
+        assertThat(escalationReason(events(cascade))).isEqualTo("draft-too-short");
+
+        assertThat(verifierModel.calls()).isZero();
+    }
+
+    @Test
+    void escalatesWhenTheVerifierFails() {
+
+        StubChatModel verifierModel = StubChatModel.calling(prompt -> {
+            throw new IllegalStateException("verifier unavailable");
+        });
+
+        SpeculativeCascade cascade = cascade(draftModel("Paris is the capital of France."), verifierModel, POLICY);
+
+        List<CascadeEvent> events = events(cascade);
+
+        assertThat(escalationReason(events)).isEqualTo("verifier-failed");
+
+        assertThat(events).last().isEqualTo(new CascadeEvent(CascadeEvent.Type.ANSWER, " is the capital of France."));
+
+        assertThat(escalations("verifier-failed")).isEqualTo(1);
+    }
+
+    @Test
+    void escalatesWhenTheDraftModelFails() {
+
+        StubChatModel draftModel = StubChatModel.streaming(prompt -> Flux.error(new IllegalStateException("draft model unavailable")));
+
+        SpeculativeCascade cascade = cascade(draftModel, StubChatModel.answering("YES"), POLICY);
+
+        List<CascadeEvent> events = events(cascade);
+
+        assertThat(events).first().isEqualTo(new CascadeEvent(CascadeEvent.Type.ESCALATED, "draft-failed"));
+
+        assertThat(escalationModel.streams()).isEqualTo(1);
+    }
+
+    @Test
+    void escalatesWhenTheDraftSendsNoFirstTokenInTime() {
+
+        StubChatModel draftModel = StubChatModel.streaming(prompt -> Flux.never());
+
+        CascadePolicy policy = new CascadePolicy(Duration.ofMillis(100), Duration.ofSeconds(5), 10, true);
+
+        SpeculativeCascade cascade = cascade(draftModel, StubChatModel.answering("YES"), policy);
+
+        List<CascadeEvent> events = events(cascade);
+
+        assertThat(events).noneMatch(event -> event.type() == CascadeEvent.Type.DRAFT);
+
+        assertThat(escalationReason(events)).isEqualTo("draft-first-token-timeout");
+
+        assertThat(escalations("draft-first-token-timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void escalatesWhenTheDraftDoesNotFinishInTime() {
+
+        StubChatModel verifierModel = StubChatModel.answering("YES");
+
+        StubChatModel draftModel = StubChatModel.streaming(prompt -> StubChatModel.chunks("Paris is the capital").concatWith(Flux.never()));
+
+        CascadePolicy policy = new CascadePolicy(Duration.ofSeconds(2), Duration.ofMillis(200), 10, true);
+
+        SpeculativeCascade cascade = cascade(draftModel, verifierModel, policy);
+
+        List<CascadeEvent> events = events(cascade);
+
+        assertThat(events).first().isEqualTo(new CascadeEvent(CascadeEvent.Type.DRAFT, "Paris is the capital"));
+
+        assertThat(escalationReason(events)).isEqualTo("draft-timeout");
+
+        assertThat(verifierModel.calls()).isZero();
+    }
+
+    private SpeculativeCascade cascade(StubChatModel draftModel, StubChatModel verifierModel, CascadePolicy policy) {
+
+        return new SpeculativeCascade(draftModel, null, verifierModel, null, promptTemplates, "cascadeVerification",
+                escalationModel, policy, meterRegistry);
+    }
+
+    private static StubChatModel draftModel(String... chunks) {
+
+        return StubChatModel.streaming(prompt -> StubChatModel.chunks(chunks));
+    }
+
+    private static List<CascadeEvent> events(SpeculativeCascade cascade) {
+
+        return cascade.stream(SYSTEM_TEXT, QUESTION).collectList().block(Duration.ofSeconds(10));
+    }
+
+    private static String escalationReason(List<CascadeEvent> events) {
+
+        return events.stream()
+                .filter(event -> event.type() == CascadeEvent.Type.ESCALATED)
+                .map(CascadeEvent::text)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private double escalations(String reason) {
+
+        return meterRegistry.counter("chat.cascade.escalations", "reason", reason).count();
+    }
+}
@@ -0,0 +1,240 @@
+package com.samjay.spring_ai_demo.controller;
+
+import com.samjay.spring_ai_demo.StubChatModel;
+import com.samjay.spring_ai_demo.advisors.SemanticCacheAdvisor;
+import com.samjay.spring_ai_demo.cascade.SpeculativeCascade;
+import com.samjay.spring_ai_demo.embedding.CachingEmbeddingModel;
+import com.samjay.spring_ai_demo.rag.RagStageTimings;
+import com.samjay.spring_ai_demo.routing.RoutingChatModel;
+import com.samjay.spring_ai_demo.service.ChatService;
+import com.samjay.spring_ai_demo.service.JobExtractionService;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.embedded.EmbeddedWebServerFactoryCustomizerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.mockito.Mockito.mock;
+
+/*
+Load test of the blocking chat endpoint with platform and with virtual request threads.
+ChatController runs in a Tomcat with the default pool of 200 platform threads, its chat client answers after a fixed
+model latency, so every request holds its request thread for the whole round trip like a real LLM call. All requests
+are sent at once and the peak number of chats in flight, the wall time, the peak thread count and the heap used
+(after a GC half way through the model latency, while the chats are in flight) are printed for both modes.
+With platform threads the chats in flight stop at the pool size and the rest queue, with virtual threads every
+request is served at once on the same heap.
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.samjay.spring_ai_demo.controller.ChatConcurrencyMeasurement -Dbenchmark.args="1000 1000"
+The arguments are the number of concurrent requests and the model latency in milliseconds.
+ */
+
+public class ChatConcurrencyMeasurement {
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+
+    private static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+
+    private static volatile long modelLatencyMillis;
+
+    public static void main(String[] args) throws Exception {
+
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        modelLatencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+
+        List<Result> results = List.of(run(false, requests), run(true, requests));
+
+        System.out.printf("%n%d concurrent chats, %d ms model latency, 200 Tomcat threads%n", requests, modelLatencyMillis);
+
+        System.out.printf("%-16s %12s %12s %12s %14s %8s%n", "request threads", "max chats", "wall ms", "peak threads", "heap used MB", "errors");
+
+        results.forEach(result -> System.out.printf("%-16s %12d %12d %12d %14.1f %8d%n", result.mode(), result.maxInFlight(),
+                result.wallMillis(), result.peakThreads(), result.heapUsedBytes() / (1024.0 * 1024.0), result.errors()));
+    }
+
+    private static Result run(boolean virtualThreads, int requests) throws Exception {
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadTestApplication.class)
+                .properties("server.port=0",
+                        "server.tomcat.threads.max=200",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn")
+                .run();
+             HttpClient httpClient = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(Executors.newVirtualThreadPerTaskExecutor())
+                     .build()) {
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            URI uri = URI.create("http://localhost:" + port + "/api/v1/chat/openai?message="
+                    + URLEncoder.encode("What is the capital of France?", StandardCharsets.UTF_8));
+
+            httpClient.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding());
+
+            MAX_IN_FLIGHT.set(0);
+
+            System.gc();
+
+            ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+
+            AtomicLong heapUsed = new AtomicLong();
+
+            var heapSampler = Executors.newSingleThreadScheduledExecutor();
+
+            heapSampler.schedule(() -> {
+
+                System.gc();
+
+                heapUsed.set(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+
+            }, modelLatencyMillis / 2, TimeUnit.MILLISECONDS);
+
+            long start = System.nanoTime();
+
+            List<CompletableFuture<HttpResponse<Void>>> responses = IntStream.range(0, requests)
+                    .mapToObj(ignored -> httpClient.sendAsync(HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5)).build(),
+                            HttpResponse.BodyHandlers.discarding()))
+                    .toList();
+
+            long errors = responses.stream()
+                    .map(response -> response.handle((httpResponse, exception) -> exception == null && httpResponse.statusCode() == 200))
+                    .map(CompletableFuture::join)
+                    .filter(ok -> !ok)
+                    .count();
+
+            long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+            heapSampler.shutdownNow();
+
+            return new Result(virtualThreads ? "virtual" : "platform", MAX_IN_FLIGHT.get(), wallMillis,
+                    ManagementFactory.getThreadMXBean().getPeakThreadCount(), heapUsed.get(), errors);
+        }
+    }
+
+    private static StubChatModel slowChatModel() {
+
+        return StubChatModel.calling(prompt -> {
+
+            MAX_IN_FLIGHT.accumulateAndGet(IN_FLIGHT.incrementAndGet(), Math::max);
+
+            try {
+
+                Thread.sleep(modelLatencyMillis);
+
+                return StubChatModel.response("Paris is the capital of France.");
+
+            } catch (InterruptedException exception) {
+
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException(exception);
+
+            } finally {
+
+                IN_FLIGHT.decrementAndGet();
+            }
+        });
+    }
+
+    private record Result(String mode, int maxInFlight, long wallMillis, int peakThreads, long heapUsedBytes, long errors) {
+    }
+
+    /*
+    Only the web stack and the controller, the model backends, databases and docker compose stay out.
+     */
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({ServletWebServerFactoryAutoConfiguration.class, EmbeddedWebServerFactoryCustomizerAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class, WebMvcAutoConfiguration.class, HttpMessageConvertersAutoConfiguration.class,
+            JacksonAutoConfiguration.class})
+    @Import(ChatController.class)
+    static class LoadTestApplication {
+
+        @Bean
+        public ChatClient openAiChatClient() {
+
+            return ChatClient.builder(slowChatModel()).build();
+        }
+
+        @Bean
+        public ChatClient ollamaChatClient() {
+
+            return ChatClient.builder(slowChatModel()).build();
+        }
+
+        @Bean
+        public ChatClient routedChatClient() {
+
+            return ChatClient.builder(slowChatModel()).build();
+        }
+
+        @Bean
+        public ChatService chatService() {
+
+            return mock(ChatService.class);
+        }
+
+        @Bean
+        public SemanticCacheAdvisor semanticCacheAdvisor() {
+
+            return mock(SemanticCacheAdvisor.class);
+        }
+
+        @Bean
+        public CachingEmbeddingModel cachingEmbeddingModel() {
+
+            return mock(CachingEmbeddingModel.class);
+        }
+
+        @Bean
+        public RagStageTimings ragStageTimings() {
+
+            return new RagStageTimings();
+        }
+
+        @Bean
+        public JobExtractionService jobExtractionService() {
+
+            return mock(JobExtractionService.class);
+        }
+
+        @Bean
+        public RoutingChatModel routingChatModel() {
+
+            return mock(RoutingChatModel.class);
+        }
+
+        @Bean
+        public SpeculativeCascade speculativeCascade() {
+
+            return mock(SpeculativeCascade.class);
+        }
+    }
+}
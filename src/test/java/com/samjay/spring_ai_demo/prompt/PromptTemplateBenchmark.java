@@ -0,0 +1,99 @@
+package com.samjay.spring_ai_demo.prompt;
+
+import com.samjay.spring_ai_demo.helper.Helper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Render cost per call of the prompt templates, the way the chat service rendered them before the registry (a
+PromptTemplate built from the resource or the text on every call) against the compiled templates of the registry.
+professionalBio is a one line template, retrievedDocuments wraps about twenty retrieved sentences.
+Run with the allocation profiler to also get the bytes allocated per call (gc.alloc.rate.norm):
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="PromptTemplateBenchmark -prof gc"
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptTemplateBenchmark {
+
+    private static final Map<String, Object> BIO_VALUES = Map.of("name", "Samuel", "role", "backend engineer");
+
+    private final Resource professionalBio = new ClassPathResource("prompts/professionalBio.st");
+
+    private PromptTemplateRegistry promptTemplates;
+
+    private String retrievedDocumentsText;
+
+    private Map<String, Object> retrievedDocumentsValues;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        promptTemplates = new PromptTemplateRegistry("classpath*:/prompts/", false, Duration.ofSeconds(1));
+
+        retrievedDocumentsText = new ClassPathResource("prompts/retrievedDocuments.st").getContentAsString(StandardCharsets.UTF_8);
+
+        retrievedDocumentsValues = Map.of("documents", String.join("\n", Helper.getData()),
+                "question", "How does dependency injection work with @Autowired?");
+    }
+
+    @Benchmark
+    public String professionalBioFromResourcePerCall() {
+
+        return PromptTemplate.builder()
+                .resource(professionalBio)
+                .build()
+                .render(BIO_VALUES);
+    }
+
+    @Benchmark
+    public String professionalBioFromTextPerCall() {
+
+        return PromptTemplate.builder()
+                .template("Create a professional bio for {name} who works as a {role}.")
+                .build()
+                .render(BIO_VALUES);
+    }
+
+    @Benchmark
+    public String professionalBioFromRegistry() {
+
+        return promptTemplates.render("professionalBio", BIO_VALUES);
+    }
+
+    @Benchmark
+    public String retrievedDocumentsFromTextPerCall() {
+
+        return PromptTemplate.builder()
+                .template(retrievedDocumentsText)
+                .build()
+                .render(retrievedDocumentsValues);
+    }
+
+    @Benchmark
+    public String retrievedDocumentsFromRegistry() {
+
+        return promptTemplates.render("retrievedDocuments", retrievedDocumentsValues);
+    }
+}
@@ -0,0 +1,153 @@
+package com.samjay.spring_ai_demo.rag;
+
+import com.samjay.spring_ai_demo.helper.Helper;
+import com.samjay.spring_ai_demo.vectorstore.LocalVectorStore;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static java.util.Map.entry;
+
+/*
+precision@k of the hybrid retriever against vector search alone, on the Helper.getData() corpus and a set of
+questions labeled with the sentences that answer them, half of them short keyword questions.
+Both retrievers search the same local vector store with the OpenAI embedding model the application uses and the
+similarity threshold of the hybrid profile, so the only difference is the BM25 search and the rank fusion. For every
+topK the precision (relevant sentences among the topK slots), the share of questions with a relevant sentence in the
+topK and the context tokens sent per question are printed.
+Needs OPENAI_API_KEY:
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.samjay.spring_ai_demo.rag.HybridRetrievalMeasurement -Dbenchmark.args=
+ */
+
+public class HybridRetrievalMeasurement {
+
+    private static final double SIMILARITY_THRESHOLD = 0.7;
+
+    private static final List<Map.Entry<String, Set<Integer>>> LABELED_QUESTIONS = List.of(
+            entry("@Autowired", Set.of(13)),
+            entry("javac", Set.of(2)),
+            entry("JVM", Set.of(1, 2)),
+            entry("Eureka", Set.of(16)),
+            entry("@RestController", Set.of(19)),
+            entry("Hibernate", Set.of(9, 10)),
+            entry("JPA repository", Set.of(15)),
+            entry("Optional", Set.of(12)),
+            entry("synchronized", Set.of(7)),
+            entry("embedded Tomcat", Set.of(18)),
+            entry("How does Java free memory that is no longer used?", Set.of(3)),
+            entry("How do I run work on several threads in Java?", Set.of(6, 7)),
+            entry("How do services in a Spring system find each other?", Set.of(16)),
+            entry("How are login and access control handled in Spring?", Set.of(14)),
+            entry("What is the difference between a class and an object?", Set.of(4)),
+            entry("Where does a Spring application keep shared configuration?", Set.of(17)),
+            entry("Where does a Java program start running?", Set.of(5)),
+            entry("Which Java version added functional programming features?", Set.of(11)),
+            entry("How are Java objects saved into relational tables?", Set.of(9, 10)),
+            entry("What makes Java run on any operating system?", Set.of(0, 1)));
+
+    public static void main(String[] args) throws Exception {
+
+        var embeddingModel = new OpenAiEmbeddingModel(OpenAiApi.builder().apiKey(System.getenv("OPENAI_API_KEY")).build());
+
+        Path directory = Files.createTempDirectory("hybrid-retrieval-measurement");
+
+        var vectorStore = new LocalVectorStore(embeddingModel, directory, Integer.MAX_VALUE, 16, 200, 64, Duration.ofHours(1));
+
+        var retrievalExecutor = new RetrievalExecutor(4, true);
+
+        try {
+
+            List<String> sentences = Helper.getData();
+
+            List<Document> documents = IntStream.range(0, sentences.size())
+                    .mapToObj(index -> Document.builder().id("sentence-" + index).text(sentences.get(index)).build())
+                    .toList();
+
+            vectorStore.add(documents);
+
+            var bm25Index = new Bm25Index(vectorStore);
+
+            bm25Index.add(documents);
+
+            List<String> results = new ArrayList<>();
+
+            for (int topK : new int[]{1, 3, 5}) {
+
+                DocumentRetriever vectorRetriever = VectorStoreDocumentRetriever.builder()
+                        .vectorStore(vectorStore)
+                        .topK(topK)
+                        .similarityThreshold(SIMILARITY_THRESHOLD)
+                        .build();
+
+                DocumentRetriever hybridRetriever = new HybridDocumentRetriever(vectorStore, bm25Index,
+                        retrievalExecutor.taskExecutor(), topK, 20, SIMILARITY_THRESHOLD);
+
+                results.add(measure("vector", vectorRetriever, topK));
+
+                results.add(measure("hybrid", hybridRetriever, topK));
+            }
+
+            System.out.printf("%n%d labeled questions over %d sentences, similarity threshold %.2f%n",
+                    LABELED_QUESTIONS.size(), sentences.size(), SIMILARITY_THRESHOLD);
+
+            System.out.printf("%-8s %6s %12s %10s %16s%n", "search", "topK", "precision", "hit rate", "context tokens");
+
+            results.forEach(System.out::println);
+
+        } finally {
+
+            retrievalExecutor.destroy();
+
+            vectorStore.destroy();
+
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+
+    private static String measure(String name, DocumentRetriever documentRetriever, int topK) {
+
+        TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+        int relevant = 0;
+
+        int hits = 0;
+
+        long contextTokens = 0;
+
+        for (Map.Entry<String, Set<Integer>> labeledQuestion : LABELED_QUESTIONS) {
+
+            List<Document> retrieved = documentRetriever.retrieve(new Query(labeledQuestion.getKey()));
+
+            long found = retrieved.stream()
+                    .map(document -> Integer.parseInt(document.getId().substring("sentence-".length())))
+                    .filter(labeledQuestion.getValue()::contains)
+                    .count();
+
+            relevant += (int) found;
+
+            hits += found > 0 ? 1 : 0;
+
+            contextTokens += retrieved.stream().mapToInt(document -> tokenCountEstimator.estimate(document.getText())).sum();
+        }
+
+        int questions = LABELED_QUESTIONS.size();
+
+        return "%-8s %6d %12.3f %10.3f %16.1f".formatted(name, topK, (double) relevant / (questions * topK),
+                (double) hits / questions, (double) contextTokens / questions);
+    }
+}
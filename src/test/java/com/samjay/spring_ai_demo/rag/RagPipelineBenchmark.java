@@ -0,0 +1,168 @@
+package com.samjay.spring_ai_demo.rag;
+
+import com.samjay.spring_ai_demo.StubChatModel;
+import com.samjay.spring_ai_demo.configuration.RagPipelineProperties;
+import com.samjay.spring_ai_demo.limiter.AdaptiveConcurrencyLimit;
+import com.samjay.spring_ai_demo.limiter.AdmissionControlledChatModel;
+import com.samjay.spring_ai_demo.limiter.TokenRateLimiter;
+import com.samjay.spring_ai_demo.repository.IndexedChunkRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
+import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugmenter;
+import org.springframework.ai.rag.preretrieval.query.expansion.MultiQueryExpander;
+import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
+import org.springframework.ai.rag.preretrieval.query.transformation.TranslationQueryTransformer;
+import org.springframework.ai.rag.retrieval.join.ConcatenationDocumentJoiner;
+import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.EXPAND;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.REWRITE;
+import static com.samjay.spring_ai_demo.configuration.RagPipelineProperties.Stage.TRANSLATE;
+import static org.mockito.Mockito.mock;
+
+/*
+Per request cost of setting up a RAG call, before and after the pipelines were built once at startup.
+The perRequest benchmarks build the advisors the way the chat service did on every request (three chat client clones,
+transformers, expander, retriever and advisor), the prebuilt ones look the same pipeline up in the registry. Both stop
+at the prompt spec, the model round trip and the retrieval are the same either way and are left out.
+Run with the allocation profiler and compare gc.alloc.rate.norm (bytes per request):
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="RagPipelineBenchmark -prof gc"
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RagPipelineBenchmark {
+
+    private static final String MESSAGE = "How does dependency injection work with @Autowired?";
+
+    private ChatClient openAiChatClient;
+
+    private VectorStore vectorStore;
+
+    private RetrievalExecutor retrievalExecutor;
+
+    private RagPipelineRegistry ragPipelineRegistry;
+
+    @Setup
+    public void setUp() {
+
+        StubChatModel chatModel = StubChatModel.answering("Dependency injection hands a bean its collaborators.");
+
+        openAiChatClient = ChatClient.builder(chatModel).build();
+
+        vectorStore = mock(VectorStore.class);
+
+        retrievalExecutor = new RetrievalExecutor(16, true);
+
+        var profiles = Map.of(
+                "question-answer", new RagPipelineProperties.Profile(RagPipelineProperties.Type.QUESTION_ANSWER, 3, 0.75,
+                        List.of(), 3, "English", 20),
+                "advanced", new RagPipelineProperties.Profile(RagPipelineProperties.Type.RETRIEVAL_AUGMENTATION, 5, 0.8,
+                        List.of(REWRITE, TRANSLATE, EXPAND), 3, "English", 20));
+
+        var admissionControlledChatModel = new AdmissionControlledChatModel("openai", chatModel,
+                new AdaptiveConcurrencyLimit(16, 4, 64, 256), new TokenRateLimiter(1_000_000), Duration.ofSeconds(5), 512);
+
+        ragPipelineRegistry = new RagPipelineRegistry(new RagPipelineProperties(profiles), admissionControlledChatModel,
+                vectorStore, new Bm25Index(mock(IndexedChunkRepository.class)), new ContextPacker(1500, 0.6),
+                new RagStageTimings(), retrievalExecutor);
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        retrievalExecutor.destroy();
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec questionAnswerPerRequest() {
+
+        var qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
+                .searchRequest(SearchRequest.builder().similarityThreshold(0.75).topK(3).build())
+                .build();
+
+        return openAiChatClient.prompt()
+                .advisors(qaAdvisor)
+                .user(MESSAGE);
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec questionAnswerPrebuilt() {
+
+        return openAiChatClient.prompt()
+                .advisors(ragPipelineRegistry.get("question-answer"))
+                .user(MESSAGE);
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec advancedPerRequest() {
+
+        var rewriteQueryTransformer = RewriteQueryTransformer
+                .builder()
+                .chatClientBuilder(openAiChatClient.mutate().clone())
+                .build();
+
+        var translationQueryTransformer = TranslationQueryTransformer
+                .builder()
+                .chatClientBuilder(openAiChatClient.mutate().clone())
+                .targetLanguage("English")
+                .build();
+
+        var multiQueryExpander = MultiQueryExpander
+                .builder()
+                .chatClientBuilder(openAiChatClient.mutate().clone())
+                .numberOfQueries(3)
+                .build();
+
+        var vectorStoreDocumentRetriever = VectorStoreDocumentRetriever
+                .builder()
+                .vectorStore(vectorStore)
+                .topK(5)
+                .similarityThreshold(0.8)
+                .build();
+
+        var retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor
+                .builder()
+                .queryTransformers(rewriteQueryTransformer, translationQueryTransformer)
+                .queryExpander(multiQueryExpander)
+                .documentRetriever(vectorStoreDocumentRetriever)
+                .documentJoiner(new ConcatenationDocumentJoiner())
+                .queryAugmenter(ContextualQueryAugmenter.builder().allowEmptyContext(true).build())
+                .build();
+
+        return openAiChatClient.prompt()
+                .advisors(retrievalAugmentationAdvisor)
+                .user(MESSAGE);
+    }
+
+    @Benchmark
+    public ChatClient.ChatClientRequestSpec advancedPrebuilt() {
+
+        return openAiChatClient.prompt()
+                .advisors(ragPipelineRegistry.get("advanced"))
+                .user(MESSAGE);
+    }
+}
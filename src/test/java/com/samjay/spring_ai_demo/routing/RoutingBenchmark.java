@@ -0,0 +1,149 @@
+package com.samjay.spring_ai_demo.routing;
+
+import com.samjay.spring_ai_demo.StubChatModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Latency distribution and error rate of the model router against fixed routing, on two stub backends with simulated
+latency and failures. The primary backend is free, answers in about 50 ms, takes 1 s on tailRate of its calls and
+fails failureRate of them. The secondary backend is paid, answers in about 80 ms and rarely has a slow call.
+fixed sends every call to the primary and surfaces its failures, routed picks the backend by latency, load and cost
+and fails over, hedged also hedges a slow call on the other backend after 200 ms.
+Calls that fail are timed as well, the errors, hedges, failovers and requests per backend are printed at teardown.
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="RoutingBenchmark -p failureRate=0,0.05 -p tailRate=0,0.05"
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(8)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final Prompt PROMPT = new Prompt("What is the capital of France?");
+
+    @Param({"fixed", "routed", "hedged"})
+    public String routing;
+
+    @Param({"0.05"})
+    public double failureRate;
+
+    @Param({"0.05"})
+    public double tailRate;
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private RoutingChatModel router;
+
+    private ChatModel chatModel;
+
+    @Setup
+    public void setUp() {
+
+        ChatModel primary = backend("primary", 50, 1_000, tailRate, failureRate);
+
+        ChatModel secondary = backend("secondary", 80, 400, 0.01, 0);
+
+        router = new RoutingChatModel(List.of(
+                new ModelBackend("primary", primary, 0, 100_000),
+                new ModelBackend("secondary", secondary, 2, 100_000)),
+                new RoutingPolicy(0.2, 1_000, routing.equals("hedged"), Duration.ofMillis(200), 2.0, Duration.ofSeconds(1)));
+
+        chatModel = switch (routing) {
+            case "fixed" -> primary;
+            case "routed", "hedged" -> router;
+            default -> throw new IllegalArgumentException("Unknown routing " + routing);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        System.out.printf("%n%s, failure rate %.2f, tail rate %.2f: %d calls, error rate %.4f, %d hedged, %d failed over%n",
+                routing, failureRate, tailRate, calls.get(), (double) errors.get() / Math.max(1, calls.get()),
+                router.hedgedCalls(), router.failovers());
+
+        if (!routing.equals("fixed")) {
+            router.stats().forEach(stats -> System.out.printf("  %s: %d requests, %d failures, latency average %.1f ms%n",
+                    stats.name(), stats.requests(), stats.failures(), stats.latencyEwmaMillis()));
+        }
+
+        router.destroy();
+    }
+
+    @Benchmark
+    public ChatResponse call() {
+
+        calls.incrementAndGet();
+
+        try {
+
+            return chatModel.call(PROMPT);
+
+        } catch (RuntimeException exception) {
+
+            errors.incrementAndGet();
+
+            return null;
+        }
+    }
+
+    /*
+    Latency is spread by up to 20% around the median, a slow call takes tailMillis instead. A failure is only known
+    after the usual latency, the way a 5xx answer comes back from a real provider.
+     */
+
+    private static StubChatModel backend(String name, long medianMillis, long tailMillis, double tailRate, double failureRate) {
+
+        return StubChatModel.calling(prompt -> {
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            long latencyMillis = random.nextDouble() < tailRate
+                    ? tailMillis
+                    : (long) (medianMillis * (0.8 + 0.4 * random.nextDouble()));
+
+            try {
+
+                Thread.sleep(latencyMillis);
+
+            } catch (InterruptedException exception) {
+
+                Thread.currentThread().interrupt();
+
+                throw new IllegalStateException(name + " call was cancelled");
+            }
+
+            if (random.nextDouble() < failureRate) {
+                throw new IllegalStateException(name + " answered with a server error");
+            }
+
+            return StubChatModel.response(name);
+        });
+    }
+}
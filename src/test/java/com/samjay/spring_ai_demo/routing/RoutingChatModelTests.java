@@ -0,0 +1,241 @@
+package com.samjay.spring_ai_demo.routing;
+
+import com.samjay.spring_ai_demo.StubChatModel;
+import com.samjay.spring_ai_demo.limiter.AdmissionRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+The primary backend is free and the secondary one is paid, so with no latency observed yet every request is sent to
+the primary first and the secondary only gets hedged or failed over requests.
+ */
+
+class RoutingChatModelTests {
+
+    private static final Prompt PROMPT = new Prompt("What is the capital of France?");
+
+    private RoutingChatModel router;
+
+    @AfterEach
+    void shutDownRouter() {
+
+        if (router != null) {
+            router.destroy();
+        }
+    }
+
+    @Test
+    void doesNotHedgeACallThatAnswersWithinTheHedgeDelay() {
+
+        StubChatModel primary = StubChatModel.calling(prompt -> {
+            sleep(100);
+            return StubChatModel.response("primary");
+        });
+
+        StubChatModel secondary = StubChatModel.answering("secondary");
+
+        router = router(primary, secondary, true, Duration.ofSeconds(2));
+
+        ChatResponse chatResponse = router.call(PROMPT);
+
+        assertThat(StubChatModel.text(chatResponse)).isEqualTo("primary");
+
+        assertThat(secondary.calls()).isZero();
+
+        assertThat(router.hedgedCalls()).isZero();
+    }
+
+    @Test
+    void hedgesAfterTheDelayAndCancelsTheSlowerCallWhenTheFirstAnswerWins() throws InterruptedException {
+
+        CountDownLatch primaryCancelled = new CountDownLatch(1);
+
+        StubChatModel primary = StubChatModel.calling(prompt -> {
+
+            try {
+
+                Thread.sleep(10_000);
+
+                return StubChatModel.response("primary");
+
+            } catch (InterruptedException exception) {
+
+                primaryCancelled.countDown();
+
+                throw new IllegalStateException("cancelled");
+            }
+        });
+
+        StubChatModel secondary = StubChatModel.answering("secondary");
+
+        router = router(primary, secondary, true, Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+
+        ChatResponse chatResponse = router.call(PROMPT);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(StubChatModel.text(chatResponse)).isEqualTo("secondary");
+
+        assertThat(elapsedMillis).isBetween(100L, 5_000L);
+
+        assertThat(router.hedgedCalls()).isEqualTo(1);
+
+        assertThat(primaryCancelled.await(5, TimeUnit.SECONDS)).isTrue();
+
+        ModelBackend primaryBackend = backend("primary");
+
+        awaitIdle(primaryBackend);
+
+        assertThat(primaryBackend.failures()).isZero();
+
+        assertThat(primaryBackend.isAvailable(System.currentTimeMillis())).isTrue();
+    }
+
+    @Test
+    void failsOverToTheNextBackendWhenABackendErrors() {
+
+        StubChatModel primary = StubChatModel.calling(prompt -> {
+            throw new IllegalStateException("backend down");
+        });
+
+        StubChatModel secondary = StubChatModel.answering("secondary");
+
+        router = router(primary, secondary, false, Duration.ofSeconds(2));
+
+        ChatResponse chatResponse = router.call(PROMPT);
+
+        assertThat(StubChatModel.text(chatResponse)).isEqualTo("secondary");
+
+        assertThat(router.failovers()).isEqualTo(1);
+
+        ModelBackend primaryBackend = backend("primary");
+
+        assertThat(primaryBackend.failures()).isEqualTo(1);
+
+        assertThat(primaryBackend.isAvailable(System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    void failsOverWithoutCoolingDownABackendThatRejectedAdmission() {
+
+        StubChatModel primary = StubChatModel.calling(prompt -> {
+            throw new AdmissionRejectedException("Too many requests are waiting for the model backend");
+        });
+
+        StubChatModel secondary = StubChatModel.answering("secondary");
+
+        router = router(primary, secondary, false, Duration.ofSeconds(2));
+
+        ChatResponse chatResponse = router.call(PROMPT);
+
+        assertThat(StubChatModel.text(chatResponse)).isEqualTo("secondary");
+
+        assertThat(router.failovers()).isEqualTo(1);
+
+        ModelBackend primaryBackend = backend("primary");
+
+        assertThat(primaryBackend.failures()).isZero();
+
+        assertThat(primaryBackend.isAvailable(System.currentTimeMillis())).isTrue();
+    }
+
+    @Test
+    void streamFailsOverWhenTheBackendErrorsBeforeTheFirstChunk() {
+
+        StubChatModel primary = StubChatModel.streaming(prompt -> Flux.error(new IllegalStateException("backend down")));
+
+        StubChatModel secondary = StubChatModel.streaming(prompt -> StubChatModel.chunks("Paris", " is the capital."));
+
+        router = router(primary, secondary, true, Duration.ofSeconds(2));
+
+        List<String> chunks = router.stream(PROMPT).map(StubChatModel::text).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(chunks).containsExactly("Paris", " is the capital.");
+
+        assertThat(router.failovers()).isEqualTo(1);
+
+        assertThat(secondary.streams()).isEqualTo(1);
+    }
+
+    @Test
+    void streamDoesNotFailOverOnceAChunkWasSent() {
+
+        StubChatModel primary = StubChatModel.streaming(prompt -> StubChatModel.chunks("Paris")
+                .concatWith(Flux.error(new IllegalStateException("connection reset"))));
+
+        StubChatModel secondary = StubChatModel.streaming(prompt -> StubChatModel.chunks("Paris", " is the capital."));
+
+        router = router(primary, secondary, true, Duration.ofSeconds(2));
+
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> router.stream(PROMPT)
+                .map(StubChatModel::text)
+                .doOnNext(received::add)
+                .blockLast(Duration.ofSeconds(5)))
+                .hasMessageContaining("connection reset");
+
+        assertThat(received).containsExactly("Paris");
+
+        assertThat(secondary.streams()).isZero();
+
+        assertThat(router.failovers()).isZero();
+    }
+
+    private static RoutingChatModel router(StubChatModel primary, StubChatModel secondary, boolean hedgingEnabled, Duration hedgeMinDelay) {
+
+        return new RoutingChatModel(List.of(
+                new ModelBackend("primary", primary, 0, 100_000),
+                new ModelBackend("secondary", secondary, 1_000, 100_000)),
+                new RoutingPolicy(0.2, 1_000, hedgingEnabled, hedgeMinDelay, 2.0, Duration.ofSeconds(30)));
+    }
+
+    private ModelBackend backend(String name) {
+
+        return router.backends().stream()
+                .filter(backend -> backend.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /*
+    A cancelled call finishes on its own thread, after the winning answer was already returned.
+     */
+
+    private static void awaitIdle(ModelBackend backend) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (backend.inFlight() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+
+        try {
+
+            Thread.sleep(millis);
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(exception);
+        }
+    }
+}
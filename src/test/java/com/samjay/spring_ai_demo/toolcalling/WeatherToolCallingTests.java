@@ -0,0 +1,224 @@
+package com.samjay.spring_ai_demo.toolcalling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samjay.spring_ai_demo.configuration.AIConfiguration;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+Runs the weather tool against a stub weather API on weather.api.base-url. Every stub request takes a while, so
+calls that overlap in time show up in the highest number of requests served at once.
+ */
+
+class WeatherToolCallingTests {
+
+    private static final String TOOL_NAME = "getWeatherForCity";
+
+    private static final long RESPONSE_DELAY_MILLIS = 300;
+
+    private final Map<String, AtomicInteger> requestsByCity = new ConcurrentHashMap<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HttpServer weatherApi;
+
+    private ToolCallback weatherToolCallback;
+
+    private ParallelToolCallingManager toolCallingManager;
+
+    @BeforeEach
+    void startWeatherApi() throws IOException {
+
+        weatherApi = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+
+        weatherApi.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+        weatherApi.createContext("/current.json", this::currentWeather);
+
+        weatherApi.start();
+
+        var restClient = new AIConfiguration().restClient("http://localhost:" + weatherApi.getAddress().getPort(),
+                Duration.ofSeconds(5), Duration.ofSeconds(10));
+
+        var weatherApiTool = new WeatherApiTool(restClient, new ObjectMapper());
+
+        ReflectionTestUtils.setField(weatherApiTool, "weatherApiKey", "test-key");
+
+        weatherToolCallback = new CachingToolCallback(ToolCallbacks.from(weatherApiTool)[0], Duration.ofMinutes(5), 100, meterRegistry);
+
+        toolCallingManager = new ParallelToolCallingManager(ToolCallingManager.builder().build());
+    }
+
+    @AfterEach
+    void stopWeatherApi() {
+
+        toolCallingManager.destroy();
+
+        weatherApi.stop(0);
+    }
+
+    @Test
+    void runsTheWeatherCallsOfOneModelTurnConcurrently() {
+
+        var prompt = new Prompt("What is the weather in London and in Paris?",
+                ToolCallingChatOptions.builder().toolCallbacks(weatherToolCallback).build());
+
+        var assistantMessage = AssistantMessage.builder()
+                .content("")
+                .toolCalls(List.of(
+                        new AssistantMessage.ToolCall("call-1", "function", TOOL_NAME, "{\"city\":\"London\"}"),
+                        new AssistantMessage.ToolCall("call-2", "function", TOOL_NAME, "{\"city\":\"Paris\"}")))
+                .build();
+
+        var chatResponse = new ChatResponse(List.of(new Generation(assistantMessage)));
+
+        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, chatResponse);
+
+        assertThat(maxInFlight.get()).isEqualTo(2);
+
+        assertThat(requests("London")).isEqualTo(1);
+
+        assertThat(requests("Paris")).isEqualTo(1);
+
+        Message toolResponses = toolExecutionResult.conversationHistory().getLast();
+
+        assertThat(toolResponses).isInstanceOf(ToolResponseMessage.class);
+
+        assertThat(((ToolResponseMessage) toolResponses).getResponses())
+                .extracting(ToolResponseMessage.ToolResponse::responseData)
+                .anySatisfy(responseData -> assertThat(responseData).contains("London"))
+                .anySatisfy(responseData -> assertThat(responseData).contains("Paris"));
+    }
+
+    @Test
+    void answersASecondCallWithinTheTimeToLiveFromTheCache() {
+
+        String first = weatherToolCallback.call("{\"city\":\"London\"}");
+
+        String second = weatherToolCallback.call("{ \"city\" : \"London\" }");
+
+        assertThat(second).isEqualTo(first).contains("London");
+
+        assertThat(requests("London")).isEqualTo(1);
+
+        assertThat(calls("miss")).isEqualTo(1);
+
+        assertThat(calls("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void doesNotCacheFailedCalls() {
+
+        assertThatThrownBy(() -> weatherToolCallback.call("{\"city\":\"Atlantis\"}"))
+                .hasStackTraceContaining("No matching location found.");
+
+        assertThatThrownBy(() -> weatherToolCallback.call("{\"city\":\"Atlantis\"}"))
+                .hasStackTraceContaining("No matching location found.");
+
+        assertThat(requests("Atlantis")).isEqualTo(2);
+
+        assertThat(calls("error")).isEqualTo(2);
+
+        assertThat(calls("hit")).isZero();
+    }
+
+    private void currentWeather(HttpExchange exchange) throws IOException {
+
+        String city = Arrays.stream(exchange.getRequestURI().getQuery().split("&"))
+                .filter(parameter -> parameter.startsWith("q="))
+                .map(parameter -> parameter.substring(2))
+                .findFirst()
+                .orElse("");
+
+        requestsByCity.computeIfAbsent(city, ignored -> new AtomicInteger()).incrementAndGet();
+
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+        try {
+
+            Thread.sleep(RESPONSE_DELAY_MILLIS);
+
+            if (city.equals("Atlantis")) {
+                respond(exchange, 400, "{\"error\":{\"code\":1006,\"message\":\"No matching location found.\"}}");
+            } else {
+                respond(exchange, 200, """
+                        {"location":{"name":"%s","country":"Somewhere","localtime":"2026-10-18 12:00"},
+                        "current":{"temp_c":14.0,"feelslike_c":13.0,"condition":{"text":"Partly cloudy","code":1003},
+                        "humidity":72,"wind_kph":11.2,"wind_dir":"SW","precip_mm":0.0,"uv":2.0}}
+                        """.formatted(city));
+            }
+
+        } catch (InterruptedException exception) {
+
+            Thread.currentThread().interrupt();
+
+            respond(exchange, 503, "{}");
+
+        } finally {
+
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    private int requests(String city) {
+
+        AtomicInteger requests = requestsByCity.get(city);
+
+        return requests == null ? 0 : requests.get();
+    }
+
+    private long calls(String result) {
+
+        var timer = meterRegistry.find("tool.calls").tag("tool", TOOL_NAME).tag("result", result).timer();
+
+        return timer == null ? 0 : timer.count();
+    }
+}
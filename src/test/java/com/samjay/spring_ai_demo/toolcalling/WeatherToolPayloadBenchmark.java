@@ -0,0 +1,147 @@
+package com.samjay.spring_ai_demo.toolcalling;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Bytes and tokens a weather tool call adds to the prompt, and the cost of producing them, for the map based tool the
+weather API response used to be read into and for the streaming projection into a WeatherReport.
+Both tools run through their tool callbacks, so the payload is exactly what goes back to the model. The weather API
+answers from memory with a full weatherapi.com current weather response, the network is left out.
+The payload sizes are printed once at setup, the benchmarks give the time and, with the gc profiler, the bytes
+allocated per call (gc.alloc.rate.norm):
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="WeatherToolPayloadBenchmark -prof gc"
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeatherToolPayloadBenchmark {
+
+    private static final String TOOL_INPUT = "{\"city\":\"London\"}";
+
+    private static final String CURRENT_WEATHER = """
+            {"location":{"name":"London","region":"City of London, Greater London","country":"United Kingdom",
+            "lat":51.5171,"lon":-0.1062,"tz_id":"Europe/London","localtime_epoch":1760788800,"localtime":"2026-10-18 13:00"},
+            "current":{"last_updated_epoch":1760788800,"last_updated":"2026-10-18 13:00","temp_c":14.2,"temp_f":57.6,
+            "is_day":1,"condition":{"text":"Partly cloudy","icon":"//cdn.weatherapi.com/weather/64x64/day/116.png","code":1003},
+            "wind_mph":8.1,"wind_kph":13.0,"wind_degree":225,"wind_dir":"SW","pressure_mb":1014.0,"pressure_in":29.94,
+            "precip_mm":0.0,"precip_in":0.0,"humidity":72,"cloud":50,"feelslike_c":13.1,"feelslike_f":55.6,
+            "windchill_c":12.4,"windchill_f":54.3,"heatindex_c":13.9,"heatindex_f":57.0,"dewpoint_c":8.9,"dewpoint_f":48.0,
+            "vis_km":10.0,"vis_miles":6.0,"uv":2.0,"gust_mph":11.3,"gust_kph":18.2}}
+            """;
+
+    private ToolCallback mapWeatherToolCallback;
+
+    private ToolCallback weatherToolCallback;
+
+    @Setup
+    public void setUp() {
+
+        RestClient restClient = RestClient.builder()
+                .baseUrl("http://api.weatherapi.com/v1")
+                .requestFactory((uri, httpMethod) -> {
+
+                    var response = new MockClientHttpResponse(CURRENT_WEATHER.getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+
+                    response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+                    var request = new MockClientHttpRequest(httpMethod, uri);
+
+                    request.setResponse(response);
+
+                    return request;
+                })
+                .build();
+
+        var weatherApiTool = new WeatherApiTool(restClient, new ObjectMapper());
+
+        ReflectionTestUtils.setField(weatherApiTool, "weatherApiKey", "benchmark-key");
+
+        weatherToolCallback = ToolCallbacks.from(weatherApiTool)[0];
+
+        mapWeatherToolCallback = ToolCallbacks.from(new MapWeatherApiTool(restClient))[0];
+
+        var tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+        String mapPayload = mapWeatherToolCallback.call(TOOL_INPUT);
+
+        String reportPayload = weatherToolCallback.call(TOOL_INPUT);
+
+        System.out.printf("%nTool result per call: map toString %d bytes / %d tokens, weather report %d bytes / %d tokens%n",
+                mapPayload.getBytes(StandardCharsets.UTF_8).length, tokenCountEstimator.estimate(mapPayload),
+                reportPayload.getBytes(StandardCharsets.UTF_8).length, tokenCountEstimator.estimate(reportPayload));
+    }
+
+    @Benchmark
+    public String mapToString() {
+
+        return mapWeatherToolCallback.call(TOOL_INPUT);
+    }
+
+    @Benchmark
+    public String weatherReport() {
+
+        return weatherToolCallback.call(TOOL_INPUT);
+    }
+
+    /*
+    The weather tool as it was before the typed report, the whole response is read into a map and its toString()
+    goes back to the model.
+     */
+
+    public static class MapWeatherApiTool {
+
+        private final RestClient restClient;
+
+        public MapWeatherApiTool(RestClient restClient) {
+
+            this.restClient = restClient;
+        }
+
+        @Tool(description = "Get the current weather information for a specified city")
+        public String getWeatherForCity(@ToolParam(description = "This is the city we want to get current weather information.") String city) {
+
+            var response = restClient.get()
+                    .uri(uriBuilder -> uriBuilder
+                            .path("/current.json")
+                            .queryParam("q", city)
+                            .queryParam("key", "benchmark-key")
+                            .build()
+                    )
+                    .retrieve()
+                    .body(new ParameterizedTypeReference<Map<String, Object>>() {
+                    });
+
+            return String.valueOf(response);
+        }
+    }
+}
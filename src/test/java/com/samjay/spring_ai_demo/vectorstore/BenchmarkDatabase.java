@@ -0,0 +1,60 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/*
+The Postgres the pgvector benchmarks run against, the one of compose.yml unless pgvector.url, pgvector.username and
+pgvector.password say otherwise. The benchmarks load into their own table and drop it afterwards.
+ */
+
+public final class BenchmarkDatabase {
+
+    public static final String TABLE_NAME = "benchmark_vector_store";
+
+    private BenchmarkDatabase() {
+    }
+
+    public static HikariDataSource dataSource() {
+
+        var dataSource = new HikariDataSource();
+
+        dataSource.setJdbcUrl(System.getProperty("pgvector.url", "jdbc:postgresql://localhost:5432/postgres"));
+
+        dataSource.setUsername(System.getProperty("pgvector.username", "postgres"));
+
+        dataSource.setPassword(System.getProperty("pgvector.password", "postgres"));
+
+        dataSource.setMaximumPoolSize(8);
+
+        return dataSource;
+    }
+
+    /*
+    A fresh table, with the full precision HNSW index only when asked for.
+     */
+
+    public static PgVectorStore pgVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel, int dimensions, boolean hnswIndex) {
+
+        PgVectorStore pgVectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel)
+                .vectorTableName(TABLE_NAME)
+                .dimensions(dimensions)
+                .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
+                .indexType(hnswIndex ? PgVectorStore.PgIndexType.HNSW : PgVectorStore.PgIndexType.NONE)
+                .initializeSchema(true)
+                .removeExistingVectorStoreTable(true)
+                .maxDocumentBatchSize(10_000)
+                .build();
+
+        pgVectorStore.afterPropertiesSet();
+
+        return pgVectorStore;
+    }
+
+    public static void dropTable(JdbcTemplate jdbcTemplate) {
+
+        jdbcTemplate.execute("DROP TABLE IF EXISTS public." + TABLE_NAME);
+    }
+}
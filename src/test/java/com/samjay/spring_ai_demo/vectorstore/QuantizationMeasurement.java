@@ -0,0 +1,167 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Index size, build time, recall@10 and search latency of the pgvector HNSW index at full precision, as halfvec and as
+binary, on a synthetic corpus loaded into Postgres (one million 384 dimensional vectors by default).
+The table is loaded once without an index, then every index is built, measured and dropped in turn, so each mode
+searches the same rows and only its own index. Full precision searches go through PgVectorStore, the quantized ones
+through QuantizedPgVectorStore with its re-ranking by exact distance.
+Needs a running Postgres (docker compose up, or -Dpgvector.url) and a few GB of disk:
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.samjay.spring_ai_demo.vectorstore.QuantizationMeasurement -Dbenchmark.args="1000000 384 4"
+The arguments are the number of documents, the dimensions and the re-rank factor of the quantized searches.
+ */
+
+public class QuantizationMeasurement {
+
+    private static final int TOP_K = 10;
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        int dimensions = args.length > 1 ? Integer.parseInt(args[1]) : 384;
+
+        int rerankFactor = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        var embeddingModel = new SyntheticEmbeddingModel(dimensions, 1_000, 1, 42);
+
+        try (var dataSource = BenchmarkDatabase.dataSource()) {
+
+            var jdbcTemplate = new JdbcTemplate(dataSource);
+
+            var transactionManager = new DataSourceTransactionManager(dataSource);
+
+            PgVectorStore pgVectorStore = BenchmarkDatabase.pgVectorStore(jdbcTemplate, embeddingModel, dimensions, false);
+
+            try {
+
+                load(pgVectorStore, documents);
+
+                System.out.printf("Loaded %d documents, table without indexes %.1f MB%n", documents,
+                        megabytes(jdbcTemplate, "pg_table_size('public." + BenchmarkDatabase.TABLE_NAME + "')"));
+
+                int[][] exactNeighbours = embeddingModel.exactNeighbours(documents, QUERIES, TOP_K);
+
+                List<String> results = new ArrayList<>();
+
+                for (Quantization quantization : Quantization.values()) {
+
+                    String indexName = BenchmarkDatabase.TABLE_NAME + "_" + quantization.name().toLowerCase() + "_index";
+
+                    long start = System.nanoTime();
+
+                    VectorStore vectorStore;
+
+                    if (quantization == Quantization.NONE) {
+
+                        jdbcTemplate.execute("CREATE INDEX " + indexName + " ON public." + BenchmarkDatabase.TABLE_NAME
+                                + " USING hnsw (embedding vector_cosine_ops)");
+
+                        vectorStore = pgVectorStore;
+
+                    } else {
+
+                        var quantizedPgVectorStore = new QuantizedPgVectorStore(pgVectorStore, embeddingModel, jdbcTemplate,
+                                transactionManager, quantization, "public", BenchmarkDatabase.TABLE_NAME, dimensions,
+                                rerankFactor, 40, true);
+
+                        quantizedPgVectorStore.afterPropertiesSet();
+
+                        vectorStore = quantizedPgVectorStore;
+                    }
+
+                    double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+                    double indexMegabytes = megabytes(jdbcTemplate, "pg_relation_size('public." + indexName + "')");
+
+                    results.add(measure(quantization, vectorStore, exactNeighbours, indexMegabytes, buildSeconds));
+
+                    jdbcTemplate.execute("DROP INDEX public." + indexName);
+                }
+
+                System.out.printf("%n%d documents, %d dimensions, recall@%d over %d queries, re-rank factor %d%n",
+                        documents, dimensions, TOP_K, QUERIES, rerankFactor);
+
+                System.out.printf("%-10s %12s %10s %10s %10s %10s%n", "index", "index MB", "build s", "recall", "p50 ms", "p95 ms");
+
+                results.forEach(System.out::println);
+
+            } finally {
+
+                BenchmarkDatabase.dropTable(jdbcTemplate);
+            }
+        }
+    }
+
+    private static void load(VectorStore vectorStore, int documents) {
+
+        List<Document> batch = new ArrayList<>();
+
+        for (int document = 0; document < documents; document++) {
+
+            batch.add(SyntheticEmbeddingModel.document(document));
+
+            if (batch.size() == 10_000 || document == documents - 1) {
+
+                vectorStore.add(batch);
+
+                batch = new ArrayList<>();
+            }
+        }
+    }
+
+    /*
+    Every query runs twice, the first round warms the index pages up and only the second one is timed.
+     */
+
+    private static String measure(Quantization quantization, VectorStore vectorStore, int[][] exactNeighbours,
+                                  double indexMegabytes, double buildSeconds) {
+
+        double recall = 0;
+
+        long[] latencies = new long[QUERIES];
+
+        for (int round = 0; round < 2; round++) {
+
+            for (int query = 0; query < QUERIES; query++) {
+
+                SearchRequest searchRequest = SearchRequest.builder().query(SyntheticEmbeddingModel.queryText(query)).topK(TOP_K).build();
+
+                long start = System.nanoTime();
+
+                List<Document> found = vectorStore.similaritySearch(searchRequest);
+
+                latencies[query] = System.nanoTime() - start;
+
+                if (round == 1) {
+                    recall += SyntheticEmbeddingModel.recall(found, exactNeighbours[query]);
+                }
+            }
+        }
+
+        Arrays.sort(latencies);
+
+        return "%-10s %12.1f %10.1f %10.4f %10.2f %10.2f".formatted(quantization, indexMegabytes, buildSeconds, recall / QUERIES,
+                latencies[QUERIES / 2] / 1e6, latencies[QUERIES * 95 / 100] / 1e6);
+    }
+
+    private static double megabytes(JdbcTemplate jdbcTemplate, String sizeExpression) {
+
+        Long bytes = jdbcTemplate.queryForObject("SELECT " + sizeExpression, Long.class);
+
+        return bytes == null ? 0 : bytes / (1024.0 * 1024.0);
+    }
+}
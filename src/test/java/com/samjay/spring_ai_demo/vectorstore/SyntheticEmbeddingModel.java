@@ -0,0 +1,237 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/*
+Embedding model for the vector store benchmarks, it embeds the synthetic texts "doc-<n>" and "query-<n>" into
+clustered unit vectors, so a corpus of any size can be loaded into a store without keeping its vectors around.
+Every vector is its cluster center plus noise, seeded by the text, and a query lands in the same cluster as the
+documents with the same number modulo the cluster count, the way real embeddings of related texts group together.
+Any other text gets a random vector seeded by its hash code.
+ */
+
+public class SyntheticEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+
+    private final float[][] centers;
+
+    private final float noise;
+
+    public SyntheticEmbeddingModel(int dimensions, int clusters, float noise, long seed) {
+
+        this.dimensions = dimensions;
+
+        this.noise = noise;
+
+        this.centers = new float[clusters][];
+
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for (int cluster = 0; cluster < clusters; cluster++) {
+            centers[cluster] = gaussian(random, 1);
+        }
+    }
+
+    public static String documentText(int document) {
+
+        return "doc-" + document;
+    }
+
+    public static String queryText(int query) {
+
+        return "query-" + query;
+    }
+
+    /*
+    pgvector keys its rows by uuid, the synthetic documents get one derived from their number.
+     */
+
+    public static Document document(int document) {
+
+        return Document.builder()
+                .id(new UUID(0, document).toString())
+                .text(documentText(document))
+                .build();
+    }
+
+    public float[] documentVector(int document) {
+
+        return clustered(document % centers.length, document + 1L);
+    }
+
+    public float[] queryVector(int query) {
+
+        return clustered(query % centers.length, -query - 1L);
+    }
+
+    public float[] vector(String text) {
+
+        if (text.startsWith("doc-")) {
+            return documentVector(Integer.parseInt(text.substring(4)));
+        }
+
+        if (text.startsWith("query-")) {
+            return queryVector(Integer.parseInt(text.substring(6)));
+        }
+
+        float[] vector = gaussian(new SplittableRandom(text.hashCode()), 1);
+
+        VectorMatrix.normalize(vector);
+
+        return vector;
+    }
+
+    /*
+    The exact topK documents of every query by cosine similarity, best first, found by comparing each document with
+    all queries once.
+     */
+
+    public int[][] exactNeighbours(int documents, int queries, int topK) {
+
+        float[][] queryVectors = new float[queries][];
+
+        List<PriorityQueue<Neighbour>> best = new ArrayList<>(queries);
+
+        for (int query = 0; query < queries; query++) {
+
+            queryVectors[query] = queryVector(query);
+
+            best.add(new PriorityQueue<>(topK + 1, (left, right) -> Float.compare(left.similarity(), right.similarity())));
+        }
+
+        for (int document = 0; document < documents; document++) {
+
+            float[] documentVector = documentVector(document);
+
+            for (int query = 0; query < queries; query++) {
+
+                float similarity = VectorMatrix.dot(documentVector, queryVectors[query], dimensions);
+
+                PriorityQueue<Neighbour> neighbours = best.get(query);
+
+                if (neighbours.size() < topK) {
+
+                    neighbours.add(new Neighbour(document, similarity));
+
+                } else if (similarity > neighbours.peek().similarity()) {
+
+                    neighbours.poll();
+
+                    neighbours.add(new Neighbour(document, similarity));
+                }
+            }
+        }
+
+        int[][] neighbours = new int[queries][];
+
+        for (int query = 0; query < queries; query++) {
+
+            neighbours[query] = best.get(query).stream()
+                    .sorted((left, right) -> Float.compare(right.similarity(), left.similarity()))
+                    .mapToInt(Neighbour::document)
+                    .toArray();
+        }
+
+        return neighbours;
+    }
+
+    /*
+    The share of the exact neighbours that a search found, documents are recognized by their text.
+     */
+
+    public static double recall(Collection<Document> found, int[] exactNeighbours) {
+
+        long hits = found.stream()
+                .map(Document::getText)
+                .filter(text -> text != null && text.startsWith("doc-"))
+                .mapToInt(text -> Integer.parseInt(text.substring(4)))
+                .filter(document -> contains(exactNeighbours, document))
+                .count();
+
+        return (double) hits / exactNeighbours.length;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+
+        List<Embedding> embeddings = new ArrayList<>(request.getInstructions().size());
+
+        for (int i = 0; i < request.getInstructions().size(); i++) {
+            embeddings.add(new Embedding(vector(request.getInstructions().get(i)), i));
+        }
+
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+
+        return vector(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+
+        return dimensions;
+    }
+
+    private float[] clustered(int cluster, long seed) {
+
+        float[] vector = gaussian(new SplittableRandom(seed), noise);
+
+        float[] center = centers[cluster];
+
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] += center[i];
+        }
+
+        VectorMatrix.normalize(vector);
+
+        return vector;
+    }
+
+    private float[] gaussian(SplittableRandom random, float scale) {
+
+        float[] vector = new float[dimensions];
+
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) (nextGaussian(random) * scale);
+        }
+
+        return vector;
+    }
+
+    private static double nextGaussian(SplittableRandom random) {
+
+        double u = 1 - random.nextDouble();
+
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static boolean contains(int[] values, int value) {
+
+        for (int candidate : values) {
+
+            if (candidate == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private record Neighbour(int document, float similarity) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.samjay.spring_ai_demo.vectorstore;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+Search latency and recall@10 of the local vector store, brute force and HNSW, against pgvector with its HNSW index,
+on the same synthetic clustered corpus.
+Recall is measured once per store at setup against the exact neighbours and printed, the benchmark is the latency of
+one similarity search including the embedding lookup and, for pgvector, the JDBC round trip.
+pgvector needs a running Postgres (docker compose up, or -Dpgvector.url) and is selected with -p store:
+mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="VectorStoreBenchmark -p store=local-brute-force,local-hnsw,pgvector"
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorStoreBenchmark {
+
+    private static final int TOP_K = 10;
+
+    private static final int QUERIES = 200;
+
+    @Param({"local-brute-force", "local-hnsw"})
+    public String store;
+
+    @Param({"20000"})
+    public int documents;
+
+    @Param({"384"})
+    public int dimensions;
+
+    private VectorStore vectorStore;
+
+    private Path directory;
+
+    private HikariDataSource dataSource;
+
+    private List<SearchRequest> searchRequests;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        var embeddingModel = new SyntheticEmbeddingModel(dimensions, 200, 1, 42);
+
+        vectorStore = switch (store) {
+            case "local-brute-force" -> localVectorStore(embeddingModel, Integer.MAX_VALUE);
+            case "local-hnsw" -> localVectorStore(embeddingModel, documents);
+            case "pgvector" -> {
+
+                dataSource = BenchmarkDatabase.dataSource();
+
+                yield BenchmarkDatabase.pgVectorStore(new JdbcTemplate(dataSource), embeddingModel, dimensions, true);
+            }
+            default -> throw new IllegalArgumentException("Unknown store " + store);
+        };
+
+        List<Document> batch = new ArrayList<>();
+
+        for (int document = 0; document < documents; document++) {
+
+            batch.add(SyntheticEmbeddingModel.document(document));
+
+            if (batch.size() == 1_000 || document == documents - 1) {
+
+                vectorStore.add(batch);
+
+                batch = new ArrayList<>();
+            }
+        }
+
+        searchRequests = new ArrayList<>(QUERIES);
+
+        for (int query = 0; query < QUERIES; query++) {
+            searchRequests.add(SearchRequest.builder().query(SyntheticEmbeddingModel.queryText(query)).topK(TOP_K).build());
+        }
+
+        int[][] exactNeighbours = embeddingModel.exactNeighbours(documents, QUERIES, TOP_K);
+
+        double recall = 0;
+
+        for (int query = 0; query < QUERIES; query++) {
+            recall += SyntheticEmbeddingModel.recall(vectorStore.similaritySearch(searchRequests.get(query)), exactNeighbours[query]);
+        }
+
+        System.out.printf("%n%s over %d documents of %d dimensions: recall@%d %.4f%n", store, documents, dimensions, TOP_K, recall / QUERIES);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+
+        if (vectorStore instanceof LocalVectorStore localVectorStore) {
+
+            localVectorStore.destroy();
+
+            FileSystemUtils.deleteRecursively(directory);
+        }
+
+        if (dataSource != null) {
+
+            BenchmarkDatabase.dropTable(new JdbcTemplate(dataSource));
+
+            dataSource.close();
+        }
+    }
+
+    @Benchmark
+    public List<Document> similaritySearch() {
+
+        SearchRequest searchRequest = searchRequests.get(next);
+
+        next = (next + 1) % searchRequests.size();
+
+        return vectorStore.similaritySearch(searchRequest);
+    }
+
+    private LocalVectorStore localVectorStore(SyntheticEmbeddingModel embeddingModel, int hnswThreshold) throws IOException {
+
+        directory = Files.createTempDirectory("vector-store-benchmark");
+
+        return new LocalVectorStore(embeddingModel, directory, hnswThreshold, 16, 200, 64, Duration.ofHours(1));
+    }
+}